@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+/**
+ * Points SampleConfig at a copy of SampleResources.ini whose SSH public key
+ * location refers to a throwaway key, so that cluster requests can be built
+ * without a real Altus setup.
+ */
+final class BenchmarkConfig {
+
+	private BenchmarkConfig() {
+	}
+
+	/**
+	 * Installs the benchmark configuration. Must run before SampleConfig is first used.
+	 */
+	static synchronized void install() {
+		if (System.getProperty(SampleConfig.LOCATION_PROPERTY) != null) {
+			return;
+		}
+		try (InputStream in = BenchmarkConfig.class.getClassLoader().getResourceAsStream(SampleConfig.RESOURCE);
+				Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+			Path directory = Files.createTempDirectory("altus-benchmarks");
+			Path publicKey = directory.resolve("id_rsa.pub");
+			Files.write(publicKey, "ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABAQ benchmark".getBytes(StandardCharsets.UTF_8));
+			String ini = scanner.next()
+					.replace("ssh_public_key_location=", "ssh_public_key_location=" + publicKey)
+					.replace("outputLocation=s3a://", "outputLocation=s3a://benchmarks/output");
+			Path config = directory.resolve(SampleConfig.RESOURCE);
+			Files.write(config, ini.getBytes(StandardCharsets.UTF_8));
+			System.setProperty(SampleConfig.LOCATION_PROPERTY, config.toString());
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+}
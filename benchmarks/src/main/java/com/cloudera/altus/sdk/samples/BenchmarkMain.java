@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options. Unless
+ * another result format is requested, results are also written as JSON to
+ * jmh-result.json so that runs can be compared for regressions.
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			options.result("jmh-result.json");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.authentication.credentials.BasicAltusCredentials;
+import com.cloudera.altus.client.AltusClientConfigurationBuilder;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.Cluster;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for the Altus data engineering service. Clusters and
+ * jobs live in memory and move through their states as time passes:
+ * clusters go from CREATING to CREATED after the cluster creation time and
+ * jobs go from QUEUED to RUNNING to COMPLETED over the job duration. Every
+ * call can be delayed by a fixed latency and fail with a given probability.
+ */
+class FakeDataengClient extends DataengClient {
+
+	private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+	private final ConcurrentMap<String, FakeCluster> clusters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, FakeJob> jobs = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, List<FakeJob>> jobsByCluster = new ConcurrentHashMap<>();
+	private final LongAdder calls = new LongAdder();
+
+	private volatile long latencyNanos;
+	private volatile double failureRate;
+	private volatile long clusterCreationNanos = TimeUnit.MILLISECONDS.toNanos(10);
+	private volatile long jobDurationNanos = TimeUnit.MILLISECONDS.toNanos(10);
+	private volatile int pageSize = 100;
+
+	FakeDataengClient() {
+		super(() -> new BasicAltusCredentials("fake-access-key", "fake-private-key"),
+				"http://localhost", AltusClientConfigurationBuilder.defaultBuilder().build());
+	}
+
+	FakeDataengClient withLatency(Duration latency) {
+		this.latencyNanos = latency.toNanos();
+		return this;
+	}
+
+	/**
+	 * @param failureRate		Probability, between 0 and 1, that a call fails with a 503
+	 * @return FakeDataengClient
+	 */
+	FakeDataengClient withFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+		return this;
+	}
+
+	FakeDataengClient withClusterCreationTime(Duration creationTime) {
+		this.clusterCreationNanos = creationTime.toNanos();
+		return this;
+	}
+
+	FakeDataengClient withJobDuration(Duration jobDuration) {
+		this.jobDurationNanos = jobDuration.toNanos();
+		return this;
+	}
+
+	FakeDataengClient withPageSize(int pageSize) {
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * @return long		Number of calls made to the fake service
+	 */
+	long callCount() {
+		return calls.sum();
+	}
+
+	/**
+	 * Adds a cluster that is already CREATED.
+	 * @param clusterName		Name of the cluster
+	 */
+	void addCreatedCluster(String clusterName) {
+		clusters.put(clusterName, new FakeCluster(clusterName, System.nanoTime() - clusterCreationNanos));
+	}
+
+	/**
+	 * Adds a job that is already COMPLETED.
+	 * @param clusterName		Cluster the job runs on
+	 * @param jobName				Name of the job
+	 * @return String				Id of the job
+	 */
+	String addCompletedJob(String clusterName, String jobName) {
+		return addJob(clusterName, jobName, System.nanoTime() - jobDurationNanos).jobId;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		call();
+		FakeCluster cluster = new FakeCluster(request.getClusterName(), System.nanoTime());
+		clusters.put(cluster.name, cluster);
+		if (request.getJobs() != null) {
+			for (JobRequest job : request.getJobs()) {
+				addJob(cluster.name, job.getName(), System.nanoTime() + clusterCreationNanos);
+			}
+		}
+		CreateAWSClusterResponse response = new CreateAWSClusterResponse();
+		response.setCluster(cluster.toCluster());
+		return response;
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		call();
+		DescribeClusterResponse response = new DescribeClusterResponse();
+		response.setCluster(cluster(request.getClusterName()).toCluster());
+		return response;
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		call();
+		cluster(request.getClusterName()).deleted = true;
+		return new DeleteClusterResponse();
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		call();
+		List<FakeCluster> source = new ArrayList<>(clusters.values());
+		int size = request.getPageSize() != null ? request.getPageSize() : pageSize;
+		int from = request.getPageToken() == null ? 0 : Integer.parseInt(request.getPageToken());
+		int to = Math.min(source.size(), from + size);
+		List<ClusterSummary> page = new ArrayList<>(Math.max(0, to - from));
+		for (int i = from; i < to; i++) {
+			page.add(source.get(i).toSummary());
+		}
+		ListClustersResponse response = new ListClustersResponse();
+		response.setClusters(page);
+		response.setNextPageToken(to < source.size() ? Integer.toString(to) : null);
+		return response;
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		call();
+		FakeCluster cluster = cluster(request.getClusterName());
+		long startNanos = Math.max(System.nanoTime(), cluster.createdAtNanos());
+		List<Job> submitted = new ArrayList<>(request.getJobs().size());
+		for (JobRequest job : request.getJobs()) {
+			submitted.add(addJob(cluster.name, job.getName(), startNanos).toJob());
+		}
+		SubmitJobsResponse response = new SubmitJobsResponse();
+		response.setJobs(submitted);
+		return response;
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		call();
+		FakeJob job = jobs.get(request.getJobId());
+		if (job == null) {
+			throw notFound("Job " + request.getJobId());
+		}
+		DescribeJobResponse response = new DescribeJobResponse();
+		response.setJob(job.toJob());
+		return response;
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		call();
+		List<FakeJob> source = request.getClusterName() != null
+				? jobsByCluster.getOrDefault(request.getClusterName(), Collections.<FakeJob>emptyList())
+				: new ArrayList<>(jobs.values());
+		/* Jobs are only ever appended, so the first size elements stay stable while paging. */
+		int size = source.size();
+		int from = request.getPageToken() == null ? 0 : Integer.parseInt(request.getPageToken());
+		int to = Math.min(size, from + pageSize);
+		List<JobSummary> page = new ArrayList<>(Math.max(0, to - from));
+		/* Pages go from newest to oldest, like NEWEST_TO_OLDEST on the service. */
+		for (int i = from; i < to; i++) {
+			page.add(source.get(size - 1 - i).toSummary());
+		}
+		ListJobsResponse response = new ListJobsResponse();
+		response.setJobs(page);
+		response.setNextPageToken(to < size ? Integer.toString(to) : null);
+		return response;
+	}
+
+	private void call() {
+		calls.increment();
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+		if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+			throw new AltusServiceException(UUID.randomUUID().toString(), 503, NO_HEADERS,
+					"SERVICE_UNAVAILABLE", "Injected failure");
+		}
+	}
+
+	private FakeCluster cluster(String clusterName) {
+		FakeCluster cluster = clusters.get(clusterName);
+		if (cluster == null) {
+			throw notFound("Cluster " + clusterName);
+		}
+		return cluster;
+	}
+
+	private FakeJob addJob(String clusterName, String jobName, long startNanos) {
+		FakeJob job = new FakeJob(UUID.randomUUID().toString(), clusterName, jobName, startNanos);
+		jobs.put(job.jobId, job);
+		jobsByCluster.computeIfAbsent(clusterName, name -> new CopyOnWriteArrayList<>()).add(job);
+		return job;
+	}
+
+	private static AltusServiceException notFound(String what) {
+		return new AltusServiceException(UUID.randomUUID().toString(), 404, NO_HEADERS,
+				"NOT_FOUND", what + " not found");
+	}
+
+	private final class FakeCluster {
+
+		private final String name;
+		private final long requestedNanos;
+		private volatile boolean deleted;
+
+		FakeCluster(String name, long requestedNanos) {
+			this.name = name;
+			this.requestedNanos = requestedNanos;
+		}
+
+		long createdAtNanos() {
+			return requestedNanos + clusterCreationNanos;
+		}
+
+		String status() {
+			if (deleted) {
+				return "TERMINATING";
+			}
+			return System.nanoTime() >= createdAtNanos() ? "CREATED" : "CREATING";
+		}
+
+		ClusterSummary toSummary() {
+			ClusterSummary summary = new ClusterSummary();
+			summary.setClusterName(name);
+			summary.setStatus(status());
+			return summary;
+		}
+
+		Cluster toCluster() {
+			Cluster cluster = new Cluster();
+			cluster.setClusterName(name);
+			cluster.setStatus(status());
+			return cluster;
+		}
+	}
+
+	private final class FakeJob {
+
+		private final String jobId;
+		private final String clusterName;
+		private final String jobName;
+		private final long startNanos;
+
+		FakeJob(String jobId, String clusterName, String jobName, long startNanos) {
+			this.jobId = jobId;
+			this.clusterName = clusterName;
+			this.jobName = jobName;
+			this.startNanos = startNanos;
+		}
+
+		String status() {
+			long now = System.nanoTime();
+			if (now < startNanos) {
+				return "QUEUED";
+			}
+			return now - startNanos >= jobDurationNanos ? "COMPLETED" : "RUNNING";
+		}
+
+		Job toJob() {
+			Job job = new Job();
+			job.setJobId(jobId);
+			job.setName(jobName);
+			job.setClusterName(clusterName);
+			job.setStatus(status());
+			return job;
+		}
+
+		JobSummary toSummary() {
+			JobSummary summary = new JobSummary();
+			summary.setJobId(jobId);
+			summary.setJobName(jobName);
+			summary.setClusterName(clusterName);
+			summary.setStatus(status());
+			return summary;
+		}
+	}
+}
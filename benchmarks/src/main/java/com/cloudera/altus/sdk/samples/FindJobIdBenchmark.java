@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up a job id by name on a cluster with many jobs, from a warm
+ * index and from a cold index that has to page through listJobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindJobIdBenchmark {
+
+	private static final String CLUSTER = "Sample-FindJobId";
+
+	@Param({"10000", "50000"})
+	public int jobs;
+
+	/* How far from the newest job the looked up job is, as a fraction of all jobs. */
+	@Param({"0.01", "0.5"})
+	public double depth;
+
+	private FakeDataengClient client;
+	private JobIndex warmIndex;
+	private String jobName;
+
+	@Setup
+	public void setUp() {
+		client = new FakeDataengClient().withPageSize(100);
+		client.addCreatedCluster(CLUSTER);
+		for (int i = 0; i < jobs; i++) {
+			client.addCompletedJob(CLUSTER, "job-" + i);
+		}
+		jobName = "job-" + (jobs - 1 - (int) (jobs * depth));
+		warmIndex = new JobIndex();
+		warmIndex.findJobId(client, CLUSTER, jobName, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public String warmIndex() {
+		return warmIndex.findJobId(client, CLUSTER, jobName, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public String coldIndex() {
+		return new JobIndex().findJobId(client, CLUSTER, jobName, Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of waiting for many clusters and jobs with the shared pollers.
+ * The fake service settles clusters and jobs after a few milliseconds and
+ * the pollers run with millisecond intervals, so the score is dominated by
+ * the polling machinery and the number of API calls it makes, which is
+ * reported as a secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PollingBenchmark {
+
+	@Param({"1", "100", "1000"})
+	public int entities;
+
+	private final AtomicLong run = new AtomicLong();
+	private FakeDataengClient client;
+	private ScheduledExecutorService scheduler;
+	private ClusterStatusPoller clusterPoller;
+	private JobStatusTracker jobTracker;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class ApiCalls {
+		public long apiCalls;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		client = new FakeDataengClient()
+				.withClusterCreationTime(Duration.ofMillis(20))
+				.withJobDuration(Duration.ofMillis(20))
+				.withPageSize(100);
+		client.addCreatedCluster("Sample-Polling");
+		scheduler = Executors.newScheduledThreadPool(2, ClusterStatusPoller.daemonThreads("benchmark-poller"));
+		clusterPoller = new ClusterStatusPoller(scheduler, Duration.ofMillis(1), Duration.ofMillis(5),
+				Duration.ofMillis(20));
+		jobTracker = new JobStatusTracker(scheduler, Duration.ofMillis(1));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Benchmark
+	public void pollClusterStatus(ApiCalls calls) {
+		long before = client.callCount();
+		List<CompletableFuture<String>> statuses = new ArrayList<>(entities);
+		long id = run.incrementAndGet();
+		for (int i = 0; i < entities; i++) {
+			CreateAWSClusterRequest request = new CreateAWSClusterRequest();
+			request.setClusterName("Sample-" + id + "-" + i);
+			client.createAWSCluster(request);
+			statuses.add(clusterPoller.track(client, request.getClusterName()));
+		}
+		CompletableFuture.allOf(statuses.toArray(new CompletableFuture<?>[0])).join();
+		calls.apiCalls += client.callCount() - before;
+	}
+
+	@Benchmark
+	public void pollJobStatus(ApiCalls calls) {
+		long before = client.callCount();
+		List<JobRequest> jobs = new ArrayList<>(entities);
+		for (int i = 0; i < entities; i++) {
+			JobRequest job = new JobRequest();
+			job.setName("job-" + i);
+			jobs.add(job);
+		}
+		SubmitJobsRequest request = new SubmitJobsRequest();
+		request.setClusterName("Sample-Polling");
+		request.setJobs(jobs);
+		List<CompletableFuture<String>> statuses = new ArrayList<>(entities);
+		client.submitJobs(request).getJobs().forEach(job ->
+				statuses.add(jobTracker.track(client, "Sample-Polling", job.getJobId())));
+		CompletableFuture.allOf(statuses.toArray(new CompletableFuture<?>[0])).join();
+		calls.apiCalls += client.callCount() - before;
+	}
+}
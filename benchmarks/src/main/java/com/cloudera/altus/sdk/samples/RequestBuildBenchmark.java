@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building the requests sent by the integrations: copying the
+ * cached prototypes against rebuilding the job from scratch in createJob.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildBenchmark {
+
+	@Param({"SPARK", "HIVE", "MR2"})
+	public String kind;
+
+	private BaseIntegration integration;
+	private SampleConfig config;
+
+	@Setup
+	public void setUp() {
+		BenchmarkConfig.install();
+		config = SampleConfig.current();
+		switch (kind) {
+			case "SPARK":
+				integration = new SparkIntegration();
+				break;
+			case "HIVE":
+				integration = new HiveIntegration();
+				break;
+			default:
+				integration = new MapreduceIntegration();
+				break;
+		}
+	}
+
+	@Benchmark
+	public JobRequest jobFromPrototype() {
+		return integration.newJobRequest();
+	}
+
+	@Benchmark
+	public JobRequest jobFromScratch() {
+		return integration.buildJobPrototype(config);
+	}
+
+	@Benchmark
+	public CreateAWSClusterRequest clusterFromPrototype() throws IOException {
+		return RequestTemplates.shared().newCreateAWSClusterRequest("Sample-Benchmark", kind, 3);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall-clock time of one run of the samples CLI, from launching the JVM to
+ * its exit, with and without the class-data-sharing archive dumped by the
+ * appcds profile. The samples jar and the archive are looked up in the
+ * directory given by -Daltus.samples.target, ../target by default, and the
+ * CLI runs on the JDK running the benchmark, which must be the JDK that
+ * dumped the archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+	@Param({"help", "warmup"})
+	public String command;
+
+	@Param({"false", "true"})
+	public boolean archive;
+
+	private ProcessBuilder launcher;
+
+	@Setup
+	public void setUp() throws IOException {
+		Path target = Paths.get(System.getProperty("altus.samples.target", "../target")).toAbsolutePath().normalize();
+		List<String> commandLine = new ArrayList<>();
+		commandLine.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		if (archive) {
+			Path jsa = target.resolve("altus-cli.jsa");
+			if (!Files.exists(jsa)) {
+				throw new IllegalStateException("No archive at " + jsa + ", package the samples with -Pappcds");
+			}
+			commandLine.add("-XX:SharedArchiveFile=" + jsa);
+		}
+		commandLine.add("-jar");
+		commandLine.add(samplesJar(target).toString());
+		commandLine.add(command);
+		launcher = new ProcessBuilder(commandLine).redirectErrorStream(true);
+	}
+
+	@Benchmark
+	public int launch() throws IOException, InterruptedException {
+		Process process = launcher.start();
+		byte[] buffer = new byte[8192];
+		try (InputStream out = process.getInputStream()) {
+			while (out.read(buffer) >= 0) {
+				/* The output is drained so that the CLI never blocks on a full pipe. */
+			}
+		}
+		int exitCode = process.waitFor();
+		if (exitCode != AltusCli.OK) {
+			throw new IllegalStateException("The CLI exited with " + exitCode);
+		}
+		return exitCode;
+	}
+
+	private static Path samplesJar(Path target) throws IOException {
+		try (DirectoryStream<Path> jars = Files.newDirectoryStream(target, "altus-sdk-java-samplecode-*.jar")) {
+			for (Path jar : jars) {
+				String name = jar.getFileName().toString();
+				if (!name.endsWith("-sources.jar") && !name.endsWith("-javadoc.jar")) {
+					return jar;
+				}
+			}
+		}
+		throw new IllegalStateException("No samples jar in " + target + ", package the samples first");
+	}
+}
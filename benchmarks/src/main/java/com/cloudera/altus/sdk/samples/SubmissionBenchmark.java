@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of many threads submitting jobs to the same cluster, one
+ * submitJobs call per job against batched submissions through the
+ * cluster's JobSubmissionQueue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class SubmissionBenchmark {
+
+	private static final String CLUSTER = "Sample-Submission";
+
+	/* Simulated round trip of one submitJobs call. */
+	@Param({"1", "10"})
+	public int latencyMillis;
+
+	private FakeDataengClient client;
+	private ScheduledExecutorService scheduler;
+	private JobSubmissionQueue queue;
+	private JobRequest job;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		client = new FakeDataengClient().withLatency(Duration.ofMillis(latencyMillis));
+		client.addCreatedCluster(CLUSTER);
+		scheduler = Executors.newScheduledThreadPool(4, ClusterStatusPoller.daemonThreads("benchmark-submit"));
+		queue = new JobSubmissionQueue(client, CLUSTER, 25, Duration.ofMillis(1), scheduler);
+		job = new JobRequest();
+		job.setName("sample-Submission-Job");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Benchmark
+	public String direct() {
+		SubmitJobsRequest request = new SubmitJobsRequest();
+		request.setClusterName(CLUSTER);
+		request.setJobs(Collections.singletonList(job));
+		return client.submitJobs(request).getJobs().get(0).getJobId();
+	}
+
+	@Benchmark
+	public String batched() {
+		return queue.submit(job).join();
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket shared by every DataengClient in the process, so that many
+ * concurrent workflows stay under the request rate Altus accepts instead of
+ * each discovering it with 429s. The rate adapts like TCP congestion
+ * control: it is halved when Altus answers 429 or 503, at most once per
+ * second since one overload is usually reported to every call in flight,
+ * and grows back by a small step on every successful call.
+ *
+ * Callers over the rate are not rejected, they sleep until their turn. A
+ * caller takes the next free slot before sleeping, so waiting callers are
+ * served in arrival order.
+ */
+final class AdaptiveRateLimiter implements RateLimiterMXBean {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+
+	private static final double INCREASE_PER_SUCCESS = 0.1;
+	private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private static volatile AdaptiveRateLimiter shared;
+
+	private final double minRate;
+	private final double maxRate;
+	private final LongAdder throttled = new LongAdder();
+	private final LongAdder delayed = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private double rate;
+	private double tokens;
+	private long refilledNanos;
+	private long decreasedNanos;
+
+	/**
+	 * @param minRate		Requests per second the rate never goes below
+	 * @param maxRate		Requests per second the rate starts at and never exceeds
+	 */
+	AdaptiveRateLimiter(double minRate, double maxRate) {
+		this.minRate = minRate;
+		this.maxRate = maxRate;
+		this.rate = maxRate;
+		this.tokens = maxRate;
+		this.refilledNanos = System.nanoTime();
+		this.decreasedNanos = refilledNanos - DECREASE_INTERVAL_NANOS;
+	}
+
+	/**
+	 * Returns the limiter shared by every client, built from the [limits]
+	 * section of SampleResources.ini on first use.
+	 * @return AdaptiveRateLimiter		Shared limiter
+	 */
+	static AdaptiveRateLimiter shared() {
+		AdaptiveRateLimiter limiter = shared;
+		if (limiter == null) {
+			synchronized (AdaptiveRateLimiter.class) {
+				limiter = shared;
+				if (limiter == null) {
+					SampleConfig config = SampleConfig.current();
+					limiter = new AdaptiveRateLimiter(config.getMinRequestsPerSecond(), config.getMaxRequestsPerSecond());
+					ClientMetrics.register(limiter, "type=RateLimiter,name=Shared");
+					ClientMetrics.shared().addSource(limiter::writePrometheus);
+					shared = limiter;
+				}
+			}
+		}
+		return limiter;
+	}
+
+	private void writePrometheus(StringBuilder out) {
+		out.append("# HELP altus_client_rate_limit_per_second Request rate shared by every client.\n")
+				.append("# TYPE altus_client_rate_limit_per_second gauge\n")
+				.append("altus_client_rate_limit_per_second ").append(getRatePerSecond()).append('\n')
+				.append("# HELP altus_client_throttled_total Responses with a 429 or 503 code.\n")
+				.append("# TYPE altus_client_throttled_total counter\n")
+				.append("altus_client_throttled_total ").append(getThrottledResponses()).append('\n')
+				.append("# HELP altus_client_retries_total Retried idempotent calls.\n")
+				.append("# TYPE altus_client_retries_total counter\n")
+				.append("altus_client_retries_total ").append(getRetries()).append('\n');
+	}
+
+	/**
+	 * Blocks until the caller may send a request.
+	 * @throws InterruptedException		Occurs when the caller is interrupted while waiting
+	 */
+	void acquire() throws InterruptedException {
+		long waitNanos = reserve();
+		if (waitNanos > 0) {
+			delayed.increment();
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/* A token taken while the bucket is empty leaves it negative, the debt is the caller's wait. */
+	private synchronized long reserve() {
+		long now = System.nanoTime();
+		tokens = Math.min(Math.max(rate, 1), tokens + (now - refilledNanos) * rate / 1e9);
+		refilledNanos = now;
+		tokens -= 1;
+		return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+	}
+
+	/**
+	 * Halves the rate after Altus reported it is overloaded.
+	 */
+	synchronized void throttled() {
+		throttled.increment();
+		long now = System.nanoTime();
+		if (now - decreasedNanos >= DECREASE_INTERVAL_NANOS && rate > minRate) {
+			decreasedNanos = now;
+			rate = Math.max(minRate, rate / 2);
+			tokens = Math.min(tokens, 0);
+			LOG.info("Altus is throttling, lowering the request rate to " + rate + "/s");
+		}
+	}
+
+	/**
+	 * Raises the rate after a call went through.
+	 */
+	synchronized void succeeded() {
+		rate = Math.min(maxRate, rate + INCREASE_PER_SUCCESS);
+	}
+
+	void retried() {
+		retries.increment();
+	}
+
+	@Override
+	public synchronized double getRatePerSecond() {
+		return rate;
+	}
+
+	@Override
+	public double getMinRatePerSecond() {
+		return minRate;
+	}
+
+	@Override
+	public double getMaxRatePerSecond() {
+		return maxRate;
+	}
+
+	@Override
+	public long getThrottledResponses() {
+		return throttled.sum();
+	}
+
+	@Override
+	public long getDelayedCalls() {
+		return delayed.sum();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "rate=" + getRatePerSecond() + "/s throttled=" + getThrottledResponses()
+				+ " delayed=" + getDelayedCalls() + " retries=" + getRetries();
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Single command line entry point to the samples:
+ * <pre>
+ *   list [--status S] [--prefix P] [--limit N]
+ *   create CLUSTER --type spark|hive|mr2 [--wait]
+ *   fleet CLUSTER... --type spark|hive|mr2 [--workers N]
+ *   submit CLUSTER --type spark|hive|mr2 [--name NAME] [--wait]
+ *   poll CLUSTER [JOB_ID] [--wait]
+ *   delete CLUSTER... [--wait]
+ * </pre>
+ * Each command is meant to be run on its own, so the CLI keeps its startup
+ * short: nothing is loaded before a command needs it, the client is only
+ * built by the commands calling Altus, the metrics are not registered with
+ * JMX unless -Daltus.samples.jmx=true is set, and results and errors are
+ * printed directly instead of going through the logging framework.
+ *
+ * The hidden warmup command builds the configuration, the request templates
+ * and a client that is not shared, without calling Altus whatever the
+ * journal or placement settings. It is the training run used to dump the
+ * class-data-sharing archive of the appcds build profile.
+ *
+ * Exit codes are 0 on success, 1 when a call failed or a cluster or job did
+ * not reach CREATED or COMPLETED, and 2 on usage errors.
+ */
+public final class AltusCli {
+
+	static final int OK = 0;
+	static final int FAILED = 1;
+	static final int USAGE = 2;
+
+	private static final String USAGE_TEXT = "Usage: altus COMMAND [OPTIONS]\n"
+			+ "  list [--status S] [--prefix P] [--limit N]    List the clusters of the account\n"
+			+ "  create CLUSTER --type spark|hive|mr2 [--wait] Create a cluster\n"
+			+ "  fleet CLUSTER... --type spark|hive|mr2 [--workers N]\n"
+			+ "                                                Create clusters in parallel and wait for them\n"
+			+ "  submit CLUSTER --type spark|hive|mr2 [--name NAME] [--wait]\n"
+			+ "                                                Submit the sample job of the type\n"
+			+ "  poll CLUSTER [JOB_ID] [--wait]                Print the status of a cluster or job\n"
+			+ "  delete CLUSTER... [--wait]                    Delete clusters\n"
+			+ "  help                                          Print this message\n"
+			+ "With --wait, the command returns once the cluster or job reached a final status.";
+
+	private final PrintStream out;
+	private final PrintStream err;
+	private DataengClient client;
+
+	/**
+	 * @param out		Stream the results are printed to
+	 * @param err		Stream the errors are printed to
+	 */
+	AltusCli(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	public static void main(String[] args) {
+		if (System.getProperty(ClientMetrics.JMX_PROPERTY) == null) {
+			System.setProperty(ClientMetrics.JMX_PROPERTY, "false");
+		}
+		System.exit(new AltusCli(System.out, System.err).run(args));
+	}
+
+	/**
+	 * @param args		Command followed by its arguments
+	 * @return int		Exit code
+	 */
+	int run(String[] args) {
+		if (args.length == 0) {
+			err.println(USAGE_TEXT);
+			return USAGE;
+		}
+		String command = args[0];
+		try {
+			Arguments arguments = Arguments.parse(Arrays.asList(args).subList(1, args.length));
+			switch (command) {
+				case "list":
+					return list(arguments);
+				case "create":
+					return create(arguments);
+				case "fleet":
+					return fleet(arguments);
+				case "submit":
+					return submit(arguments);
+				case "poll":
+					return poll(arguments);
+				case "delete":
+					return delete(arguments);
+				case "warmup":
+					return warmup();
+				case "help":
+				case "--help":
+				case "-h":
+					out.println(USAGE_TEXT);
+					return OK;
+				default:
+					err.println("Unknown command " + command + "\n" + USAGE_TEXT);
+					return USAGE;
+			}
+		} catch (IllegalArgumentException iae) {
+			err.println(iae.getMessage() + "\n" + USAGE_TEXT);
+			return USAGE;
+		} catch (AltusServiceException ase) {
+			err.println("Altus rejected the " + command + " request " + ase.getMessage());
+			return FAILED;
+		} catch (RuntimeException re) {
+			err.println("Unable to " + command + " " + re.getMessage());
+			return FAILED;
+		}
+	}
+
+	/* Built on first use, so that list, help and usage errors do not pay for the commands they do not run. */
+	private DataengClient client() {
+		if (client == null) {
+			client = DataengClientRegistry.shared().get(SampleConfig.current());
+		}
+		return client;
+	}
+
+	private int list(Arguments arguments) {
+		arguments.expect(0, 0, "--status", "--prefix", "--limit");
+		String limit = arguments.option("--limit");
+		try (Stream<ClusterSummary> clusters = ListClusters.stream(client(),
+				arguments.option("--status"), arguments.option("--prefix"))) {
+			clusters.limit(limit == null ? Long.MAX_VALUE : Long.parseLong(limit)).forEach(cluster ->
+					out.println(cluster.getClusterName() + "\t" + cluster.getStatus()
+							+ "\t" + cluster.getServiceType() + "\t" + cluster.getCreationDate()));
+		}
+		return OK;
+	}
+
+	private int create(Arguments arguments) {
+		arguments.expect(1, 1, "--type", "--wait");
+		JobDag.JobType type = JobDag.JobType.of(arguments.required("--type"));
+		String clusterName = type.integration().requestAWSCluster(client(), arguments.positional(0),
+				type.getServiceType());
+		if (!arguments.flag("--wait")) {
+			out.println(clusterName);
+			return OK;
+		}
+		String status = BaseIntegration.await(ClusterStatusPoller.shared().track(client(), clusterName));
+		out.println(clusterName + "\t" + status);
+		return "CREATED".equals(status) ? OK : FAILED;
+	}
+
+	private int fleet(Arguments arguments) {
+		arguments.expect(1, Integer.MAX_VALUE, "--type", "--workers");
+		JobDag.JobType type = JobDag.JobType.of(arguments.required("--type"));
+		String workers = arguments.option("--workers");
+		int workersGroupSize = workers == null ? SampleConfig.current().getWorkerSize() : Integer.parseInt(workers);
+		List<FleetProvisioner.ClusterSpec> specs = new ArrayList<>();
+		for (String clusterName : arguments.positionals()) {
+			specs.add(new FleetProvisioner.ClusterSpec(clusterName, type, workersGroupSize));
+		}
+		int code = OK;
+		try (FleetProvisioner provisioner = new FleetProvisioner(client())) {
+			for (Map.Entry<String, FleetProvisioner.Result> entry : provisioner.provision(specs).entrySet()) {
+				FleetProvisioner.Result result = entry.getValue();
+				if (result.isCreated()) {
+					out.println(entry.getKey() + "\t" + result.getStatus()
+							+ "\t" + result.getTimeToCreated().getSeconds() + "s");
+				} else {
+					out.println(entry.getKey() + "\t" + (result.getError() == null ? result.getStatus()
+							: "ERROR " + result.getError().getMessage()));
+					code = FAILED;
+				}
+			}
+		}
+		return code;
+	}
+
+	/*
+	The job is sent with its own submitJobs call rather than through the
+	JobSubmissionQueue, whose linger only pays off when jobs can share a batch.
+	*/
+	private int submit(Arguments arguments) {
+		arguments.expect(1, 1, "--type", "--name", "--wait");
+		String clusterName = arguments.positional(0);
+		BaseIntegration integration = JobDag.JobType.of(arguments.required("--type")).integration();
+		String name = arguments.option("--name");
+		JobRequest job = name == null ? integration.newJobRequest()
+				: RequestTemplates.shared().newJobRequest(integration.getClass(), integration::buildJobPrototype, name);
+		SubmitJobsRequest request = new SubmitJobsRequest();
+		request.setClusterName(clusterName);
+		request.setJobs(Collections.singletonList(job));
+		String jobId = client().submitJobs(request).getJobs().get(0).getJobId();
+		if (!arguments.flag("--wait")) {
+			out.println(jobId);
+			return OK;
+		}
+		String status = BaseIntegration.await(JobStatusTracker.shared().track(client(), clusterName, jobId));
+		out.println(jobId + "\t" + status);
+		return "COMPLETED".equals(status) ? OK : FAILED;
+	}
+
+	private int poll(Arguments arguments) {
+		arguments.expect(1, 2, "--wait");
+		String clusterName = arguments.positional(0);
+		boolean wait = arguments.flag("--wait");
+		if (arguments.positionalCount() == 1) {
+			String status;
+			if (wait) {
+				status = BaseIntegration.await(ClusterStatusPoller.shared().track(client(), clusterName));
+			} else {
+				DescribeClusterRequest request = new DescribeClusterRequest();
+				request.setClusterName(clusterName);
+				status = client().describeCluster(request).getCluster().getStatus();
+			}
+			out.println(clusterName + "\t" + status);
+			return !wait || "CREATED".equals(status) ? OK : FAILED;
+		}
+		String jobId = arguments.positional(1);
+		String status;
+		if (wait) {
+			status = BaseIntegration.await(JobStatusTracker.shared().track(client(), clusterName, jobId));
+		} else {
+			DescribeJobRequest request = new DescribeJobRequest();
+			request.setJobId(jobId);
+			status = client().describeJob(request).getJob().getStatus();
+		}
+		out.println(jobId + "\t" + status);
+		return !wait || "COMPLETED".equals(status) ? OK : FAILED;
+	}
+
+	private int delete(Arguments arguments) {
+		arguments.expect(1, Integer.MAX_VALUE, "--wait");
+		List<String> clusterNames = arguments.positionals();
+		if (!arguments.flag("--wait")) {
+			for (String clusterName : clusterNames) {
+				DeleteClusterRequest request = new DeleteClusterRequest();
+				request.setClusterName(clusterName);
+				client().deleteCluster(request);
+				out.println(clusterName);
+			}
+			return OK;
+		}
+		int code = OK;
+		try (ClusterReaper reaper = new ClusterReaper(client())) {
+			for (Map.Entry<String, ClusterReaper.Result> entry : reaper.teardown(clusterNames).entrySet()) {
+				out.println(entry.getKey() + "\t" + entry.getValue());
+				if (!entry.getValue().isTerminated()) {
+					code = FAILED;
+				}
+			}
+		}
+		return code;
+	}
+
+	/*
+	Loads what the commands load before their first call to Altus. The client
+	is built without the registry, whose shared client resumes the journal and
+	lists the placement environments, so nothing is sent and the archive can be
+	dumped at build time without credentials.
+	*/
+	private int warmup() {
+		SampleConfig config = SampleConfig.current();
+		for (JobDag.JobType type : JobDag.JobType.values()) {
+			type.integration().newJobRequest();
+			try {
+				RequestTemplates.shared().newCreateAWSClusterRequest("Sample-Warmup", type.getServiceType(),
+						config.getWorkerSize());
+			} catch (IOException ioe) {
+				/* Without an SSH key the cluster request is not built, its classes are loaded all the same. */
+			}
+		}
+		new DescribeClusterRequest();
+		new DescribeJobRequest();
+		new DeleteClusterRequest();
+		new SubmitJobsRequest();
+		try {
+			DataengClientRegistry.buildDetached(config);
+		} catch (RuntimeException re) {
+			err.println("The client was not built " + re.getMessage());
+		}
+		out.println("Loaded the classes of the commands");
+		return OK;
+	}
+
+	/**
+	 * Positional arguments and options of a command. Options take a value,
+	 * except --wait.
+	 */
+	static final class Arguments {
+
+		private static final Set<String> FLAGS = Collections.singleton("--wait");
+
+		private final List<String> positionals = new ArrayList<>();
+		private final Map<String, String> options = new HashMap<>();
+
+		static Arguments parse(List<String> args) {
+			Arguments arguments = new Arguments();
+			for (int i = 0; i < args.size(); i++) {
+				String arg = args.get(i);
+				if (!arg.startsWith("--")) {
+					arguments.positionals.add(arg);
+				} else if (FLAGS.contains(arg)) {
+					arguments.options.put(arg, "true");
+				} else if (i + 1 < args.size()) {
+					arguments.options.put(arg, args.get(++i));
+				} else {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+			}
+			return arguments;
+		}
+
+		/**
+		 * @param minPositionals		Fewest positional arguments the command takes
+		 * @param maxPositionals		Most positional arguments the command takes
+		 * @param allowed						Options the command takes
+		 */
+		void expect(int minPositionals, int maxPositionals, String... allowed) {
+			Set<String> known = new HashSet<>(Arrays.asList(allowed));
+			for (String option : options.keySet()) {
+				if (!known.contains(option)) {
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			}
+			if (positionals.size() < minPositionals) {
+				throw new IllegalArgumentException("Missing cluster name");
+			}
+			if (positionals.size() > maxPositionals) {
+				throw new IllegalArgumentException("Unexpected argument " + positionals.get(maxPositionals));
+			}
+		}
+
+		String positional(int index) {
+			return positionals.get(index);
+		}
+
+		int positionalCount() {
+			return positionals.size();
+		}
+
+		List<String> positionals() {
+			return positionals;
+		}
+
+		String option(String name) {
+			return options.get(name);
+		}
+
+		String required(String name) {
+			String value = options.get(name);
+			if (value == null) {
+				throw new IllegalArgumentException("Missing option " + name);
+			}
+			return value;
+		}
+
+		boolean flag(String name) {
+			return options.containsKey(name);
+		}
+	}
+}
@@ -0,0 +1,572 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.Cluster;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local stand-in for the Altus data engineering service, for load testing
+ * the integrations without spending cluster-hours. Point the samples at it
+ * by setting the endpoint in the [client] section of SampleResources.ini to
+ * http://localhost:PORT. Requests are not authenticated, but the SDK still
+ * needs valid-looking credentials to sign them.
+ *
+ * Clusters go from CREATING to CREATED, and from TERMINATING to TERMINATED
+ * once deleted. Jobs queue until their cluster is created, then run and
+ * either complete or fail. States are derived from timestamps when they are
+ * read, so tens of thousands of clusters and jobs cost no background work.
+ * Optional arguments:
+ * <pre>
+ *   --port 8090                      port to listen on
+ *   --cluster-creation-seconds 60    time for a cluster to reach CREATED
+ *   --cluster-termination-seconds 30 time for a deleted cluster to reach TERMINATED
+ *   --job-seconds 30                 running time of a job
+ *   --cluster-failure-rate 0.0       probability that a cluster ends up FAILED
+ *   --job-failure-rate 0.0           probability that a job ends up FAILED
+ *   --requests-per-second 0          throttle with HTTP 429 above this rate, 0 to disable
+ *   --page-size 100                  default page size of listClusters and listJobs
+ * </pre>
+ */
+public class AltusSimulator {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AltusSimulator.class);
+
+	private static final String API_PREFIX = "/api/v1/dataeng/";
+
+	private final Settings settings;
+	private final ObjectMapper mapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private final ConcurrentMap<String, SimulatedCluster> clusters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, SimulatedJob> jobs = new ConcurrentHashMap<>();
+	/* Append-only, in creation order, for paging through the account-wide listings. */
+	private final List<SimulatedCluster> clusterOrder = new ArrayList<>();
+	private final List<SimulatedJob> jobOrder = new ArrayList<>();
+	private final Throttle throttle;
+	private HttpServer server;
+
+	AltusSimulator(Settings settings) {
+		this.settings = settings;
+		this.throttle = new Throttle(settings.requestsPerSecond);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Settings settings = new Settings();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--port":
+					settings.port = Integer.parseInt(value);
+					break;
+				case "--cluster-creation-seconds":
+					settings.clusterCreation = Duration.ofSeconds(Long.parseLong(value));
+					break;
+				case "--cluster-termination-seconds":
+					settings.clusterTermination = Duration.ofSeconds(Long.parseLong(value));
+					break;
+				case "--job-seconds":
+					settings.jobDuration = Duration.ofSeconds(Long.parseLong(value));
+					break;
+				case "--cluster-failure-rate":
+					settings.clusterFailureRate = Double.parseDouble(value);
+					break;
+				case "--job-failure-rate":
+					settings.jobFailureRate = Double.parseDouble(value);
+					break;
+				case "--requests-per-second":
+					settings.requestsPerSecond = Integer.parseInt(value);
+					break;
+				case "--page-size":
+					settings.pageSize = Integer.parseInt(value);
+					break;
+				default:
+					LOG.error("Unknown option " + args[i]);
+					return;
+			}
+		}
+		new AltusSimulator(settings).start();
+	}
+
+	/**
+	 * Starts serving the Altus API.
+	 * @return String				Endpoint to configure in SampleResources.ini
+	 * @throws IOException	Occurs when the port cannot be bound
+	 */
+	String start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", settings.port), 0);
+		server.createContext(API_PREFIX, this::handle);
+		server.setExecutor(Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors() * 2,
+				ClusterStatusPoller.daemonThreads("altus-simulator")));
+		server.start();
+		String endpoint = "http://localhost:" + server.getAddress().getPort();
+		LOG.info("Altus simulator listening on " + endpoint);
+		return endpoint;
+	}
+
+	void stop() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			if (!throttle.tryAcquire()) {
+				error(exchange, 429, "THROTTLED", "Request rate exceeded");
+				return;
+			}
+			String operation = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+			Object response;
+			switch (operation) {
+				case "createAWSCluster":
+					response = createAWSCluster(mapper.readValue(in, CreateAWSClusterRequest.class));
+					break;
+				case "describeCluster":
+					response = describeCluster(mapper.readValue(in, DescribeClusterRequest.class));
+					break;
+				case "deleteCluster":
+					response = deleteCluster(mapper.readValue(in, DeleteClusterRequest.class));
+					break;
+				case "listClusters":
+					response = listClusters(mapper.readValue(in, ListClustersRequest.class));
+					break;
+				case "submitJobs":
+					response = submitJobs(mapper.readValue(in, SubmitJobsRequest.class));
+					break;
+				case "describeJob":
+					response = describeJob(mapper.readValue(in, DescribeJobRequest.class));
+					break;
+				case "listJobs":
+					response = listJobs(mapper.readValue(in, ListJobsRequest.class));
+					break;
+				default:
+					error(exchange, 404, "NOT_FOUND", "Unknown operation " + operation);
+					return;
+			}
+			respond(exchange, 200, mapper.writeValueAsBytes(response));
+		} catch (SimulatedError e) {
+			error(exchange, e.httpCode, e.code, e.getMessage());
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Unable to handle " + exchange.getRequestURI() + " " + e.getMessage());
+			error(exchange, 400, "INVALID_ARGUMENT", String.valueOf(e.getMessage()));
+		}
+	}
+
+	private CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		SimulatedCluster cluster = new SimulatedCluster(request.getClusterName(), request.getServiceType(),
+				"EMPTY_JOB_QUEUE".equals(request.getAutomaticTerminationCondition()),
+				chance(settings.clusterFailureRate));
+		if (clusters.putIfAbsent(cluster.name, cluster) != null) {
+			throw new SimulatedError(409, "ALREADY_EXISTS", "Cluster " + cluster.name + " already exists");
+		}
+		synchronized (clusterOrder) {
+			clusterOrder.add(cluster);
+		}
+		if (request.getJobs() != null) {
+			for (JobRequest job : request.getJobs()) {
+				addJob(cluster, job);
+			}
+		}
+		CreateAWSClusterResponse response = new CreateAWSClusterResponse();
+		response.setCluster(cluster.toCluster());
+		return response;
+	}
+
+	private DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		DescribeClusterResponse response = new DescribeClusterResponse();
+		response.setCluster(cluster(request.getClusterName()).toCluster());
+		return response;
+	}
+
+	private DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		cluster(request.getClusterName()).delete(System.nanoTime());
+		return new DeleteClusterResponse();
+	}
+
+	private ListClustersResponse listClusters(ListClustersRequest request) {
+		int pageSize = request.getPageSize() != null ? request.getPageSize() : settings.pageSize;
+		Page<SimulatedCluster> page = page(clusterOrder, request.getPageToken(), pageSize);
+		List<ClusterSummary> summaries = new ArrayList<>(page.items.size());
+		for (SimulatedCluster cluster : page.items) {
+			summaries.add(cluster.toSummary());
+		}
+		ListClustersResponse response = new ListClustersResponse();
+		response.setClusters(summaries);
+		response.setNextPageToken(page.nextPageToken);
+		return response;
+	}
+
+	private SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		SimulatedCluster cluster = cluster(request.getClusterName());
+		List<Job> submitted = new ArrayList<>(request.getJobs().size());
+		for (JobRequest job : request.getJobs()) {
+			submitted.add(addJob(cluster, job).toJob());
+		}
+		SubmitJobsResponse response = new SubmitJobsResponse();
+		response.setJobs(submitted);
+		return response;
+	}
+
+	private DescribeJobResponse describeJob(DescribeJobRequest request) {
+		SimulatedJob job = jobs.get(request.getJobId());
+		if (job == null) {
+			throw new SimulatedError(404, "NOT_FOUND", "Job " + request.getJobId() + " not found");
+		}
+		DescribeJobResponse response = new DescribeJobResponse();
+		response.setJob(job.toJob());
+		return response;
+	}
+
+	private ListJobsResponse listJobs(ListJobsRequest request) {
+		List<SimulatedJob> source = jobOrder;
+		if (request.getClusterName() != null) {
+			source = cluster(request.getClusterName()).jobs;
+		}
+		int pageSize = request.getPageSize() != null ? request.getPageSize() : settings.pageSize;
+		boolean newestFirst = !"OLDEST_TO_NEWEST".equals(request.getOrder());
+		Page<SimulatedJob> page = newestFirst
+				? pageNewestFirst(source, request.getPageToken(), pageSize)
+				: page(source, request.getPageToken(), pageSize);
+		List<JobSummary> summaries = new ArrayList<>(page.items.size());
+		for (SimulatedJob job : page.items) {
+			summaries.add(job.toSummary());
+		}
+		ListJobsResponse response = new ListJobsResponse();
+		response.setJobs(summaries);
+		response.setNextPageToken(page.nextPageToken);
+		return response;
+	}
+
+	private SimulatedJob addJob(SimulatedCluster cluster, JobRequest request) {
+		SimulatedJob job = new SimulatedJob(UUID.randomUUID().toString(), request, cluster,
+				chance(settings.jobFailureRate));
+		jobs.put(job.jobId, job);
+		synchronized (jobOrder) {
+			jobOrder.add(job);
+		}
+		synchronized (cluster.jobs) {
+			cluster.jobs.add(job);
+		}
+		return job;
+	}
+
+	private SimulatedCluster cluster(String clusterName) {
+		SimulatedCluster cluster = clusterName == null ? null : clusters.get(clusterName);
+		if (cluster == null) {
+			throw new SimulatedError(404, "NOT_FOUND", "Cluster " + clusterName + " not found");
+		}
+		return cluster;
+	}
+
+	/* Page tokens are offsets into append-only lists, so pages stay stable while items are added. */
+	private static <T> Page<T> page(List<T> source, String pageToken, int pageSize) {
+		synchronized (source) {
+			int from = pageToken == null ? 0 : Integer.parseInt(pageToken);
+			int to = Math.min(source.size(), from + pageSize);
+			List<T> items = new ArrayList<>(source.subList(Math.min(from, to), to));
+			return new Page<>(items, to < source.size() ? Integer.toString(to) : null);
+		}
+	}
+
+	/* Offsets count back from the newest item seen by the first page, encoded as "newest:offset". */
+	private static <T> Page<T> pageNewestFirst(List<T> source, String pageToken, int pageSize) {
+		synchronized (source) {
+			int newest = source.size();
+			int offset = 0;
+			if (pageToken != null) {
+				String[] parts = pageToken.split(":");
+				newest = Integer.parseInt(parts[0]);
+				offset = Integer.parseInt(parts[1]);
+			}
+			List<T> items = new ArrayList<>(Math.min(pageSize, Math.max(0, newest - offset)));
+			for (int i = newest - 1 - offset; i >= 0 && items.size() < pageSize; i--) {
+				items.add(source.get(i));
+			}
+			int next = offset + items.size();
+			return new Page<>(items, next < newest ? newest + ":" + next : null);
+		}
+	}
+
+	private static boolean chance(double probability) {
+		return probability > 0 && ThreadLocalRandom.current().nextDouble() < probability;
+	}
+
+	private void error(HttpExchange exchange, int httpCode, String code, String message) throws IOException {
+		Map<String, String> body = new LinkedHashMap<>();
+		body.put("code", code);
+		body.put("message", message);
+		respond(exchange, httpCode, mapper.writeValueAsBytes(body));
+	}
+
+	private static void respond(HttpExchange exchange, int httpCode, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.getResponseHeaders().set("x-altus-request-id", UUID.randomUUID().toString());
+		exchange.sendResponseHeaders(httpCode, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Durations, failure rates and limits of the simulator.
+	 */
+	static final class Settings {
+
+		int port = 8090;
+		Duration clusterCreation = Duration.ofSeconds(60);
+		Duration clusterTermination = Duration.ofSeconds(30);
+		Duration jobDuration = Duration.ofSeconds(30);
+		double clusterFailureRate;
+		double jobFailureRate;
+		int requestsPerSecond;
+		int pageSize = 100;
+	}
+
+	private final class SimulatedCluster {
+
+		private final String name;
+		private final String serviceType;
+		private final boolean terminateWhenIdle;
+		private final boolean fails;
+		private final long requestedNanos = System.nanoTime();
+		private final List<SimulatedJob> jobs = new ArrayList<>();
+		private volatile long deletedNanos = Long.MAX_VALUE;
+
+		SimulatedCluster(String name, String serviceType, boolean terminateWhenIdle, boolean fails) {
+			this.name = name;
+			this.serviceType = serviceType;
+			this.terminateWhenIdle = terminateWhenIdle;
+			this.fails = fails;
+		}
+
+		long createdNanos() {
+			return requestedNanos + settings.clusterCreation.toNanos();
+		}
+
+		void delete(long nanos) {
+			if (nanos < deletedNanos) {
+				deletedNanos = nanos;
+			}
+		}
+
+		String status() {
+			long now = System.nanoTime();
+			if (terminateWhenIdle && deletedNanos == Long.MAX_VALUE && now >= createdNanos()) {
+				long idleSince = idleSince();
+				if (idleSince <= now) {
+					delete(idleSince);
+				}
+			}
+			if (now >= deletedNanos) {
+				return now - deletedNanos >= settings.clusterTermination.toNanos() ? "TERMINATED" : "TERMINATING";
+			}
+			if (now < createdNanos()) {
+				return "CREATING";
+			}
+			return fails ? "FAILED" : "CREATED";
+		}
+
+		/* Time at which the last job of an EMPTY_JOB_QUEUE cluster finishes. */
+		private long idleSince() {
+			long idleSince = createdNanos();
+			synchronized (jobs) {
+				for (SimulatedJob job : jobs) {
+					idleSince = Math.max(idleSince, job.finishedNanos());
+				}
+			}
+			return idleSince;
+		}
+
+		Cluster toCluster() {
+			Cluster cluster = new Cluster();
+			cluster.setClusterName(name);
+			cluster.setServiceType(serviceType);
+			cluster.setStatus(status());
+			return cluster;
+		}
+
+		ClusterSummary toSummary() {
+			ClusterSummary summary = new ClusterSummary();
+			summary.setClusterName(name);
+			summary.setServiceType(serviceType);
+			summary.setStatus(status());
+			return summary;
+		}
+	}
+
+	private final class SimulatedJob {
+
+		private final String jobId;
+		private final String name;
+		private final String jobType;
+		private final SimulatedCluster cluster;
+		private final boolean fails;
+		private final long submittedNanos = System.nanoTime();
+
+		SimulatedJob(String jobId, JobRequest request, SimulatedCluster cluster, boolean fails) {
+			this.jobId = jobId;
+			this.name = request.getName();
+			this.jobType = request.getSparkJob() != null ? "SPARK"
+					: request.getHiveJob() != null ? "HIVE"
+					: request.getMr2Job() != null ? "MR2" : "UNKNOWN";
+			this.cluster = cluster;
+			this.fails = fails;
+		}
+
+		long startedNanos() {
+			return Math.max(submittedNanos, cluster.createdNanos());
+		}
+
+		long finishedNanos() {
+			return startedNanos() + settings.jobDuration.toNanos();
+		}
+
+		String status() {
+			long now = System.nanoTime();
+			if (cluster.fails && now >= cluster.createdNanos()) {
+				return "FAILED";
+			}
+			if (now >= cluster.deletedNanos && now < finishedNanos()) {
+				return "TERMINATING";
+			}
+			if (now < startedNanos()) {
+				return "QUEUED";
+			}
+			if (now < finishedNanos()) {
+				return "RUNNING";
+			}
+			return fails ? "FAILED" : "COMPLETED";
+		}
+
+		Job toJob() {
+			Job job = new Job();
+			job.setJobId(jobId);
+			job.setName(name);
+			job.setJobType(jobType);
+			job.setClusterName(cluster.name);
+			job.setStatus(status());
+			return job;
+		}
+
+		JobSummary toSummary() {
+			JobSummary summary = new JobSummary();
+			summary.setJobId(jobId);
+			summary.setJobName(name);
+			summary.setJobType(jobType);
+			summary.setClusterName(cluster.name);
+			summary.setStatus(status());
+			return summary;
+		}
+	}
+
+	private static final class Page<T> {
+
+		private final List<T> items;
+		private final String nextPageToken;
+
+		Page(List<T> items, String nextPageToken) {
+			this.items = items;
+			this.nextPageToken = nextPageToken;
+		}
+	}
+
+	/**
+	 * Token bucket refilled continuously at the configured rate, with one second of burst.
+	 */
+	private static final class Throttle {
+
+		private final double permitsPerNano;
+		private final double capacity;
+		private double permits;
+		private long refilledNanos = System.nanoTime();
+
+		Throttle(int requestsPerSecond) {
+			this.permitsPerNano = requestsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+			this.capacity = requestsPerSecond;
+			this.permits = capacity;
+		}
+
+		synchronized boolean tryAcquire() {
+			if (capacity <= 0) {
+				return true;
+			}
+			long now = System.nanoTime();
+			permits = Math.min(capacity, permits + (now - refilledNanos) * permitsPerNano);
+			refilledNanos = now;
+			if (permits < 1) {
+				return false;
+			}
+			permits--;
+			return true;
+		}
+	}
+
+	private static final class SimulatedError extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int httpCode;
+		private final String code;
+
+		SimulatedError(int httpCode, String code, String message) {
+			super(message);
+			this.httpCode = httpCode;
+			this.code = code;
+		}
+	}
+}
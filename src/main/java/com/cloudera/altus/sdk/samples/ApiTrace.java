@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusClientException;
+import com.cloudera.altus.AltusServiceException;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.cloudera.altus.dataeng.model.Cluster;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary trace of DataengClient calls, written by {@link RecordingDataengClient}
+ * and served back by {@link ReplayingDataengClient}. A trace is a gzip stream
+ * made of a header followed by one record per call:
+ * <pre>
+ * header:  int magic "ALTR", short version, long start of the recording in epoch millis
+ * record:  byte operation, long start of the call since the start of the recording (ns),
+ *          long latency (ns), byte outcome, utf subject, json request, then
+ *            RESPONSE        json response
+ *            SERVICE_ERROR   int http code, utf error code, utf message
+ *            CLIENT_ERROR    utf message
+ * </pre>
+ * The operation is its code in the table of the trace format, which is only
+ * ever appended to, so that old traces keep their meaning. Records of
+ * operations added by a later version are skipped when read. The subject
+ * is the cluster name, or the job id for describeJob, and is empty for
+ * listClusters. JSON bodies are written as an int length followed by UTF-8
+ * bytes. The stream is flushed after every record, so a trace survives a
+ * crash of the JVM up to its last call. Dates, such as the creationDate of
+ * clusters and jobs, are written as ISO-8601 strings.
+ *
+ * The Cloudera Manager password and the SSH public key are removed from the
+ * requests before they are written.
+ */
+final class ApiTrace {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ApiTrace.class);
+
+	private static final int MAGIC = 0x414c5452;
+	private static final short VERSION = 1;
+
+	static final byte RESPONSE = 0;
+	static final byte SERVICE_ERROR = 1;
+	static final byte CLIENT_ERROR = 2;
+
+	/* Operation codes of the trace format, new operations must be appended. */
+	private static final List<String> OPERATIONS = Collections.unmodifiableList(Arrays.asList(
+			"createAWSCluster", "describeCluster", "deleteCluster", "listClusters",
+			"submitJobs", "describeJob", "listJobs"));
+
+	private static final List<String> REDACTED = Arrays.asList("clouderaManagerPassword", "publicKey");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.registerModule(new JavaTimeModule())
+			.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	private ApiTrace() {
+	}
+
+	/**
+	 * Reads a whole trace. A record torn by a crash ends the trace.
+	 * @param file						Trace to read
+	 * @return List						Records, ordered by the start of their call
+	 * @throws IOException		Occurs when the file cannot be read or is not a trace
+	 */
+	static List<Record> read(Path file) throws IOException {
+		List<Record> records = new ArrayList<>();
+		int skipped = 0;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not an Altus trace");
+			}
+			short version = in.readShort();
+			if (version != VERSION) {
+				throw new IOException(file + " is a trace of unsupported version " + version);
+			}
+			in.readLong();
+			while (true) {
+				Record record = Record.read(in);
+				if (record == null) {
+					skipped++;
+				} else {
+					records.add(record);
+				}
+			}
+		} catch (EOFException eof) {
+			/* End of the trace, or of the part written before a crash. */
+		}
+		if (skipped > 0) {
+			LOG.info("Skipped " + skipped + " records of operations unknown to this version in " + file);
+		}
+		records.sort(Comparator.comparingLong(Record::getOffsetNanos));
+		return records;
+	}
+
+	/**
+	 * Writes a describeCluster response carrying a creation date as a record
+	 * and reads it back. Recording and replaying check this first, so that a
+	 * mapper unable to handle the models of the SDK fails the start instead of
+	 * leaving every response out of the trace.
+	 * @throws IllegalStateException		Occurs when the response does not survive the trip
+	 */
+	static void checkRoundTrip() {
+		ZonedDateTime created = ZonedDateTime.of(2018, 6, 1, 12, 30, 0, 0, ZoneOffset.ofHours(2));
+		Cluster cluster = new Cluster();
+		cluster.setClusterName("round-trip");
+		cluster.setCreationDate(created);
+		DescribeClusterResponse response = new DescribeClusterResponse();
+		response.setCluster(cluster);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new Record("describeCluster", "round-trip", 0, 0, RESPONSE, toJson(response), toJson(response),
+					0, null, null).write(new DataOutputStream(bytes));
+			Record read = Record.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			Cluster readCluster = fromJson(read.getResponse(), DescribeClusterResponse.class).getCluster();
+			if (readCluster == null || readCluster.getCreationDate() == null
+					|| !created.isEqual(readCluster.getCreationDate())) {
+				throw new IllegalStateException("The creation date of a cluster does not survive the trace");
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalStateException("A describeCluster response cannot be traced " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @param value			Request or response of the SDK
+	 * @return JsonNode	Its JSON tree, without the fields that must not be written
+	 */
+	static JsonNode toJson(Object value) {
+		JsonNode tree = MAPPER.valueToTree(value);
+		if (tree instanceof ObjectNode) {
+			((ObjectNode) tree).remove(REDACTED);
+		}
+		return tree;
+	}
+
+	/**
+	 * @param tree			JSON tree of a recorded request or response
+	 * @param type			Model class of the SDK to read it as
+	 * @return T				New instance of the model class
+	 */
+	static <T> T fromJson(JsonNode tree, Class<T> type) {
+		return MAPPER.convertValue(tree, type);
+	}
+
+	private static void writeJson(DataOutputStream out, JsonNode tree) throws IOException {
+		byte[] bytes = MAPPER.writeValueAsBytes(tree);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static JsonNode readJson(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return MAPPER.readTree(bytes);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeUTF(value == null ? "" : value);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		String value = in.readUTF();
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * One call: its request, and its response or the error it failed with.
+	 */
+	static final class Record {
+
+		private final String operation;
+		private final String subject;
+		private final long offsetNanos;
+		private final long latencyNanos;
+		private final byte outcome;
+		private final JsonNode request;
+		private final JsonNode response;
+		private final int httpCode;
+		private final String errorCode;
+		private final String message;
+
+		Record(String operation, String subject, long offsetNanos, long latencyNanos, byte outcome,
+				JsonNode request, JsonNode response, int httpCode, String errorCode, String message) {
+			this.operation = operation;
+			this.subject = subject;
+			this.offsetNanos = offsetNanos;
+			this.latencyNanos = latencyNanos;
+			this.outcome = outcome;
+			this.request = request;
+			this.response = response;
+			this.httpCode = httpCode;
+			this.errorCode = errorCode;
+			this.message = message;
+		}
+
+		String getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return String		Cluster name, or job id for describeJob, or null for listClusters
+		 */
+		String getSubject() {
+			return subject;
+		}
+
+		/**
+		 * @return long		Start of the call since the start of the recording
+		 */
+		long getOffsetNanos() {
+			return offsetNanos;
+		}
+
+		long getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		JsonNode getRequest() {
+			return request;
+		}
+
+		/**
+		 * @return JsonNode		Response of the call, or null if it failed
+		 */
+		JsonNode getResponse() {
+			return response;
+		}
+
+		/**
+		 * @return boolean		True for the failures that are retried: throttling, 5xx codes and client errors
+		 */
+		boolean isTransientFailure() {
+			return outcome == CLIENT_ERROR || outcome == SERVICE_ERROR && (httpCode == 429 || httpCode >= 500);
+		}
+
+		/**
+		 * @return RuntimeException		Exception the call failed with, as thrown by the SDK
+		 */
+		RuntimeException toException() {
+			if (outcome == SERVICE_ERROR) {
+				return new AltusServiceException(null, httpCode, Collections.<String, List<String>>emptyMap(),
+						errorCode, message);
+			}
+			return new AltusClientException(message);
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeByte(operationCode(operation));
+			out.writeLong(offsetNanos);
+			out.writeLong(latencyNanos);
+			out.writeByte(outcome);
+			writeString(out, subject);
+			writeJson(out, request);
+			if (outcome == RESPONSE) {
+				writeJson(out, response);
+			} else if (outcome == SERVICE_ERROR) {
+				out.writeInt(httpCode);
+				writeString(out, errorCode);
+				writeString(out, message);
+			} else {
+				writeString(out, message);
+			}
+		}
+
+		/* Returns null for a record of an operation unknown to this version, which is read and dropped. */
+		private static Record read(DataInputStream in) throws IOException {
+			int code = in.readUnsignedByte();
+			String operation = code < OPERATIONS.size() ? OPERATIONS.get(code) : null;
+			long offsetNanos = in.readLong();
+			long latencyNanos = in.readLong();
+			byte outcome = in.readByte();
+			String subject = readString(in);
+			JsonNode request = readJson(in);
+			Record record;
+			switch (outcome) {
+				case RESPONSE:
+					record = new Record(operation, subject, offsetNanos, latencyNanos, outcome,
+							request, readJson(in), 0, null, null);
+					break;
+				case SERVICE_ERROR:
+					record = new Record(operation, subject, offsetNanos, latencyNanos, outcome,
+							request, null, in.readInt(), readString(in), readString(in));
+					break;
+				case CLIENT_ERROR:
+					record = new Record(operation, subject, offsetNanos, latencyNanos, outcome,
+							request, null, 0, null, readString(in));
+					break;
+				default:
+					throw new IOException("Unknown outcome " + outcome + " in the trace");
+			}
+			return operation == null ? null : record;
+		}
+
+		private static int operationCode(String operation) {
+			int code = OPERATIONS.indexOf(operation);
+			if (code < 0) {
+				throw new IllegalArgumentException("Operation " + operation + " has no code in the trace format");
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Appends records to a trace. Calls completing concurrently are written
+	 * one after the other, in the order they complete.
+	 */
+	static final class Writer implements AutoCloseable {
+
+		private static volatile Writer shared;
+
+		private final Path file;
+		private final long startNanos = System.nanoTime();
+		private final DataOutputStream out;
+
+		/**
+		 * Creates the trace, replacing any existing file.
+		 * @param file						File of the trace
+		 * @throws IOException		Occurs when the file cannot be written
+		 */
+		Writer(Path file) throws IOException {
+			this.file = file;
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(Files.newOutputStream(file), true)));
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			out.flush();
+		}
+
+		/**
+		 * Returns the writer of the recordFile of the [trace] section of
+		 * SampleResources.ini. The trace is closed when the JVM exits.
+		 * @return Writer		Shared writer, or null when no recordFile is configured
+		 */
+		static Writer shared() {
+			Writer writer = shared;
+			if (writer == null) {
+				synchronized (Writer.class) {
+					writer = shared;
+					String recordFile = SampleConfig.current().getTraceRecordFile();
+					if (writer == null && recordFile != null) {
+						checkRoundTrip();
+						try {
+							writer = new Writer(Paths.get(recordFile));
+						} catch (IOException ioe) {
+							LOG.error("Unable to create the trace " + recordFile + " " + ioe.getMessage());
+							throw new UncheckedIOException(ioe);
+						}
+						Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "altus-trace-close"));
+						LOG.info("Recording the calls to Altus to " + recordFile);
+						shared = writer;
+					}
+				}
+			}
+			return writer;
+		}
+
+		/**
+		 * Writes a call that returned. A call that cannot be written is logged and
+		 * left out of the trace, recording never fails the call itself.
+		 * @param operation		Name of the DataengClient method
+		 * @param subject			Cluster name, or job id for describeJob
+		 * @param startNanos	System.nanoTime() when the call started
+		 * @param request			Request of the call
+		 * @param response		Response of the call
+		 */
+		void response(String operation, String subject, long startNanos, Object request, Object response) {
+			long latencyNanos = System.nanoTime() - startNanos;
+			try {
+				write(new Record(operation, subject, startNanos - this.startNanos, latencyNanos, RESPONSE,
+						toJson(request), toJson(response), 0, null, null));
+			} catch (IllegalArgumentException iae) {
+				LOG.error("Unable to record " + operation + " " + iae.getMessage());
+			}
+		}
+
+		/**
+		 * Writes a call that failed.
+		 * @param operation		Name of the DataengClient method
+		 * @param subject			Cluster name, or job id for describeJob
+		 * @param startNanos	System.nanoTime() when the call started
+		 * @param request			Request of the call
+		 * @param failure			Exception the call failed with
+		 */
+		void failure(String operation, String subject, long startNanos, Object request, RuntimeException failure) {
+			long latencyNanos = System.nanoTime() - startNanos;
+			try {
+				if (failure instanceof AltusServiceException) {
+					AltusServiceException ase = (AltusServiceException) failure;
+					write(new Record(operation, subject, startNanos - this.startNanos, latencyNanos, SERVICE_ERROR,
+							toJson(request), null, ase.getHttpCode(), ase.getCode(), ase.getMessage()));
+				} else {
+					write(new Record(operation, subject, startNanos - this.startNanos, latencyNanos, CLIENT_ERROR,
+							toJson(request), null, 0, null, failure.getMessage()));
+				}
+			} catch (IllegalArgumentException iae) {
+				LOG.error("Unable to record " + operation + " " + iae.getMessage());
+			}
+		}
+
+		private synchronized void write(Record record) {
+			try {
+				record.write(out);
+				out.flush();
+			} catch (IOException ioe) {
+				LOG.error("Unable to write to the trace " + file + " " + ioe.getMessage());
+			}
+		}
+
+		@Override
+		public synchronized void close() {
+			try {
+				out.close();
+			} catch (IOException ioe) {
+				LOG.error("Unable to close the trace " + file + " " + ioe.getMessage());
+			}
+		}
+	}
+}
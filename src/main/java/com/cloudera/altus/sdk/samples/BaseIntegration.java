@@ -18,24 +18,23 @@ package com.cloudera.altus.sdk.samples;
 
 import com.cloudera.altus.AltusClientException;
 import com.cloudera.altus.AltusServiceException;
-import com.cloudera.altus.client.AltusClientConfiguration;
-import com.cloudera.altus.client.AltusClientConfigurationBuilder;
 import com.cloudera.altus.dataeng.api.DataengClient;
-import com.cloudera.altus.dataeng.api.DataengClientBuilder;
 import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
 import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
 import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
 import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
 import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
-import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
-import org.ini4j.Wini;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,22 +43,17 @@ abstract class BaseIntegration {
 
 	private static final Logger LOG = LoggerFactory.getLogger(BaseIntegration.class);
 
-	private Wini ini = null;
-
-	public Wini getIniFile() throws IOException {
-		if (ini == null) {
-		  InputStream in = getClass().getClassLoader().getResourceAsStream("SampleResources.ini");
-		  if (in == null) {
-		    LOG.error("Unable to read SampleResources.ini file");
-		    throw new RuntimeException("Unable to load SampleResources.ini file ");
-      }
-      ini = new Wini(in);
-		}
-		return ini;
+	/**
+	 * @return SampleConfig		Current snapshot of SampleResources.ini
+	 */
+	SampleConfig config() {
+		return SampleConfig.current();
 	}
 
 	/**
-	 * Creates a DataengClient that's used to communicate to the backend services.
+	 * Returns the DataengClient that's used to communicate to the backend services.
+	 * Clients are shared through the {@link DataengClientRegistry}, so integrations
+	 * using the same profile, application name and endpoint reuse one client.
 	 * This is agnostic to the cloud provider.
 	 * @return Dataengclient
 	 */
@@ -67,24 +61,9 @@ abstract class BaseIntegration {
 		try {
 
 		  /* By default, it will use the default credentials in the ~/.altus directory.
-		  You can also pass in the credential provider by specifying an AltusCredentialsProvider object
-		  in the withCredentials method.
-		  EX: DataengClientBuilder.defaultBuilder().withClientConfiguration(altusClientConfiguration)
-		  .withCredentials(altusCredentialsProvider)*/
-
-			Wini ini = getIniFile();
-			/* Application name denotes who is creating the cluster functions. */
-			AltusClientConfiguration altusClientConfiguration = AltusClientConfigurationBuilder.defaultBuilder()
-					.withClientApplicationName(ini.get("client", "clientApplicationName"))
-					.build();
-			/* Creates the DataengClient based on the default values other than the application name passed in. */
-			return DataengClientBuilder.defaultBuilder()
-					.withClientConfiguration(altusClientConfiguration)
-					.build();
-		}	catch (IOException ioe) {
-				LOG.error("Unable to load SampleResources.ini file " + ioe.getMessage());
-				throw new RuntimeException(
-				    "Unable to load SampleResources.ini file " + ioe.getMessage());
+		  You can also use a named profile of the credentials file by setting the
+		  profile property in the client section of SampleResources.ini. */
+			return DataengClientRegistry.shared().get(config());
 		} catch (AltusClientException ace) {
 			LOG.error("Client error occurred while creating the Altus client" + ace.getMessage());
 			throw ace;
@@ -100,39 +79,75 @@ abstract class BaseIntegration {
 	 * @return ClusterStatus  Status of the cluster being created
 	 */
 	String createAWSCluster(DataengClient client, String clusterName, String clusterType) {
-		try {
-			Wini ini = getIniFile();
-
-			 /* Create cluster with minimal input and use defaults (e.g. for ebs config) */
-			CreateAWSClusterRequest request = new CreateAWSClusterRequest();
-			request.setClusterName(clusterName);
-
-			 /* Specify the CDH version to use such for CDH5.13, put CDH513 there */
-			request.setCdhVersion(ini.get("AWSCluster", "cdhVersion"));
-
-			String publicKey = ini.get("credentials", "ssh_public_key_location");
-			String sshKey = getSshKeyContents(publicKey);
+		return pollClusterStatus(client, requestAWSCluster(client, clusterName, clusterType));
+	}
 
-			request.setPublicKey(sshKey);
+	/**
+	 * Creates an AWS Cluster without blocking the caller. The create request runs
+	 * on the {@link WorkflowExecutors} executor and the cluster is then tracked by
+	 * the shared {@link ClusterStatusPoller}.
+	 * @param client					Used to communicate with the backend services
+	 * @param clusterName			Name of the cluster to be created
+	 * @param clusterType			Type of the cluster to be created
+	 * @return Future					Completes with the final status of the cluster
+	 */
+	CompletableFuture<String> createAWSClusterAsync(DataengClient client, String clusterName, String clusterType) {
+		return CompletableFuture
+				.supplyAsync(() -> requestAWSCluster(client, clusterName, clusterType), WorkflowExecutors.shared())
+				.thenCompose(name -> ClusterStatusPoller.shared().track(client, name));
+	}
 
-			request.setServiceType(clusterType);
-			 /* Specify the AWS instance type such as m4.xlarge */
-			request.setInstanceType(ini.get("AWSCluster", "instanceType"));
-			request.setWorkersGroupSize(3);
+	/**
+	 * Sends the createAWSCluster request without waiting for the cluster.
+	 * @param client					Used to communicate with the backend services
+	 * @param clusterName			Name of the cluster to be created
+	 * @param clusterType			Type of the cluster to be created
+	 * @return String					Name of the cluster being created
+	 */
+	String requestAWSCluster(DataengClient client, String clusterName, String clusterType) {
+		return requestAWSCluster(client, clusterName, clusterType, config().getWorkerSize());
+	}
 
-			 /* Altus environment name */
-			request.setEnvironmentName(ini.get("AWSCluster", "environmentName"));
-			 /* Cloudera Manager username here */
-			request.setClouderaManagerUsername(ini.get("AWSCluster", "CMUsername"));
-			 /* Cloudera Manager password here */
-			request.setClouderaManagerPassword(ini.get("AWSCluster", "CMPassword"));
+	/**
+	 * Sends the createAWSCluster request without waiting for the cluster. A
+	 * live cluster of the same name recorded in the {@link StateJournal} is
+	 * reused instead.
+	 * @param client						Used to communicate with the backend services
+	 * @param clusterName				Name of the cluster to be created
+	 * @param clusterType				Type of the cluster to be created
+	 * @param workersGroupSize	Number of worker nodes, unless the SizingAdvisor fits another size
+	 * @return String						Name of the cluster being created
+	 */
+	String requestAWSCluster(DataengClient client, String clusterName, String clusterType, int workersGroupSize) {
+		StateJournal journal = StateJournal.shared();
+		if (journal != null && journal.liveClusterStatus(clusterName) != null) {
+			/* Created by a previous run that did not get to delete it, unless it was deleted since. */
+			String status = describeOwnedCluster(client, journal, clusterName);
+			if (status != null && StateJournal.isLive(status)) {
+				LOG.info("Reusing cluster " + clusterName + " from the journal, its status is " + status);
+				return clusterName;
+			}
+			LOG.info("Cluster " + clusterName + " from the journal is " + (status == null ? "gone" : status)
+					+ ", creating it again");
+		}
+		try {
+			 /*
+			 Create cluster with minimal input and use defaults (e.g. for ebs config).
+			 The CDH version, AWS instance type, Altus environment name and
+			 Cloudera Manager credentials come from the AWSCluster section of
+			 SampleResources.ini. The SizingAdvisor may replace the worker count and
+			 instance type with a size fitted to past runs of this integration's job.
+			 */
+			CreateAWSClusterRequest request = RequestTemplates.shared().newCreateAWSClusterRequest(
+					clusterName, clusterType, workersGroupSize);
+			SizingAdvisor.shared().advise(request, newJobRequest());
 
 			CreateAWSClusterResponse response = client.createAWSCluster(request);
-			return pollClusterStatus(client, response.getCluster().getClusterName());
+			return response.getCluster().getClusterName();
 		} catch (IOException ioe) {
-			LOG.error("Unable to load SampleResources.ini file " + ioe.getMessage());
+			LOG.error("Unable to read the SSH public key " + ioe.getMessage());
 			throw new RuntimeException(
-			    "Unable to load SampleResources.ini file " + ioe.getMessage());
+			    "Unable to read the SSH public key " + ioe.getMessage());
 		} catch (AltusServiceException ase) {
 			LOG.error(
 			    "Altus exception occurred when creating the cluster "
@@ -142,8 +157,28 @@ abstract class BaseIntegration {
 		}
 	}
 
+	/*
+	Asks Altus for the status of a cluster the journal still holds as live. The
+	journaling client records the answer, and a cluster that no longer exists
+	is recorded as deleted.
+	*/
+	private static String describeOwnedCluster(DataengClient client, StateJournal journal, String clusterName) {
+		DescribeClusterRequest request = new DescribeClusterRequest();
+		request.setClusterName(clusterName);
+		try {
+			return client.describeCluster(request).getCluster().getStatus();
+		} catch (AltusServiceException ase) {
+			if (ase.getHttpCode() != 404) {
+				throw ase;
+			}
+			journal.clusterDeleted(clusterName);
+			return null;
+		}
+	}
+
 	/**
-	 * Poll the cluster to see if it was created successfully
+	 * Poll the cluster to see if it was created successfully. Blocks until the
+	 * shared {@link ClusterStatusPoller} reports a final status.
 	 * @param client				DataengClient used for polling the cluster
 	 * @param clusterName		Cluster to poll
 	 * @return ClusterStatus	Final status of the cluster
@@ -151,31 +186,40 @@ abstract class BaseIntegration {
 	String pollClusterStatus(DataengClient client, String clusterName) {
 
 	  /* Poll the cluster to determine if cluster was created successfully */
-		DescribeClusterRequest describeClusterRequest = new DescribeClusterRequest();
-		describeClusterRequest.setClusterName(clusterName);
-
-		while (true) {
-			String clusterStatus = client.describeCluster(describeClusterRequest).getCluster().getStatus();
-			if ("CREATED".equals(clusterStatus)) {
-				LOG.info("Successfully created AWS cluster " + clusterName);
-				return clusterStatus;
-			} else if ("FAILED".equals(clusterStatus)
-					|| "TERMINATING".equals(clusterStatus)) {
-				LOG.error("AWS cluster " + clusterName + " was unable to get created. "
-											+ " Cluster status is " + clusterStatus);
-				return clusterStatus;
-			} else {
-				try {
-					Thread.sleep(Duration.ofMinutes(1).toMillis());
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+		String clusterStatus = await(ClusterStatusPoller.shared().track(client, clusterName));
+		if ("CREATED".equals(clusterStatus)) {
+			LOG.info("Successfully created AWS cluster " + clusterName);
+		} else {
+			LOG.error("AWS cluster " + clusterName + " was unable to get created. "
+										+ " Cluster status is " + clusterStatus);
+		}
+		return clusterStatus;
+	}
+
+	/**
+	 * Waits for a future returned by one of the pollers.
+	 * Failures of the underlying SDK calls are rethrown as they were raised.
+	 * @param future		Future to wait for
+	 * @return T				Value the future completed with
+	 */
+	static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
 			}
+			throw new RuntimeException(e.getCause());
 		}
 	}
 
 	/**
-	 * Deletes the cluster. This is agnostic to the cloud provider.
+	 * Deletes the cluster. This is agnostic to the cloud provider. The call
+	 * returns once the deletion is accepted; use {@link #deleteClusters} to wait
+	 * for the cluster to terminate.
 	 * @param client        Client used to communicate to backend services
 	 * @param clusterName   Name of cluster to delete
 	 * @return Status code  Code of 200 represents that successful cluster deletion is in progress.
@@ -189,6 +233,19 @@ abstract class BaseIntegration {
 		return response.getHttpCode();
 	}
 
+	/**
+	 * Deletes clusters in parallel and waits until each one terminated. This is
+	 * agnostic to the cloud provider.
+	 * @param client        Client used to communicate to backend services
+	 * @param clusterNames  Names of the clusters to delete
+	 * @return Map          Result per cluster name, see {@link ClusterReaper.Result#isTerminated()}
+	 */
+	Map<String, ClusterReaper.Result> deleteClusters(DataengClient client, Collection<String> clusterNames) {
+		try (ClusterReaper reaper = new ClusterReaper(client)) {
+			return reaper.teardown(clusterNames);
+		}
+	}
+
 	/**
 	 * Used to create a job on the Altus cluster. This is agnostic to the cloud provider.
 	 * Throws an AltusServiceException (RuntimeException) on failure
@@ -199,33 +256,240 @@ abstract class BaseIntegration {
 	abstract void createJob(DataengClient client, String clusterName);
 
 	/**
-	 * Poll the job to see if it was created successfully
-	 * @param client		DataengClient used for polling the job status
-	 * @param jobId		Job Id to poll
-	 * @return JobStatus	Final status of the job
-	 */
-	String pollJobStatus(DataengClient client, String jobId) {
-
-	  /* Poll the job to determine if cluster was created successfully */
-		DescribeJobRequest jobRequest = new DescribeJobRequest();
-		jobRequest.setJobId(jobId);
-
-		while (true) {
-			String currentJobStatus = client.describeJob(jobRequest).getJob().getStatus();
-			if ("COMPLETED".equals(currentJobStatus)) {
-				LOG.info("Successfully completed job ");
-				return currentJobStatus;
-			} else if ("FAILED".equals(currentJobStatus)
-					|| "TERMINATING".equals(currentJobStatus)) {
-				LOG.error("Job " + jobId + currentJobStatus.toString());
-				return currentJobStatus;
-			} else {
-				try {
-					Thread.sleep(Duration.ofSeconds(30).toMillis());
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+	 * Builds the job this integration submits. It is only called when the
+	 * prototype is first needed and again when SampleResources.ini changes;
+	 * use {@link #newJobRequest()} to get a request to submit.
+	 * @param config				Configuration the job is built from
+	 * @return JobRequest		Prototype of the job
+	 */
+	abstract JobRequest buildJobPrototype(SampleConfig config);
+
+	/**
+	 * @return JobRequest		New copy of this integration's job prototype
+	 */
+	JobRequest newJobRequest() {
+		return RequestTemplates.shared().newJobRequest(getClass(), this::buildJobPrototype, null);
+	}
+
+	/**
+	 * Submits a single job to the cluster. The job goes through the cluster's
+	 * {@link JobSubmissionQueue}, so jobs submitted concurrently by other threads
+	 * share the same submitJobs call.
+	 * Throws an AltusServiceException (RuntimeException) on failure
+	 * @param client				Client used to communicate to backend services
+	 * @param clusterName		Name of cluster to submit the job to
+	 * @param job						Job to submit
+	 * @return String				Id of the submitted job
+	 */
+	String submitJob(DataengClient client, String clusterName, JobRequest job) {
+		return await(JobSubmissionQueue.forCluster(client, clusterName).submit(job));
+	}
+
+	/**
+	 * Poll the job to see if it was created successfully. Blocks until the
+	 * shared {@link JobStatusTracker} reports a final status.
+	 * @param client				DataengClient used for polling the job status
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param jobId					Job Id to poll
+	 * @return JobStatus		Final status of the job
+	 */
+	String pollJobStatus(DataengClient client, String clusterName, String jobId) {
+
+	  /* Poll the job to determine if it completed successfully */
+		String currentJobStatus = await(JobStatusTracker.shared().track(client, clusterName, jobId));
+		if ("COMPLETED".equals(currentJobStatus)) {
+			LOG.info("Successfully completed job " + jobId);
+		} else {
+			LOG.error("Job " + jobId + " " + currentJobStatus);
+		}
+		return currentJobStatus;
+	}
+
+	/**
+	 * Runs the whole workflow of this integration without blocking the caller:
+	 * creates the cluster, submits the integration's job once the cluster is
+	 * CREATED and waits for the job to finish. No thread is held while the
+	 * workflow waits for the cluster or the job.
+	 * @param client				Client used to communicate to backend services
+	 * @param clusterName		Name of the cluster to be created
+	 * @param clusterType		Type of the cluster to be created
+	 * @return Future				Completes with the final status of the job, or of the cluster when it was not created
+	 */
+	CompletableFuture<String> runWorkflowAsync(DataengClient client, String clusterName, String clusterType) {
+		return createAWSClusterAsync(client, clusterName, clusterType)
+				.thenCompose(clusterStatus -> {
+					if (!"CREATED".equals(clusterStatus)) {
+						LOG.error("AWS cluster " + clusterName + " was unable to get created. "
+								+ " Cluster status is " + clusterStatus);
+						return CompletableFuture.completedFuture(clusterStatus);
+					}
+					return JobSubmissionQueue.forCluster(client, clusterName).submit(newJobRequest())
+							.thenCompose(jobId -> JobStatusTracker.shared().track(client, clusterName, jobId));
+				});
+	}
+
+	/**
+	 * Runs the workflow of this integration with the job submitted right after
+	 * the create request is accepted, instead of once the cluster is CREATED.
+	 * The job queues on the cluster while it is being created, and the cluster
+	 * and the job are tracked at the same time. When the cluster does not reach
+	 * CREATED, the workflow fails or, when rerouting is enabled and the cluster
+	 * reported FAILED or TERMINATED, runs the job again on a cluster leased from
+	 * the {@link ClusterPool}. Errors of the poller fail the workflow and are
+	 * never rerouted.
+	 * @param client				Client used to communicate to backend services
+	 * @param clusterName		Name of the cluster to be created
+	 * @param clusterType		Type of the cluster to be created
+	 * @param reroute				Whether to run the job on a pooled cluster when the cluster fails
+	 * @return Future				Completes with the final status of the job
+	 */
+	CompletableFuture<String> runPipelinedWorkflowAsync(DataengClient client, String clusterName,
+			String clusterType, boolean reroute) {
+		CompletableFuture<String> created = CompletableFuture
+				.supplyAsync(() -> requestAWSCluster(client, clusterName, clusterType), WorkflowExecutors.shared());
+		CompletableFuture<String> jobStatus = created
+				.thenCompose(name -> JobSubmissionQueue.forCluster(client, name).submit(newJobRequest())
+						.thenCompose(jobId -> JobStatusTracker.shared().track(client, name, jobId)));
+		/*
+		The job only settles after the cluster. A failure to create or to track
+		the cluster fails the workflow: the job may still be running on it.
+		*/
+		return created.thenCompose(name -> ClusterStatusPoller.shared().track(client, name)
+				.thenCompose(status -> {
+					if ("CREATED".equals(status)) {
+						return jobStatus;
+					}
+					LOG.error("AWS cluster " + name + " was unable to get created. "
+							+ " Cluster status is " + status);
+					if (reroute && ("FAILED".equals(status) || "TERMINATED".equals(status))) {
+						LOG.info("Rerouting the job queued on " + name + " to a pooled cluster");
+						return runPooledWorkflowAsync(client, clusterType);
+					}
+					CompletableFuture<String> failed = new CompletableFuture<>();
+					failed.completeExceptionally(new IllegalStateException(
+							"Cluster " + name + " is " + status + ", its queued job cannot run"));
+					return failed;
+				}));
+	}
+
+	/**
+	 * Runs this integration's job on a cluster leased from the shared
+	 * {@link ClusterPool} instead of creating a cluster for it, without
+	 * blocking the caller. The cluster goes back to the pool once the job
+	 * reached a final status.
+	 * @param client				Client used to communicate to backend services
+	 * @param clusterType		Type of the cluster to lease
+	 * @return Future				Completes with the final status of the job
+	 */
+	CompletableFuture<String> runPooledWorkflowAsync(DataengClient client, String clusterType) {
+		return ClusterPool.shared().leaseAsync(clusterType).thenCompose(lease ->
+				JobSubmissionQueue.forCluster(client, lease.getClusterName()).submit(newJobRequest())
+						.thenCompose(jobId -> JobStatusTracker.shared().track(client, lease.getClusterName(), jobId))
+						.whenComplete((jobStatus, error) -> lease.close()));
+	}
+
+	/**
+	 * Runs many workflows of this integration concurrently and waits for all of
+	 * them. Cluster names are the prefix followed by the index of the workflow.
+	 * Idle pooled clusters are deleted once every workflow is done.
+	 * @param client				Client used to communicate to backend services
+	 * @param clusterPrefix	Prefix of the names of the clusters to be created
+	 * @param clusterType		Type of the clusters to be created
+	 * @param workflows			Number of workflows to run
+	 * @param mode					How each workflow gets its cluster
+	 * @return int					Number of workflows whose job COMPLETED
+	 */
+	int runWorkflows(DataengClient client, String clusterPrefix, String clusterType, int workflows,
+			WorkflowMode mode) {
+		LOG.info("Running " + workflows + " " + mode + " workflows on " + WorkflowExecutors.mode());
+		List<CompletableFuture<String>> results = new ArrayList<>(workflows);
+		for (int i = 0; i < workflows; i++) {
+			String clusterName = clusterPrefix + "-" + i;
+			results.add(runWorkflowAsync(client, clusterName, clusterType, mode).exceptionally(error -> {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				LOG.error("Workflow " + clusterName + " failed " + cause.getMessage());
+				return null;
+			}));
+		}
+		await(CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])));
+		ClusterPool.closeShared();
+		int completed = 0;
+		for (CompletableFuture<String> result : results) {
+			if ("COMPLETED".equals(result.join())) {
+				completed++;
+			}
+		}
+		LOG.info(completed + " of " + workflows + " workflows completed their job");
+		return completed;
+	}
+
+	private CompletableFuture<String> runWorkflowAsync(DataengClient client, String clusterName,
+			String clusterType, WorkflowMode mode) {
+		switch (mode) {
+			case POOLED:
+				return runPooledWorkflowAsync(client, clusterType);
+			case PIPELINED:
+				return runPipelinedWorkflowAsync(client, clusterName, clusterType, false);
+			case PIPELINED_REROUTE:
+				return runPipelinedWorkflowAsync(client, clusterName, clusterType, true);
+			default:
+				return runWorkflowAsync(client, clusterName, clusterType);
+		}
+	}
+
+	/**
+	 * @param args		Arguments of the main method
+	 * @param option	Option to look for, such as --pool
+	 * @return boolean	Whether the option is present
+	 */
+	static boolean hasOption(String[] args, String option) {
+		for (String arg : args) {
+			if (option.equals(arg)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the number of concurrent workflows requested with --workflows N.
+	 * @param args		Arguments of the main method
+	 * @return int		Number of workflows, or 0 to run the single blocking flow
+	 */
+	static int workflowCount(String[] args) {
+		for (int i = 0; i + 1 < args.length; i++) {
+			if ("--workflows".equals(args[i])) {
+				return Integer.parseInt(args[i + 1]);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * How the workflows started from the command line get their cluster.
+	 */
+	enum WorkflowMode {
+		/** Create the cluster, then submit the job once it is CREATED. */
+		SERIAL,
+		/** Submit the job as soon as the create request is accepted. */
+		PIPELINED,
+		/** Like PIPELINED, and run the job on a pooled cluster when the cluster fails. */
+		PIPELINED_REROUTE,
+		/** Lease a cluster from the pool. */
+		POOLED;
+
+		/**
+		 * @param args						Arguments of the main method, with --pipelined, --reroute or --pool
+		 * @return WorkflowMode		Mode selected by the arguments, SERIAL by default
+		 */
+		static WorkflowMode fromArgs(String[] args) {
+			if (hasOption(args, "--pool")) {
+				return POOLED;
+			}
+			if (hasOption(args, "--pipelined")) {
+				return hasOption(args, "--reroute") ? PIPELINED_REROUTE : PIPELINED;
 			}
+			return SERIAL;
 		}
 	}
 
@@ -238,6 +502,6 @@ abstract class BaseIntegration {
 	 * @throws IOException		Occurs when their is an issue reading in the file.
 	 */
 	String getSshKeyContents(String file) throws IOException{
-		return new String(Files.readAllBytes(Paths.get(file)));
+		return RequestTemplates.shared().sshKeyContents(file);
 	}
 }
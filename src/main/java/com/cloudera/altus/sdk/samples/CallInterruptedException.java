@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusClientException;
+
+/**
+ * Thrown when the thread waiting to send a call, for a retry delay or for
+ * the rate limiter, is interrupted. The interrupt flag of the thread is set
+ * again before it is thrown, so the caller sees a prompt cancellation and
+ * {@link ResilientDataengClient} never retries it.
+ */
+final class CallInterruptedException extends AltusClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param operation		Operation that was not called
+	 * @param cause				Interruption of the wait
+	 */
+	CallInterruptedException(String operation, InterruptedException cause) {
+		super("Interrupted while waiting to call " + operation, cause);
+	}
+}
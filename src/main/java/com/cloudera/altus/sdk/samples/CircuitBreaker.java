@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of one Altus endpoint, shared by every client talking to
+ * it. After a number of consecutive failed calls the circuit opens and calls
+ * fail fast instead of piling up on an endpoint that is down. Once the open
+ * duration has passed, a single call is let through: the circuit closes if
+ * it succeeds and opens again if it fails.
+ *
+ * Only failures that say something about the endpoint count: responses with
+ * a 429 or 5xx code and calls that got no response. Other 4xx responses are
+ * errors of the request and count as successes.
+ */
+final class CircuitBreaker implements CircuitBreakerMXBean {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+	static {
+		ClientMetrics.shared().addSource(CircuitBreaker::writePrometheus);
+	}
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String endpoint;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final LongAdder rejected = new LongAdder();
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAtNanos;
+	private long timesOpened;
+
+	/**
+	 * @param endpoint					Endpoint the breaker protects, used in messages
+	 * @param failureThreshold	Consecutive failures that open the circuit
+	 * @param openDuration			Time the circuit stays open before a call is let through
+	 */
+	CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration) {
+		this.endpoint = endpoint;
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * Returns the breaker of an endpoint, built from the [limits] section of
+	 * SampleResources.ini on first use.
+	 * @param endpoint					Altus endpoint, or null for the SDK default
+	 * @return CircuitBreaker		Breaker shared by every client of the endpoint
+	 */
+	static CircuitBreaker forEndpoint(String endpoint) {
+		String name = endpoint == null ? "<default>" : endpoint;
+		return BREAKERS.computeIfAbsent(name, key -> {
+			SampleConfig config = SampleConfig.current();
+			CircuitBreaker breaker = new CircuitBreaker(key, config.getBreakerFailureThreshold(),
+					config.getBreakerOpenDuration());
+			ClientMetrics.register(breaker, "type=CircuitBreaker,endpoint=" + ObjectName.quote(key));
+			return breaker;
+		});
+	}
+
+	private static void writePrometheus(StringBuilder out) {
+		out.append("# HELP altus_client_circuit_open Whether calls to the endpoint fail fast.\n")
+				.append("# TYPE altus_client_circuit_open gauge\n");
+		for (CircuitBreaker breaker : BREAKERS.values()) {
+			out.append("altus_client_circuit_open{endpoint=\"").append(breaker.getEndpoint()).append("\"} ")
+					.append("CLOSED".equals(breaker.getState()) ? 0 : 1).append('\n');
+		}
+	}
+
+	/**
+	 * @return boolean		Whether a call may be sent now. Every permitted call must be followed
+	 * 										by {@link #succeeded()} or {@link #failed()}.
+	 */
+	synchronized boolean tryAcquire() {
+		if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+			state = State.HALF_OPEN;
+			LOG.info("Probing endpoint " + endpoint + " after " + consecutiveFailures + " failures");
+			return true;
+		}
+		if (state != State.CLOSED) {
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	synchronized void succeeded() {
+		if (state != State.CLOSED) {
+			LOG.info("Endpoint " + endpoint + " is back, closing its circuit");
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+	}
+
+	synchronized void failed() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAtNanos = System.nanoTime();
+			timesOpened++;
+			LOG.error("Opening the circuit of endpoint " + endpoint + " after " + consecutiveFailures
+					+ " consecutive failures, calls fail fast for " + openNanos / 1000000000L + "s");
+		}
+	}
+
+	String getEndpoint() {
+		return endpoint;
+	}
+
+	@Override
+	public synchronized String getState() {
+		return state.name();
+	}
+
+	@Override
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	@Override
+	public synchronized long getTimesOpened() {
+		return timesOpened;
+	}
+
+	@Override
+	public long getRejectedCalls() {
+		return rejected.sum();
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusClientException;
+
+/**
+ * Thrown instead of sending a call while the {@link CircuitBreaker} of its
+ * endpoint is open. Nothing was sent, and retrying before the circuit lets a
+ * call through again would only be rejected the same way, so
+ * {@link ResilientDataengClient} never retries it.
+ */
+final class CircuitOpenException extends AltusClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param operation		Operation that was not called
+	 * @param endpoint		Endpoint whose circuit is open
+	 */
+	CircuitOpenException(String operation, String endpoint) {
+		super("Not calling " + operation + ", the circuit of endpoint " + endpoint + " is open");
+	}
+}
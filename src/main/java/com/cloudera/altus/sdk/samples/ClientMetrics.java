@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency, throughput and error metrics of the DataengClient operations,
+ * along with the time clusters take to reach CREATED and the time jobs take
+ * from submission to COMPLETED. Every metric is registered as an MXBean
+ * under the com.cloudera.altus.sdk.samples domain, unless the altus.samples.jmx
+ * system property is false. The [metrics] section of
+ * SampleResources.ini can also expose them in the Prometheus text format on
+ * an HTTP port, in a file rewritten periodically, or both.
+ *
+ * Other components, such as the rate limiter or the circuit breakers,
+ * register their own MXBeans with {@link #register} and add their own
+ * Prometheus metrics with {@link #addSource}.
+ */
+final class ClientMetrics {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClientMetrics.class);
+
+	static final String DOMAIN = "com.cloudera.altus.sdk.samples";
+
+	/* Set to false to skip the MXBeans, starting the platform MBean server is a noticeable part of a short run. */
+	static final String JMX_PROPERTY = "altus.samples.jmx";
+
+	static final String[] OPERATIONS = {"createAWSCluster", "describeCluster", "deleteCluster",
+			"listClusters", "submitJobs", "describeJob", "listJobs"};
+
+	private static final long[] CALL_BOUNDS_MILLIS =
+			{5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+	private static final long[] CLUSTER_BOUNDS_MILLIS =
+			{60000, 120000, 300000, 600000, 900000, 1200000, 1800000, 3600000};
+	private static final long[] JOB_BOUNDS_MILLIS =
+			{10000, 30000, 60000, 300000, 600000, 1800000, 3600000, 7200000};
+
+	private static final long FILE_EXPORT_PERIOD_SECONDS = 15;
+
+	private static final ClientMetrics SHARED = new ClientMetrics();
+
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private final LatencyHistogram timeToCreated = new LatencyHistogram(CLUSTER_BOUNDS_MILLIS);
+	private final LatencyHistogram jobCompletion = new LatencyHistogram(JOB_BOUNDS_MILLIS);
+	private final AtomicInteger exporting = new AtomicInteger();
+	private final List<PrometheusSource> sources = new CopyOnWriteArrayList<>();
+
+	ClientMetrics() {
+		for (String operation : OPERATIONS) {
+			operations.put(operation, new OperationMetrics());
+		}
+	}
+
+	/**
+	 * @return ClientMetrics		Metrics shared by every client in this JVM
+	 */
+	static ClientMetrics shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @param operation						Name of the DataengClient method
+	 * @return OperationMetrics		Metrics of the operation
+	 */
+	OperationMetrics operation(String operation) {
+		return operations.computeIfAbsent(operation, name -> new OperationMetrics());
+	}
+
+	/**
+	 * @param nanos		Time from the accepted create request to CREATED
+	 */
+	void recordTimeToCreated(long nanos) {
+		timeToCreated.record(nanos);
+	}
+
+	/**
+	 * @param nanos		Time from the submission of a job to COMPLETED
+	 */
+	void recordJobCompletion(long nanos) {
+		jobCompletion.record(nanos);
+	}
+
+	/**
+	 * Registers the MXBeans and starts the exporters configured in the [metrics]
+	 * section. Only the first call has an effect.
+	 * @param config		Configuration snapshot
+	 */
+	void export(SampleConfig config) {
+		if (!exporting.compareAndSet(0, 1)) {
+			return;
+		}
+		if (jmxEnabled()) {
+			registerMXBeans();
+		}
+		if (config.getPrometheusPort() != null) {
+			servePrometheus(config.getPrometheusPort());
+		}
+		if (config.getPrometheusFile() != null) {
+			writePrometheusPeriodically(Paths.get(config.getPrometheusFile()));
+		}
+	}
+
+	/**
+	 * Registers an MXBean under the com.cloudera.altus.sdk.samples domain.
+	 * Failures are logged, monitoring never stops the samples.
+	 * @param mxbean				MXBean to register
+	 * @param properties		Key properties of its ObjectName, such as type=RateLimiter,name=Shared
+	 */
+	static void register(Object mxbean, String properties) {
+		if (!jmxEnabled()) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mxbean, new ObjectName(DOMAIN + ":" + properties));
+		} catch (JMException e) {
+			LOG.error("Unable to register " + properties + " with JMX " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds metrics to the Prometheus exports. A source writes every metric of
+	 * its family, so each family is added once.
+	 * @param source		Writes the metrics with their HELP and TYPE lines
+	 */
+	void addSource(PrometheusSource source) {
+		sources.add(source);
+	}
+
+	/**
+	 * @return boolean		False when the altus.samples.jmx system property is false
+	 */
+	static boolean jmxEnabled() {
+		return Boolean.parseBoolean(System.getProperty(JMX_PROPERTY, "true"));
+	}
+
+	/**
+	 * @return String		Every metric in the Prometheus text exposition format
+	 */
+	String toPrometheusText() {
+		StringBuilder out = new StringBuilder();
+		try {
+			Map<String, OperationMetrics> sorted = new TreeMap<>(operations);
+			out.append("# HELP altus_client_request_duration_seconds Latency of DataengClient operations.\n")
+					.append("# TYPE altus_client_request_duration_seconds histogram\n");
+			for (Map.Entry<String, OperationMetrics> entry : sorted.entrySet()) {
+				entry.getValue().latency.writePrometheus(out, "altus_client_request_duration_seconds",
+						"operation=\"" + entry.getKey() + "\"");
+			}
+			out.append("# HELP altus_client_requests_in_flight DataengClient calls waiting for a response.\n")
+					.append("# TYPE altus_client_requests_in_flight gauge\n");
+			for (Map.Entry<String, OperationMetrics> entry : sorted.entrySet()) {
+				out.append("altus_client_requests_in_flight{operation=\"").append(entry.getKey()).append("\"} ")
+						.append(entry.getValue().getInFlight()).append('\n');
+			}
+			out.append("# HELP altus_client_errors_total Failed DataengClient calls by http code, 0 when no response was received.\n")
+					.append("# TYPE altus_client_errors_total counter\n");
+			for (Map.Entry<String, OperationMetrics> entry : sorted.entrySet()) {
+				for (Map.Entry<Integer, Long> error : entry.getValue().getErrorsByHttpCode().entrySet()) {
+					out.append("altus_client_errors_total{operation=\"").append(entry.getKey())
+							.append("\",http_code=\"").append(error.getKey()).append("\"} ")
+							.append(error.getValue()).append('\n');
+				}
+			}
+			out.append("# HELP altus_cluster_time_to_created_seconds Time from the create request to CREATED.\n")
+					.append("# TYPE altus_cluster_time_to_created_seconds histogram\n");
+			timeToCreated.writePrometheus(out, "altus_cluster_time_to_created_seconds", "");
+			out.append("# HELP altus_job_completion_seconds Time from the job submission to COMPLETED.\n")
+					.append("# TYPE altus_job_completion_seconds histogram\n");
+			jobCompletion.writePrometheus(out, "altus_job_completion_seconds", "");
+			for (PrometheusSource source : sources) {
+				source.writePrometheus(out);
+			}
+		} catch (IOException e) {
+			/* StringBuilder never throws. */
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	private void registerMXBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+				server.registerMBean(entry.getValue(),
+						new ObjectName(DOMAIN + ":type=DataengClient,operation=" + entry.getKey()));
+			}
+			server.registerMBean(timeToCreated, new ObjectName(DOMAIN + ":type=Lifecycle,name=TimeToCreated"));
+			server.registerMBean(jobCompletion, new ObjectName(DOMAIN + ":type=Lifecycle,name=JobCompletion"));
+		} catch (JMException e) {
+			LOG.error("Unable to register the client metrics with JMX " + e.getMessage());
+		}
+	}
+
+	private void servePrometheus(int port) {
+		try {
+			HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+			server.createContext("/metrics", exchange -> {
+				byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			server.setExecutor(Executors.newSingleThreadExecutor(ClusterStatusPoller.daemonThreads("altus-metrics-http")));
+			server.start();
+			LOG.info("Serving client metrics on http://localhost:" + port + "/metrics");
+		} catch (IOException ioe) {
+			LOG.error("Unable to serve the client metrics on port " + port + " " + ioe.getMessage());
+		}
+	}
+
+	/* Written to a temporary file first, so scrapers never read a partial file. */
+	private void writePrometheusPeriodically(Path file) {
+		ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+				ClusterStatusPoller.daemonThreads("altus-metrics-file"));
+		writer.scheduleWithFixedDelay(() -> {
+			try {
+				Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+				Files.write(temporary, toPrometheusText().getBytes(StandardCharsets.UTF_8));
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException ioe) {
+				LOG.error("Unable to write the client metrics to " + file + " " + ioe.getMessage());
+			}
+		}, 0, FILE_EXPORT_PERIOD_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Component exporting its own metrics in the Prometheus text format.
+	 */
+	interface PrometheusSource {
+
+		/**
+		 * @param out		Text the metrics are appended to
+		 */
+		void writePrometheus(StringBuilder out);
+	}
+
+	/**
+	 * Calls made to one DataengClient operation.
+	 */
+	static final class OperationMetrics implements OperationMetricsMXBean {
+
+		private final LatencyHistogram latency = new LatencyHistogram(CALL_BOUNDS_MILLIS);
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+		void started() {
+			inFlight.incrementAndGet();
+		}
+
+		/**
+		 * @param nanos			Duration of the call
+		 * @param httpCode	Http code of the response, 0 when no response was received
+		 */
+		void finished(long nanos, int httpCode) {
+			inFlight.decrementAndGet();
+			latency.record(nanos);
+			if (httpCode < 200 || httpCode >= 300) {
+				errors.computeIfAbsent(httpCode, code -> new LongAdder()).increment();
+			}
+		}
+
+		@Override
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		@Override
+		public Map<Integer, Long> getErrorsByHttpCode() {
+			Map<Integer, Long> snapshot = new TreeMap<>();
+			for (Map.Entry<Integer, LongAdder> entry : errors.entrySet()) {
+				snapshot.put(entry.getKey(), entry.getValue().sum());
+			}
+			return snapshot;
+		}
+
+		@Override
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		@Override
+		public double getMeanMillis() {
+			return latency.getMeanMillis();
+		}
+
+		@Override
+		public long getP50Millis() {
+			return latency.getP50Millis();
+		}
+
+		@Override
+		public long getP99Millis() {
+			return latency.getP99Millis();
+		}
+
+		@Override
+		public long getMaxMillis() {
+			return latency.getMaxMillis();
+		}
+
+		@Override
+		public String toString() {
+			return "calls=" + getCount() + " inFlight=" + getInFlight() + " meanMillis=" + getMeanMillis()
+					+ " p99Millis=" + getP99Millis() + " errors=" + getErrorsByHttpCode();
+		}
+	}
+}
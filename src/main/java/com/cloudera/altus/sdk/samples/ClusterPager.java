@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over every cluster of the account by following the page tokens
+ * of listClusters lazily. While the caller consumes a page the next one is
+ * already being fetched in the background, so at most two pages are held in
+ * memory at any time.
+ */
+final class ClusterPager implements Iterator<ClusterSummary>, AutoCloseable {
+
+	private static final ExecutorService PREFETCH =
+			Executors.newCachedThreadPool(ClusterStatusPoller.daemonThreads("altus-cluster-pager"));
+
+	private final DataengClient client;
+	private final Integer pageSize;
+	private Iterator<ClusterSummary> page = Collections.emptyIterator();
+	private CompletableFuture<ListClustersResponse> nextPage;
+	private boolean lastPage;
+
+	/**
+	 * @param client		DataengClient used for listing the clusters
+	 * @param pageSize	Number of clusters per page, or null for the service default
+	 */
+	ClusterPager(DataengClient client, Integer pageSize) {
+		this.client = client;
+		this.pageSize = pageSize;
+		this.nextPage = fetch(null);
+	}
+
+	/**
+	 * @param client		DataengClient used for listing the clusters
+	 * @param pageSize	Number of clusters per page, or null for the service default
+	 * @return Stream		Sequential stream over every cluster; closing it stops the prefetch
+	 */
+	static Stream<ClusterSummary> stream(DataengClient client, Integer pageSize) {
+		ClusterPager pager = new ClusterPager(client, pageSize);
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(pager, Spliterator.ORDERED | Spliterator.NONNULL),
+				false).onClose(pager::close);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!page.hasNext()) {
+			if (lastPage) {
+				return false;
+			}
+			ListClustersResponse response = BaseIntegration.await(nextPage);
+			String pageToken = response.getNextPageToken();
+			lastPage = pageToken == null || pageToken.isEmpty();
+			/* Start fetching the following page before handing out this one. */
+			nextPage = lastPage ? null : fetch(pageToken);
+			page = response.getClusters() == null
+					? Collections.<ClusterSummary>emptyIterator()
+					: response.getClusters().iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public ClusterSummary next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void close() {
+		lastPage = true;
+		page = Collections.emptyIterator();
+		if (nextPage != null) {
+			nextPage.cancel(false);
+			nextPage = null;
+		}
+	}
+
+	private CompletableFuture<ListClustersResponse> fetch(String pageToken) {
+		ListClustersRequest request = new ListClustersRequest();
+		request.setPageSize(pageSize);
+		request.setPageToken(pageToken);
+		return CompletableFuture.supplyAsync(() -> client.listClusters(request), PREFETCH);
+	}
+}
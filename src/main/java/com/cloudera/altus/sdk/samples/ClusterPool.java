@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of CREATED clusters that jobs are run on instead of creating a
+ * cluster per job. Clusters are pooled by service type, CDH version,
+ * instance type and environment, the last three coming from the current
+ * [AWSCluster] settings. A caller leases a cluster, runs its jobs on it
+ * and closes the lease to give the cluster back.
+ *
+ * Once a key has been used, the pool keeps the configured number of idle
+ * clusters warm for it, so a burst of jobs starts in seconds. Idle clusters
+ * above that number are deleted once they have been idle for the TTL.
+ */
+final class ClusterPool implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClusterPool.class);
+
+	private static volatile ClusterPool shared;
+
+	private final DataengClient client;
+	private final int warmClusters;
+	private final long idleTtlNanos;
+	private final String namePrefix;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentMap<Key, KeyPool> pools = new ConcurrentHashMap<>();
+	private final AtomicInteger names = new AtomicInteger();
+	private final String generation = Long.toString(System.currentTimeMillis() / 1000, 36);
+	private volatile boolean closed;
+
+	/**
+	 * @param client					Client used to communicate to backend services
+	 * @param warmClusters		Idle clusters kept per key once the key has been used
+	 * @param idleTtl					Time after which idle clusters above the warm count are deleted
+	 * @param namePrefix			Prefix of the names of the pooled clusters
+	 */
+	ClusterPool(DataengClient client, int warmClusters, Duration idleTtl, String namePrefix) {
+		this.client = client;
+		this.warmClusters = warmClusters;
+		this.idleTtlNanos = idleTtl.toNanos();
+		this.namePrefix = namePrefix;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				ClusterStatusPoller.daemonThreads("altus-cluster-pool"));
+		long sweepMillis = Math.max(TimeUnit.SECONDS.toMillis(10), idleTtl.toMillis() / 4);
+		scheduler.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the pool shared by every integration, configured by the [pool]
+	 * section of SampleResources.ini and using the shared client.
+	 * @return ClusterPool		Shared pool
+	 */
+	static ClusterPool shared() {
+		ClusterPool pool = shared;
+		if (pool == null) {
+			synchronized (ClusterPool.class) {
+				pool = shared;
+				if (pool == null) {
+					SampleConfig config = SampleConfig.current();
+					pool = new ClusterPool(DataengClientRegistry.shared().get(config),
+							config.getPoolWarmClusters(), config.getPoolIdleTtl(), config.getPoolNamePrefix());
+					shared = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Closes the shared pool if it was ever used. A later call to {@link #shared()}
+	 * builds a new pool.
+	 */
+	static void closeShared() {
+		ClusterPool pool;
+		synchronized (ClusterPool.class) {
+			pool = shared;
+			shared = null;
+		}
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Leases a cluster, waiting for one to be created if none is idle.
+	 * @param serviceType		Type of the cluster, such as SPARK, HIVE_ON_SPARK or MR2
+	 * @return Lease				Lease on a CREATED cluster, to be closed once the jobs are done
+	 */
+	Lease lease(String serviceType) {
+		return BaseIntegration.await(leaseAsync(serviceType));
+	}
+
+	/**
+	 * Leases a cluster without blocking the caller.
+	 * @param serviceType		Type of the cluster, such as SPARK, HIVE_ON_SPARK or MR2
+	 * @return Future				Completes with a lease on a CREATED cluster, or fails if the pool is closed
+	 */
+	CompletableFuture<Lease> leaseAsync(String serviceType) {
+		if (closed) {
+			CompletableFuture<Lease> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalStateException("The cluster pool is closed"));
+			return failed;
+		}
+		Key key = new Key(serviceType, SampleConfig.current());
+		KeyPool pool = pools.computeIfAbsent(key, KeyPool::new);
+		String idle = pool.takeIdle();
+		CompletableFuture<Lease> lease = idle != null
+				? verify(pool, idle)
+				: create(pool).thenApply(clusterName -> new Lease(pool, clusterName));
+		replenish(pool);
+		return lease;
+	}
+
+	/**
+	 * Creates clusters for the key until it has the warm number of idle clusters.
+	 * @param serviceType		Type of the clusters to keep warm
+	 */
+	void warmUp(String serviceType) {
+		replenish(pools.computeIfAbsent(new Key(serviceType, SampleConfig.current()), KeyPool::new));
+	}
+
+	/**
+	 * @return int	Number of idle clusters across every key
+	 */
+	int idleCount() {
+		int count = 0;
+		for (KeyPool pool : pools.values()) {
+			synchronized (pool) {
+				count += pool.idle.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes every idle cluster. Leased clusters are deleted when their lease is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		scheduler.shutdown();
+		for (KeyPool pool : pools.values()) {
+			List<String> idle;
+			synchronized (pool) {
+				idle = new ArrayList<>();
+				for (IdleCluster cluster : pool.idle) {
+					idle.add(cluster.clusterName);
+				}
+				pool.idle.clear();
+			}
+			for (String clusterName : idle) {
+				delete(clusterName);
+			}
+		}
+	}
+
+	/* An idle cluster may have been terminated behind the pool's back, so it is checked once before leasing. */
+	private CompletableFuture<Lease> verify(KeyPool pool, String clusterName) {
+		return CompletableFuture.supplyAsync(() -> {
+			DescribeClusterRequest request = new DescribeClusterRequest();
+			request.setClusterName(clusterName);
+			return client.describeCluster(request).getCluster().getStatus();
+		}, WorkflowExecutors.shared()).thenCompose(status -> {
+			if ("CREATED".equals(status)) {
+				LOG.debug("Leasing idle cluster " + clusterName);
+				return CompletableFuture.completedFuture(new Lease(pool, clusterName));
+			}
+			LOG.info("Dropping pooled cluster " + clusterName + " whose status is " + status);
+			String next = pool.takeIdle();
+			return next != null
+					? verify(pool, next)
+					: create(pool).thenApply(name -> new Lease(pool, name));
+		});
+	}
+
+	private CompletableFuture<String> create(KeyPool pool) {
+		String clusterName = namePrefix + "-" + pool.key.serviceType.toLowerCase(Locale.ROOT)
+				+ "-" + generation + "-" + names.incrementAndGet();
+		synchronized (pool) {
+			pool.creating++;
+		}
+		return CompletableFuture
+				.supplyAsync(() -> {
+					try {
+						CreateAWSClusterRequest request = RequestTemplates.shared().newCreateAWSClusterRequest(
+								clusterName, pool.key.serviceType, SampleConfig.current().getWorkerSize());
+						return client.createAWSCluster(request).getCluster().getClusterName();
+					} catch (IOException ioe) {
+						throw new UncheckedIOException("Unable to read the SSH public key", ioe);
+					}
+				}, WorkflowExecutors.shared())
+				.thenCompose(name -> ClusterStatusPoller.shared().track(client, name))
+				.whenComplete((status, error) -> {
+					synchronized (pool) {
+						pool.creating--;
+					}
+				})
+				.thenApply(status -> {
+					if (!"CREATED".equals(status)) {
+						delete(clusterName);
+						throw new IllegalStateException("Pooled cluster " + clusterName + " is " + status);
+					}
+					LOG.info("Pooled cluster " + clusterName + " created");
+					return clusterName;
+				});
+	}
+
+	private void replenish(KeyPool pool) {
+		int missing;
+		synchronized (pool) {
+			missing = warmClusters - pool.idle.size() - pool.creating;
+		}
+		for (int i = 0; i < missing && !closed; i++) {
+			create(pool).whenComplete((clusterName, error) -> {
+				if (error != null) {
+					LOG.error("Unable to warm up a " + pool.key.serviceType + " cluster " + error.getMessage());
+				} else {
+					release(pool, clusterName);
+				}
+			});
+		}
+	}
+
+	private void release(KeyPool pool, String clusterName) {
+		if (closed) {
+			delete(clusterName);
+			return;
+		}
+		synchronized (pool) {
+			/* Most recently used first, so the least used clusters age out. */
+			pool.idle.addFirst(new IdleCluster(clusterName, System.nanoTime()));
+		}
+	}
+
+	private void evictIdle() {
+		long now = System.nanoTime();
+		for (KeyPool pool : pools.values()) {
+			List<String> evicted = new ArrayList<>();
+			synchronized (pool) {
+				while (pool.idle.size() > warmClusters && now - pool.idle.peekLast().idleSinceNanos >= idleTtlNanos) {
+					evicted.add(pool.idle.pollLast().clusterName);
+				}
+			}
+			for (String clusterName : evicted) {
+				LOG.info("Deleting pooled cluster " + clusterName + " after being idle for its TTL");
+				delete(clusterName);
+			}
+		}
+	}
+
+	private void delete(String clusterName) {
+		try {
+			DeleteClusterRequest request = new DeleteClusterRequest();
+			request.setClusterName(clusterName);
+			client.deleteCluster(request);
+		} catch (RuntimeException e) {
+			LOG.error("Unable to delete pooled cluster " + clusterName + " " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Lease on a pooled cluster. Closing it gives the cluster back to the pool.
+	 */
+	final class Lease implements AutoCloseable {
+
+		private final KeyPool pool;
+		private final String clusterName;
+		private boolean done;
+
+		private Lease(KeyPool pool, String clusterName) {
+			this.pool = pool;
+			this.clusterName = clusterName;
+		}
+
+		String getClusterName() {
+			return clusterName;
+		}
+
+		/**
+		 * Deletes the cluster instead of giving it back, for clusters left in a bad state.
+		 */
+		synchronized void discard() {
+			if (!done) {
+				done = true;
+				delete(clusterName);
+			}
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!done) {
+				done = true;
+				release(pool, clusterName);
+			}
+		}
+	}
+
+	private static final class KeyPool {
+
+		private final Key key;
+		private final Deque<IdleCluster> idle = new ArrayDeque<>();
+		private int creating;
+
+		KeyPool(Key key) {
+			this.key = key;
+		}
+
+		synchronized String takeIdle() {
+			IdleCluster cluster = idle.pollFirst();
+			return cluster == null ? null : cluster.clusterName;
+		}
+	}
+
+	private static final class IdleCluster {
+
+		private final String clusterName;
+		private final long idleSinceNanos;
+
+		IdleCluster(String clusterName, long idleSinceNanos) {
+			this.clusterName = clusterName;
+			this.idleSinceNanos = idleSinceNanos;
+		}
+	}
+
+	private static final class Key {
+
+		private final String serviceType;
+		private final String cdhVersion;
+		private final String instanceType;
+		private final String environmentName;
+
+		Key(String serviceType, SampleConfig config) {
+			this.serviceType = serviceType;
+			this.cdhVersion = config.getCdhVersion();
+			this.instanceType = config.getInstanceType();
+			this.environmentName = config.getEnvironmentName();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return serviceType.equals(other.serviceType)
+					&& cdhVersion.equals(other.cdhVersion)
+					&& instanceType.equals(other.instanceType)
+					&& Objects.equals(environmentName, other.environmentName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(serviceType, cdhVersion, instanceType, environmentName);
+		}
+	}
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes clusters in parallel and confirms that each one terminates. At
+ * most a fixed number of deleteCluster calls are in flight at once; once a
+ * deletion is accepted, the cluster is polled until it is TERMINATED or no
+ * longer known, without holding a delete slot. Polls failing for a
+ * transient reason are retried until the termination timeout.
+ *
+ * It also sweeps the account for clusters leaked by runs that crashed:
+ * clusters whose name starts with one of the configured prefixes and that
+ * have been idle for longer than a threshold are torn down. A cluster is
+ * idle when its latest job reached a final status, and idle since the
+ * completion of that job, or since its creation when it never ran a job.
+ *
+ * Usage: ClusterReaper --sweep [--dry-run] | ClusterReaper clusterName...
+ */
+public class ClusterReaper implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClusterReaper.class);
+
+	private static final int PAGE_SIZE = 100;
+	private static final long POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+	private static final double JITTER = 0.2;
+
+	private static final ScheduledExecutorService SCHEDULER =
+			Executors.newSingleThreadScheduledExecutor(ClusterStatusPoller.daemonThreads("altus-reaper"));
+
+	private final DataengClient client;
+	private final ExecutorService deletePool;
+	private final Duration terminationTimeout;
+
+	/**
+	 * Uses the [sweeper] section of SampleResources.ini.
+	 * @param client		Client used to communicate to backend services
+	 */
+	ClusterReaper(DataengClient client) {
+		this(client, SampleConfig.current().getMaxConcurrentDeletes(),
+				SampleConfig.current().getTerminationTimeout());
+	}
+
+	/**
+	 * @param client								Client used to communicate to backend services
+	 * @param maxConcurrentDeletes	Maximum number of deleteCluster calls in flight
+	 * @param terminationTimeout		Time a deleted cluster has to terminate before giving up on it
+	 */
+	ClusterReaper(DataengClient client, int maxConcurrentDeletes, Duration terminationTimeout) {
+		this.client = client;
+		this.deletePool = Executors.newFixedThreadPool(maxConcurrentDeletes,
+				ClusterStatusPoller.daemonThreads("altus-reaper-delete"));
+		this.terminationTimeout = terminationTimeout;
+	}
+
+	public static void main(String[] args) {
+		List<String> options = Arrays.asList(args);
+		if (options.isEmpty()) {
+			LOG.error("Usage: ClusterReaper --sweep [--dry-run] | ClusterReaper clusterName...");
+			return;
+		}
+		SampleConfig config = SampleConfig.current();
+		DataengClient client = DataengClientRegistry.shared().get(config);
+		try (ClusterReaper reaper = new ClusterReaper(client)) {
+			Map<String, Result> results;
+			if (options.contains("--sweep")) {
+				results = BaseIntegration.await(reaper.sweep(config.getSweepPrefixes(), config.getSweepIdleThreshold(),
+						options.contains("--dry-run")));
+			} else {
+				results = reaper.teardown(options);
+			}
+			for (Map.Entry<String, Result> entry : results.entrySet()) {
+				LOG.info(entry.getKey() + " " + (entry.getValue() == null ? "idle, not deleted" : entry.getValue()));
+			}
+		} catch (AltusServiceException ase) {
+			LOG.error("Unable to tear down clusters " + ase.getMessage());
+		}
+	}
+
+	/**
+	 * Deletes the clusters and waits until each one terminated or timed out.
+	 * @param clusterNames		Clusters to delete
+	 * @return Map						Result per cluster name, in the order given
+	 */
+	Map<String, Result> teardown(Collection<String> clusterNames) {
+		return BaseIntegration.await(teardownAsync(clusterNames));
+	}
+
+	/**
+	 * Deletes the clusters without blocking the caller.
+	 * @param clusterNames		Clusters to delete
+	 * @return Future					Completes with the result per cluster name once every cluster settled
+	 */
+	CompletableFuture<Map<String, Result>> teardownAsync(Collection<String> clusterNames) {
+		List<String> names = new ArrayList<>(clusterNames);
+		List<CompletableFuture<Result>> results = new ArrayList<>(names.size());
+		for (String clusterName : names) {
+			results.add(teardown(clusterName));
+		}
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> {
+					Map<String, Result> teardown = new LinkedHashMap<>();
+					for (int i = 0; i < names.size(); i++) {
+						teardown.put(names.get(i), results.get(i).join());
+					}
+					return teardown;
+				});
+	}
+
+	/**
+	 * Deletes a single cluster under the concurrency cap.
+	 * @param clusterName		Cluster to delete
+	 * @return Future				Completes with the result of the cluster, never exceptionally
+	 */
+	CompletableFuture<Result> teardown(String clusterName) {
+		long startNanos = System.nanoTime();
+		CompletableFuture<String> terminated = new CompletableFuture<>();
+		CompletableFuture.runAsync(() -> delete(clusterName), deletePool).whenComplete((done, error) -> {
+			if (error != null) {
+				terminated.completeExceptionally(error);
+			} else {
+				new Confirmation(clusterName, terminated, startNanos).schedule(0);
+			}
+		});
+		return terminated.handle((status, error) -> {
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				LOG.error("Unable to delete cluster " + clusterName + " " + cause.getMessage());
+				return new Result(null, null, cause);
+			}
+			if (isTerminated(status)) {
+				LOG.info("Cluster " + clusterName + " terminated in " + elapsed.getSeconds() + "s");
+				return new Result(status, elapsed, null);
+			}
+			LOG.error("Cluster " + clusterName + " did not terminate within "
+					+ terminationTimeout.toMinutes() + " minutes, its status is " + status);
+			return new Result(status, null, null);
+		});
+	}
+
+	/**
+	 * Tears down the clusters matching one of the prefixes that have been idle
+	 * for longer than the threshold.
+	 * @param prefixes				Cluster name prefixes the sweeper may delete
+	 * @param idleThreshold		Time a cluster must have been idle
+	 * @param dryRun					Only report the clusters that would be deleted
+	 * @return Future					Completes with the result per swept cluster, null results on a dry run
+	 */
+	CompletableFuture<Map<String, Result>> sweep(List<String> prefixes, Duration idleThreshold, boolean dryRun) {
+		ZonedDateTime idleBefore = ZonedDateTime.now().minus(idleThreshold);
+		List<String> orphans;
+		try (Stream<ClusterSummary> clusters = ClusterPager.stream(client, PAGE_SIZE)) {
+			orphans = clusters
+					.filter(cluster -> matches(cluster.getClusterName(), prefixes))
+					.filter(cluster -> isSweepable(cluster.getStatus()))
+					.filter(cluster -> isIdleSince(cluster, idleBefore))
+					.map(ClusterSummary::getClusterName)
+					.collect(Collectors.toList());
+		}
+		LOG.info("Found " + orphans.size() + " clusters idle for more than " + idleThreshold.toMinutes()
+				+ " minutes matching " + prefixes + (dryRun ? ", not deleting them" : ""));
+		if (dryRun) {
+			Map<String, Result> found = new LinkedHashMap<>();
+			for (String clusterName : orphans) {
+				found.put(clusterName, null);
+			}
+			return CompletableFuture.completedFuture(found);
+		}
+		return teardownAsync(orphans);
+	}
+
+	@Override
+	public void close() {
+		deletePool.shutdown();
+	}
+
+	private void delete(String clusterName) {
+		DeleteClusterRequest request = new DeleteClusterRequest();
+		request.setClusterName(clusterName);
+		try {
+			client.deleteCluster(request);
+		} catch (AltusServiceException ase) {
+			/* Already gone, which is what was asked for. */
+			if (ase.getHttpCode() != 404) {
+				LOG.error("Altus exception occurred when deleting the cluster " + clusterName
+						+ " http code " + ase.getHttpCode() + " : " + ase.getMessage());
+				throw ase;
+			}
+		}
+	}
+
+	private boolean isIdleSince(ClusterSummary cluster, ZonedDateTime idleBefore) {
+		if (cluster.getCreationDate() == null || cluster.getCreationDate().isAfter(idleBefore)) {
+			return false;
+		}
+		ListJobsRequest request = new ListJobsRequest();
+		request.setClusterName(cluster.getClusterName());
+		request.setOrder("NEWEST_TO_OLDEST");
+		request.setPageSize(1);
+		ListJobsResponse response = client.listJobs(request);
+		if (response.getJobs() == null || response.getJobs().isEmpty()) {
+			return true;
+		}
+		JobSummary latest = response.getJobs().get(0);
+		return JobStatusTracker.isFinal(latest.getStatus())
+				&& (latest.getCompletionDate() == null || latest.getCompletionDate().isBefore(idleBefore));
+	}
+
+	private static boolean matches(String clusterName, List<String> prefixes) {
+		if (clusterName == null) {
+			return false;
+		}
+		for (String prefix : prefixes) {
+			if (clusterName.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Clusters still being created may belong to a live run, terminating ones are already going away. */
+	private static boolean isSweepable(String clusterStatus) {
+		return "CREATED".equals(clusterStatus) || "FAILED".equals(clusterStatus);
+	}
+
+	static boolean isTerminated(String clusterStatus) {
+		return "TERMINATED".equals(clusterStatus) || "NOT_FOUND".equals(clusterStatus);
+	}
+
+	private final class Confirmation implements Runnable {
+
+		private final String clusterName;
+		private final CompletableFuture<String> future;
+		private final long startNanos;
+		private final DescribeClusterRequest request = new DescribeClusterRequest();
+		private String lastStatus;
+
+		Confirmation(String clusterName, CompletableFuture<String> future, long startNanos) {
+			this.clusterName = clusterName;
+			this.future = future;
+			this.startNanos = startNanos;
+			this.request.setClusterName(clusterName);
+		}
+
+		void schedule(long delayMillis) {
+			SCHEDULER.schedule(() -> WorkflowExecutors.shared().execute(this), delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			boolean timedOut = System.nanoTime() - startNanos >= terminationTimeout.toNanos();
+			try {
+				lastStatus = client.describeCluster(request).getCluster().getStatus();
+			} catch (AltusServiceException ase) {
+				if (ase.getHttpCode() != 404) {
+					retryOrFail(ase, timedOut);
+					return;
+				}
+				lastStatus = "NOT_FOUND";
+			} catch (RuntimeException e) {
+				retryOrFail(e, timedOut);
+				return;
+			}
+			if (isTerminated(lastStatus) || timedOut) {
+				future.complete(lastStatus);
+				return;
+			}
+			LOG.debug("Cluster " + clusterName + " is " + lastStatus + ", polling again");
+			scheduleNext();
+		}
+
+		/* The delete was accepted, so transient failures are retried until the termination timeout. */
+		private void retryOrFail(RuntimeException e, boolean timedOut) {
+			if (timedOut || !ResilientDataengClient.isRetryable(e)) {
+				future.completeExceptionally(e);
+				return;
+			}
+			LOG.error("Unable to confirm the termination of cluster " + clusterName + ", polling again "
+					+ e.getMessage());
+			scheduleNext();
+		}
+
+		private void scheduleNext() {
+			double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+			schedule((long) (POLL_INTERVAL_MILLIS * factor));
+		}
+	}
+
+	/**
+	 * Outcome of deleting one cluster.
+	 */
+	static final class Result {
+
+		private final String status;
+		private final Duration timeToTerminated;
+		private final Throwable error;
+
+		Result(String status, Duration timeToTerminated, Throwable error) {
+			this.status = status;
+			this.timeToTerminated = timeToTerminated;
+			this.error = error;
+		}
+
+		/**
+		 * @return String		Last status seen, TERMINATED or NOT_FOUND once the cluster is gone,
+		 * 									or null if the cluster could not be deleted
+		 */
+		String getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Duration		Time from the delete request to termination, or null if it did not terminate
+		 */
+		Duration getTimeToTerminated() {
+			return timeToTerminated;
+		}
+
+		/**
+		 * @return Throwable	Error raised while deleting or polling the cluster, or null
+		 */
+		Throwable getError() {
+			return error;
+		}
+
+		boolean isTerminated() {
+			return ClusterReaper.isTerminated(status);
+		}
+
+		@Override
+		public String toString() {
+			if (error != null) {
+				return "ERROR " + error.getMessage();
+			}
+			return timeToTerminated == null ? status : status + " in " + timeToTerminated.getSeconds() + "s";
+		}
+	}
+}
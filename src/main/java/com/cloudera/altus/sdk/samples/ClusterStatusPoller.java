@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the status of many clusters on a small scheduled pool instead of
+ * parking one thread per cluster. The polls themselves run on the
+ * {@link WorkflowExecutors} executor. Every tracked cluster gets a future that
+ * completes with its final status (CREATED, FAILED or TERMINATING).
+ *
+ * The interval between two polls of the same cluster adapts to its age:
+ * polls are frequent right after the create request, back off while the
+ * cluster is provisioning and tighten again around the expected creation
+ * time. A random jitter is applied so that clusters created together do
+ * not hit the backend in lockstep. Every status change is traced with
+ * {@link Tracing}. A failed poll, including one rejected by an open circuit,
+ * is retried at the next interval; tracking only fails once Altus rejects
+ * the call with a code that is not worth retrying, or after
+ * {@value #MAX_CONSECUTIVE_FAILURES} failed polls in a row.
+ */
+final class ClusterStatusPoller {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ClusterStatusPoller.class);
+
+	static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+	private static final ClusterStatusPoller SHARED = new ClusterStatusPoller(
+			Executors.newScheduledThreadPool(2, daemonThreads("altus-cluster-poller")),
+			Duration.ofSeconds(10), Duration.ofMinutes(1), Duration.ofMinutes(12));
+
+	/* Clusters are polled at the minimum interval for this long after tracking starts. */
+	private static final Duration FAST_PHASE = Duration.ofMinutes(2);
+	private static final double BACKOFF_FACTOR = 1.5;
+	private static final double JITTER = 0.2;
+
+	private final ScheduledExecutorService scheduler;
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final long expectedCreationMillis;
+	private final ConcurrentMap<String, CompletableFuture<String>> tracked = new ConcurrentHashMap<>();
+
+	/**
+	 * @param scheduler					Pool used to schedule the polls
+	 * @param minInterval				Shortest delay between two polls of a cluster
+	 * @param maxInterval				Longest delay between two polls of a cluster
+	 * @param expectedCreation	Typical time for a cluster to reach CREATED
+	 */
+	ClusterStatusPoller(ScheduledExecutorService scheduler, Duration minInterval,
+			Duration maxInterval, Duration expectedCreation) {
+		this.scheduler = scheduler;
+		this.minIntervalMillis = minInterval.toMillis();
+		this.maxIntervalMillis = maxInterval.toMillis();
+		this.expectedCreationMillis = expectedCreation.toMillis();
+	}
+
+	/**
+	 * @return ClusterStatusPoller	Poller shared by every integration in this JVM
+	 */
+	static ClusterStatusPoller shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Starts tracking a cluster. Tracking the same cluster twice returns the
+	 * same future so that concurrent waiters do not multiply the API calls.
+	 * Cancelling the returned future stops polling the cluster.
+	 * @param client				DataengClient used for polling the cluster
+	 * @param clusterName		Cluster to poll
+	 * @return Future				Completes with the final status of the cluster
+	 */
+	CompletableFuture<String> track(DataengClient client, String clusterName) {
+		return tracked.computeIfAbsent(clusterName, name -> {
+			CompletableFuture<String> future = new CompletableFuture<>();
+			future.whenComplete((status, error) -> tracked.remove(name, future));
+			new Tracker(client, name, future).schedule(0);
+			return future;
+		});
+	}
+
+	/**
+	 * @return int	Number of clusters currently being tracked
+	 */
+	int trackedCount() {
+		return tracked.size();
+	}
+
+	static boolean isFinal(String clusterStatus) {
+		return "CREATED".equals(clusterStatus)
+				|| "FAILED".equals(clusterStatus)
+				|| "TERMINATING".equals(clusterStatus)
+				|| "TERMINATED".equals(clusterStatus);
+	}
+
+	static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Computes the delay before the next poll of a cluster.
+	 * @param elapsedMillis		Time since the cluster started being tracked
+	 * @param previousMillis	Delay used before the previous poll
+	 * @return long						Delay before the next poll, without jitter
+	 */
+	long nextInterval(long elapsedMillis, long previousMillis) {
+		if (elapsedMillis < FAST_PHASE.toMillis()) {
+			return minIntervalMillis;
+		}
+		long interval = Math.min(maxIntervalMillis,
+				Math.max(minIntervalMillis, (long) (previousMillis * BACKOFF_FACTOR)));
+		/* Tighten the interval inside a window around the expected creation time. */
+		long window = expectedCreationMillis / 4;
+		if (Math.abs(elapsedMillis - expectedCreationMillis) <= window) {
+			interval = Math.min(interval, Math.max(minIntervalMillis, maxIntervalMillis / 4));
+		}
+		return interval;
+	}
+
+	private static long jitter(long intervalMillis) {
+		double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+		return (long) (intervalMillis * factor);
+	}
+
+	private final class Tracker implements Runnable {
+
+		private final DataengClient client;
+		private final String clusterName;
+		private final CompletableFuture<String> future;
+		private final DescribeClusterRequest request = new DescribeClusterRequest();
+		private final long startNanos = System.nanoTime();
+		private long intervalMillis;
+		private String lastStatus;
+		private long lastStatusNanos = startNanos;
+		private int consecutiveFailures;
+
+		Tracker(DataengClient client, String clusterName, CompletableFuture<String> future) {
+			this.client = client;
+			this.clusterName = clusterName;
+			this.future = future;
+			this.request.setClusterName(clusterName);
+		}
+
+		void schedule(long delayMillis) {
+			/* The scheduler only keeps time, the describeCluster call runs on the workflow executor. */
+			scheduler.schedule(() -> WorkflowExecutors.shared().execute(this), delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			if (future.isDone()) {
+				return;
+			}
+			try {
+				String clusterStatus = client.describeCluster(request).getCluster().getStatus();
+				consecutiveFailures = 0;
+				if (!clusterStatus.equals(lastStatus)) {
+					long now = System.nanoTime();
+					Tracing.clusterStatus(clusterName, lastStatus, clusterStatus, now - lastStatusNanos);
+					lastStatus = clusterStatus;
+					lastStatusNanos = now;
+				}
+				if (isFinal(clusterStatus)) {
+					if ("CREATED".equals(clusterStatus)) {
+						ClientMetrics.shared().recordTimeToCreated(System.nanoTime() - startNanos);
+					}
+					future.complete(clusterStatus);
+					return;
+				}
+				scheduleNext();
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Cluster " + clusterName + " is " + clusterStatus
+							+ ", polling again in " + intervalMillis + " ms");
+				}
+			} catch (RuntimeException e) {
+				consecutiveFailures++;
+				if (!ResilientDataengClient.isRetryable(e) || consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+					LOG.error("Unable to describe cluster " + clusterName + " " + e.getMessage());
+					future.completeExceptionally(e);
+					return;
+				}
+				scheduleNext();
+				LOG.error("Unable to describe cluster " + clusterName + ", polling again in " + intervalMillis
+						+ " ms (" + consecutiveFailures + "/" + MAX_CONSECUTIVE_FAILURES + ") " + e.getMessage());
+			}
+		}
+
+		private void scheduleNext() {
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			intervalMillis = nextInterval(elapsedMillis, intervalMillis);
+			schedule(jitter(intervalMillis));
+		}
+	}
+}
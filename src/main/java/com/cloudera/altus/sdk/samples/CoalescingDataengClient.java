@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache in front of describeCluster and describeJob. Callers
+ * asking for the same cluster or job while a call for it is in flight wait
+ * for that call instead of sending their own, so the load on Altus grows
+ * with the number of distinct clusters and jobs, not with the number of
+ * threads waiting on them.
+ *
+ * How long a response is reused depends on the status it reports. CREATED
+ * clusters are stable and reused the longest, clusters and jobs still
+ * changing for a short time, and final statuses are never reused, so that
+ * callers confirming a final status always get a fresh answer. Failed calls
+ * are never cached. Expired responses are swept at most once a minute by
+ * the calls missing the cache, so clusters and jobs no longer asked for do
+ * not stay cached in a long-running process.
+ *
+ * Cached responses are shared between callers, which must not modify them.
+ */
+final class CoalescingDataengClient extends ForwardingDataengClient {
+
+	private static final Stats CLUSTER_STATS = new Stats("describeCluster");
+	private static final Stats JOB_STATS = new Stats("describeJob");
+
+	static {
+		ClientMetrics.shared().addSource(CoalescingDataengClient::writePrometheus);
+	}
+
+	private final SingleFlightCache<DescribeClusterResponse> clusters;
+	private final SingleFlightCache<DescribeJobResponse> jobs;
+
+	/**
+	 * @param delegate				Client the operations are forwarded to
+	 * @param stableTtl				Time a CREATED cluster is reused
+	 * @param transitionalTtl	Time a cluster or job in a non final status is reused
+	 */
+	CoalescingDataengClient(DataengClient delegate, Duration stableTtl, Duration transitionalTtl) {
+		super(delegate);
+		long stableNanos = stableTtl.toNanos();
+		long transitionalNanos = transitionalTtl.toNanos();
+		this.clusters = new SingleFlightCache<>(CLUSTER_STATS, response -> {
+			String status = response.getCluster().getStatus();
+			if ("CREATED".equals(status)) {
+				return stableNanos;
+			}
+			return ClusterStatusPoller.isFinal(status) || ClusterReaper.isTerminated(status) ? 0 : transitionalNanos;
+		});
+		this.jobs = new SingleFlightCache<>(JOB_STATS,
+				response -> JobStatusTracker.isFinal(response.getJob().getStatus()) ? 0 : transitionalNanos);
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		clusters.invalidate(request.getClusterName());
+		return super.createAWSCluster(request);
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		return clusters.get(request.getClusterName(), () -> super.describeCluster(request));
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		try {
+			return super.deleteCluster(request);
+		} finally {
+			clusters.invalidate(request.getClusterName());
+		}
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		return jobs.get(request.getJobId(), () -> super.describeJob(request));
+	}
+
+	private static void writePrometheus(StringBuilder out) {
+		out.append("# HELP altus_client_status_cache_total Describe calls by how they were answered.\n")
+				.append("# TYPE altus_client_status_cache_total counter\n");
+		CLUSTER_STATS.writePrometheus(out);
+		JOB_STATS.writePrometheus(out);
+	}
+
+	private static final class SingleFlightCache<V> {
+
+		private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+		private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+		private final Stats stats;
+		private final Function<V, Long> ttlNanos;
+		private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+		SingleFlightCache(Stats stats, Function<V, Long> ttlNanos) {
+			this.stats = stats;
+			this.ttlNanos = ttlNanos;
+		}
+
+		V get(String key, Supplier<V> call) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null && entry.isFresh()) {
+				if (entry.future.isDone()) {
+					stats.hits.increment();
+				} else {
+					stats.coalesced.increment();
+				}
+				return BaseIntegration.await(entry.future);
+			}
+			Entry<V> created = new Entry<>();
+			/* Only the thread whose entry got installed sends the call, the others wait for it. */
+			Entry<V> current = entries.compute(key,
+					(k, existing) -> existing != null && existing.isFresh() ? existing : created);
+			if (current != created) {
+				stats.coalesced.increment();
+				return BaseIntegration.await(current.future);
+			}
+			stats.misses.increment();
+			sweepIfDue();
+			try {
+				V value = call.get();
+				long ttl = ttlNanos.apply(value);
+				if (ttl > 0) {
+					created.expiresAtNanos = System.nanoTime() + ttl;
+				} else {
+					entries.remove(key, created);
+				}
+				created.future.complete(value);
+				return value;
+			} catch (RuntimeException e) {
+				entries.remove(key, created);
+				created.future.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		void invalidate(String key) {
+			entries.remove(key);
+		}
+
+		/* Only one caller sweeps per interval; entries replaced in the meantime are kept. */
+		private void sweepIfDue() {
+			long now = System.nanoTime();
+			long next = nextSweepNanos.get();
+			if (now - next < 0 || !nextSweepNanos.compareAndSet(next, now + SWEEP_INTERVAL_NANOS)) {
+				return;
+			}
+			for (Map.Entry<String, Entry<V>> entry : entries.entrySet()) {
+				if (entry.getValue().isExpired(now)) {
+					entries.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static final class Entry<V> {
+
+		private final CompletableFuture<V> future = new CompletableFuture<>();
+		/* Zero while the call is in flight. */
+		private volatile long expiresAtNanos;
+
+		boolean isFresh() {
+			long expiresAt = expiresAtNanos;
+			return expiresAt == 0 ? !future.isDone() : System.nanoTime() - expiresAt < 0;
+		}
+
+		/* Entries still in flight never expire. */
+		boolean isExpired(long nowNanos) {
+			long expiresAt = expiresAtNanos;
+			return expiresAt != 0 && nowNanos - expiresAt >= 0;
+		}
+	}
+
+	private static final class Stats implements StatusCacheMXBean {
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder coalesced = new LongAdder();
+
+		private final String operation;
+
+		Stats(String operation) {
+			this.operation = operation;
+			ClientMetrics.register(this, "type=StatusCache,operation=" + operation);
+		}
+
+		void writePrometheus(StringBuilder out) {
+			out.append("altus_client_status_cache_total{operation=\"").append(operation).append("\",result=\"hit\"} ")
+					.append(getHits()).append('\n')
+					.append("altus_client_status_cache_total{operation=\"").append(operation).append("\",result=\"miss\"} ")
+					.append(getMisses()).append('\n')
+					.append("altus_client_status_cache_total{operation=\"").append(operation)
+					.append("\",result=\"coalesced\"} ").append(getCoalesced()).append('\n');
+		}
+
+		@Override
+		public long getHits() {
+			return hits.sum();
+		}
+
+		@Override
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		@Override
+		public long getCoalesced() {
+			return coalesced.sum();
+		}
+	}
+}
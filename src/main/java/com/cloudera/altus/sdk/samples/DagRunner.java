@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link JobDag}. Jobs without pending dependencies are submitted in
+ * parallel, up to a maximum number of jobs in flight, and a job is released
+ * as soon as all its parents COMPLETED. When more jobs are ready than may be
+ * in flight, the jobs with the longest critical path go first, since they
+ * bound the total running time. When a job does not complete, the jobs
+ * depending on it are skipped and the other branches keep running.
+ *
+ * Usage: DagRunner dag.ini [--max-parallel N]
+ */
+public class DagRunner {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DagRunner.class);
+
+	private final DataengClient client;
+	private final JobDag dag;
+	private final int maxParallel;
+	private final Map<JobDag.Node, Integer> pendingParents = new HashMap<>();
+	private final PriorityQueue<JobDag.Node> ready = new PriorityQueue<>(
+			Comparator.comparing(JobDag.Node::getCriticalPath).reversed());
+	private final Map<String, Timing> timings = new LinkedHashMap<>();
+	private final CompletableFuture<Map<String, Timing>> done = new CompletableFuture<>();
+	private long startNanos;
+	private int running;
+	private int finished;
+
+	/**
+	 * @param client				Client used to communicate to backend services
+	 * @param dag						Jobs to run
+	 * @param maxParallel		Maximum number of jobs in flight
+	 */
+	DagRunner(DataengClient client, JobDag dag, int maxParallel) {
+		this.client = client;
+		this.dag = dag;
+		this.maxParallel = maxParallel;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			LOG.error("Usage: DagRunner dag.ini [--max-parallel N]");
+			return;
+		}
+		int maxParallel = Integer.MAX_VALUE;
+		for (int i = 1; i + 1 < args.length; i++) {
+			if ("--max-parallel".equals(args[i])) {
+				maxParallel = Integer.parseInt(args[i + 1]);
+			}
+		}
+		if (maxParallel < 1) {
+			LOG.error("--max-parallel must be at least 1, got " + maxParallel);
+			return;
+		}
+		JobDag dag = JobDag.load(Paths.get(args[0]));
+		DataengClient client = DataengClientRegistry.shared().get(SampleConfig.current());
+		Map<String, Timing> timings = BaseIntegration.await(new DagRunner(client, dag, maxParallel).run());
+		ClusterPool.closeShared();
+		for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+			LOG.info(entry.getKey() + " " + entry.getValue());
+		}
+	}
+
+	/**
+	 * Starts running the DAG. A runner can only be run once.
+	 * @return Future		Completes with the timing of every job, in declaration order, once all jobs settled
+	 */
+	synchronized CompletableFuture<Map<String, Timing>> run() {
+		startNanos = System.nanoTime();
+		LOG.info("Running " + dag.getNodes().size() + " jobs, estimated critical path is "
+				+ dag.getCriticalPath().toMinutes() + " minutes");
+		for (JobDag.Node node : dag.getNodes().values()) {
+			timings.put(node.getName(), new Timing());
+			pendingParents.put(node, node.getDependsOn().size());
+			if (node.getDependsOn().isEmpty()) {
+				release(node);
+			}
+		}
+		dispatch();
+		if (dag.getNodes().isEmpty()) {
+			done.complete(timings);
+		}
+		return done;
+	}
+
+	private void release(JobDag.Node node) {
+		timings.get(node.getName()).readyNanos = System.nanoTime() - startNanos;
+		ready.add(node);
+	}
+
+	/* Called with the lock held. */
+	private void dispatch() {
+		while (running < maxParallel && !ready.isEmpty()) {
+			JobDag.Node node = ready.poll();
+			running++;
+			timings.get(node.getName()).submittedNanos = System.nanoTime() - startNanos;
+			launch(node);
+		}
+	}
+
+	private void launch(JobDag.Node node) {
+		CompletableFuture<ClusterPool.Lease> lease = node.getClusterName() == null
+				? ClusterPool.shared().leaseAsync(node.getType().getServiceType())
+				: CompletableFuture.completedFuture(null);
+		lease.thenCompose(leased -> {
+			String clusterName = leased == null ? node.getClusterName() : leased.getClusterName();
+			return JobSubmissionQueue.forCluster(client, clusterName)
+					.submit(node.newJobRequest())
+					.thenCompose(jobId -> JobStatusTracker.shared().track(client, clusterName, jobId));
+		}).whenComplete((status, error) -> {
+			/* Returned however the job ended, even when its request could not be built. */
+			lease.thenAccept(leased -> {
+				if (leased != null) {
+					leased.close();
+				}
+			});
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				LOG.error("Job " + node.getName() + " failed " + cause.getMessage());
+			}
+			finished(node, error == null ? status : "ERROR");
+		});
+	}
+
+	private synchronized void finished(JobDag.Node node, String status) {
+		running--;
+		Timing timing = timings.get(node.getName());
+		timing.finishedNanos = System.nanoTime() - startNanos;
+		timing.status = status;
+		finished++;
+		LOG.info("Job " + node.getName() + " is " + status);
+		if ("COMPLETED".equals(status)) {
+			for (JobDag.Node child : node.getChildren()) {
+				if (pendingParents.merge(child, -1, Integer::sum) == 0) {
+					release(child);
+				}
+			}
+		} else {
+			skipDescendants(node);
+		}
+		dispatch();
+		if (finished == dag.getNodes().size()) {
+			LOG.info("DAG finished in " + Duration.ofNanos(System.nanoTime() - startNanos).getSeconds() + "s");
+			done.complete(timings);
+		}
+	}
+
+	private void skipDescendants(JobDag.Node failed) {
+		Deque<JobDag.Node> toSkip = new ArrayDeque<>(failed.getChildren());
+		while (!toSkip.isEmpty()) {
+			JobDag.Node node = toSkip.poll();
+			Timing timing = timings.get(node.getName());
+			if (timing.status == null) {
+				timing.status = "SKIPPED";
+				finished++;
+				LOG.info("Skipping job " + node.getName() + ", job " + failed.getName() + " did not complete");
+				toSkip.addAll(node.getChildren());
+			}
+		}
+	}
+
+	/**
+	 * Timing of one job, relative to the start of the DAG.
+	 */
+	static final class Timing {
+
+		private long readyNanos = -1;
+		private long submittedNanos = -1;
+		private long finishedNanos = -1;
+		private String status;
+
+		/**
+		 * @return Duration		Time until all the parents of the job completed, or null if it never got ready
+		 */
+		Duration getReady() {
+			return readyNanos < 0 ? null : Duration.ofNanos(readyNanos);
+		}
+
+		/**
+		 * @return Duration		Time the job waited for a slot after it got ready, or null if it never ran
+		 */
+		Duration getQueued() {
+			return submittedNanos < 0 ? null : Duration.ofNanos(submittedNanos - readyNanos);
+		}
+
+		/**
+		 * @return Duration		Time from the submission to the final status, or null if it never ran
+		 */
+		Duration getRunning() {
+			return finishedNanos < 0 ? null : Duration.ofNanos(finishedNanos - submittedNanos);
+		}
+
+		/**
+		 * @return String		Final status of the job, SKIPPED when a parent did not complete
+		 */
+		String getStatus() {
+			return status;
+		}
+
+		@Override
+		public String toString() {
+			if (getRunning() == null) {
+				return status;
+			}
+			return status + " ready=" + getReady().getSeconds() + "s queued=" + getQueued().getSeconds()
+					+ "s running=" + getRunning().getSeconds() + "s";
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.authentication.credentials.AltusProfileCredentialsProvider;
+import com.cloudera.altus.client.AltusClientConfiguration;
+import com.cloudera.altus.client.AltusClientConfigurationBuilder;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.api.DataengClientBuilder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of DataengClients. Clients are thread-safe, so one
+ * client is built per (credentials profile, application name, endpoint) and
+ * shared by every integration asking for the same key. Sharing the client
+ * avoids resolving the credentials from ~/.altus again and lets concurrent
+ * integrations reuse the connections kept alive by the HTTP client of the
+ * SDK. The SDK client configuration only exposes the connection and read
+ * timeouts, so the size of that connection pool is left to the SDK. Every
+ * client records its calls in {@link ClientMetrics}, shares one request rate
+ * and one circuit breaker per endpoint through {@link ResilientDataengClient},
+ * feeds the running times of its jobs to the {@link SizingAdvisor}, keeps
+ * the {@link JobIndex} in step with its clusters, and records the clusters
+ * and jobs it handles in the {@link StateJournal} when one is configured.
+ * The [trace] section can also have the calls recorded to an
+ * {@link ApiTrace}, or answered from one instead of Altus.
+ */
+final class DataengClientRegistry {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DataengClientRegistry.class);
+
+	private static final DataengClientRegistry SHARED = new DataengClientRegistry();
+
+	private final ConcurrentMap<Key, Registration> clients = new ConcurrentHashMap<>();
+
+	private DataengClientRegistry() {
+		ClientMetrics.shared().addSource(this::writePrometheus);
+	}
+
+	/**
+	 * @return DataengClientRegistry		Registry shared by every integration in this JVM
+	 */
+	static DataengClientRegistry shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the client described by the [client] section of SampleResources.ini,
+	 * or the {@link PlacementDataengClient} spreading clusters across the
+	 * environments of the [placement] section when some are configured.
+	 * @param config						Configuration snapshot
+	 * @return DataengClient		Shared client for the configured key
+	 */
+	DataengClient get(SampleConfig config) {
+		if (!config.getPlacementEnvironments().isEmpty()) {
+			return PlacementDataengClient.shared();
+		}
+		return get(config.getProfile(), config.getClientApplicationName(), config.getEndpoint(),
+				config.getClientSettings());
+	}
+
+	/**
+	 * Returns the client registered for the key, building it on first use.
+	 * The settings only apply when the client is built; later callers asking
+	 * for the same key get the existing client.
+	 * @param profile						Credentials profile in ~/.altus/credentials, or null for the default chain
+	 * @param applicationName		Application name reported to Altus
+	 * @param endpoint					Altus endpoint, or null for the SDK default
+	 * @param settings					Connection settings used when building the client
+	 * @return DataengClient		Shared client for the key
+	 */
+	DataengClient get(String profile, String applicationName, String endpoint, Settings settings) {
+		Key key = new Key(profile, applicationName, endpoint);
+		Registration registration = clients.get(key);
+		if (registration == null) {
+			/*
+			Built outside the map, so that a slow build does not hold up the other
+			keys. A client losing the race to register holds nothing to release
+			and is dropped; only the registered one resumes the journal.
+			*/
+			Registration built = new Registration(build(key, settings));
+			registration = clients.putIfAbsent(key, built);
+			if (registration == null) {
+				registration = built;
+				resume(built.client);
+			}
+		}
+		registration.acquisitions.increment();
+		return registration.client;
+	}
+
+	/* Number of clients built and times each one was handed out, in the Prometheus export of ClientMetrics. */
+	private void writePrometheus(StringBuilder out) {
+		out.append("# HELP altus_client_registry_clients Shared DataengClients built so far.\n")
+				.append("# TYPE altus_client_registry_clients gauge\n")
+				.append("altus_client_registry_clients ").append(clients.size()).append('\n')
+				.append("# HELP altus_client_registry_acquisitions_total Times each shared DataengClient was handed out.\n")
+				.append("# TYPE altus_client_registry_acquisitions_total counter\n");
+		for (Map.Entry<Key, Registration> entry : clients.entrySet()) {
+			Key key = entry.getKey();
+			out.append("altus_client_registry_acquisitions_total{profile=\"")
+					.append(key.profile == null ? "<default>" : key.profile)
+					.append("\",application=\"").append(key.applicationName)
+					.append("\",endpoint=\"").append(key.endpoint == null ? "<default>" : key.endpoint)
+					.append("\"} ").append(entry.getValue().acquisitions.sum()).append('\n');
+		}
+	}
+
+	/**
+	 * @return int	Number of clients built so far
+	 */
+	int size() {
+		return clients.size();
+	}
+
+	/**
+	 * Builds a client with the decorators of the shared clients, but without
+	 * the journal, the trace, the replay or the placement across environments,
+	 * and without registering it. Building it sends nothing to Altus and starts
+	 * no exporter, so the AltusCli warmup uses it to load the classes of the
+	 * client at build time.
+	 * @param config						Configuration snapshot
+	 * @return DataengClient		Client that is not shared
+	 */
+	static DataengClient buildDetached(SampleConfig config) {
+		Key key = new Key(config.getProfile(), config.getClientApplicationName(), config.getEndpoint());
+		return decorate(sdkClient(key, config.getClientSettings()), key, config, null);
+	}
+
+	private static DataengClient build(Key key, Settings settings) {
+		LOG.info("Building shared DataengClient for " + key);
+		SampleConfig config = SampleConfig.current();
+		ClientMetrics.shared().export(config);
+		ReplayingDataengClient replay = ReplayingDataengClient.shared();
+		DataengClient client = replay == null ? sdkClient(key, settings) : replay;
+		ApiTrace.Writer trace = ApiTrace.Writer.shared();
+		if (trace != null) {
+			client = new RecordingDataengClient(client, trace);
+		}
+		return decorate(client, key, config, StateJournal.shared());
+	}
+
+	/* Polls again the clusters and jobs the journal holds as unfinished. */
+	private static void resume(DataengClient client) {
+		StateJournal journal = StateJournal.shared();
+		if (journal != null) {
+			journal.resume(client);
+		}
+	}
+
+	private static DataengClient sdkClient(Key key, Settings settings) {
+		AltusClientConfiguration altusClientConfiguration = AltusClientConfigurationBuilder.defaultBuilder()
+				.withClientApplicationName(key.applicationName)
+				.withConnectionTimeout(settings.connectionTimeout)
+				.withReadTimeout(settings.readTimeout)
+				.build();
+		DataengClientBuilder builder = DataengClientBuilder.defaultBuilder()
+				.withClientConfiguration(altusClientConfiguration);
+		if (key.profile != null) {
+			builder.withCredentials(new AltusProfileCredentialsProvider(key.profile));
+		}
+		if (key.endpoint != null) {
+			builder.withEndPoint(key.endpoint);
+		}
+		return builder.build();
+	}
+
+	private static DataengClient decorate(DataengClient client, Key key, SampleConfig config, StateJournal journal) {
+		client = new ResilientDataengClient(
+				new InstrumentedDataengClient(client, ClientMetrics.shared()),
+				AdaptiveRateLimiter.shared(), CircuitBreaker.forEndpoint(key.endpoint),
+				config.getMaxRetries(), config.getRetryBaseDelay(), config.getRetryMaxDelay());
+		client = new SizingDataengClient(client, SizingAdvisor.shared());
+		client = new IndexingDataengClient(client, JobIndex.shared());
+		if (journal != null) {
+			client = new JournalingDataengClient(client, journal);
+		}
+		return new CoalescingDataengClient(client, config.getCacheStableTtl(), config.getCacheTransitionalTtl());
+	}
+
+	private static String emptyToNull(String value) {
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * Connection settings of a client, read from the [client] section of SampleResources.ini.
+	 */
+	static final class Settings {
+
+		private final Duration connectionTimeout;
+		private final Duration readTimeout;
+
+		/**
+		 * @param connectionTimeout		Timeout for establishing a connection
+		 * @param readTimeout					Timeout for reading a response
+		 */
+		Settings(Duration connectionTimeout, Duration readTimeout) {
+			this.connectionTimeout = connectionTimeout;
+			this.readTimeout = readTimeout;
+		}
+	}
+
+	private static final class Registration {
+
+		private final DataengClient client;
+		private final LongAdder acquisitions = new LongAdder();
+
+		Registration(DataengClient client) {
+			this.client = client;
+		}
+	}
+
+	private static final class Key {
+
+		private final String profile;
+		private final String applicationName;
+		private final String endpoint;
+
+		Key(String profile, String applicationName, String endpoint) {
+			this.profile = emptyToNull(profile);
+			this.applicationName = applicationName;
+			this.endpoint = emptyToNull(endpoint);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Objects.equals(profile, other.profile)
+					&& Objects.equals(applicationName, other.applicationName)
+					&& Objects.equals(endpoint, other.endpoint);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(profile, applicationName, endpoint);
+		}
+
+		@Override
+		public String toString() {
+			return "profile=" + (profile == null ? "<default>" : profile)
+					+ " application=" + applicationName
+					+ " endpoint=" + (endpoint == null ? "<default>" : endpoint);
+		}
+	}
+}
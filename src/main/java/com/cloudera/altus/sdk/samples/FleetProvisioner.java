@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provisions a fleet of clusters in parallel. At most a fixed number of
+ * createAWSCluster calls are in flight at once; once accepted, every cluster
+ * is tracked by the shared {@link ClusterStatusPoller}, so waiting for the
+ * fleet does not hold a thread per cluster. A cluster that fails to be
+ * created does not hold back the others.
+ *
+ * Every cluster is requested like the integrations request theirs, through
+ * {@link BaseIntegration#requestAWSCluster}, so the {@link SizingAdvisor}
+ * and the {@link StateJournal} apply to the fleet as well. The AltusCli
+ * fleet command runs it.
+ */
+final class FleetProvisioner implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FleetProvisioner.class);
+
+	private final DataengClient client;
+	private final ExecutorService createPool;
+
+	/**
+	 * Uses the maxConcurrentCreates setting of the [fleet] section of SampleResources.ini.
+	 * @param client								Client used to communicate to backend services
+	 */
+	FleetProvisioner(DataengClient client) {
+		this(client, SampleConfig.current().getMaxConcurrentCreates());
+	}
+
+	/**
+	 * @param client								Client used to communicate to backend services
+	 * @param maxConcurrentCreates	Maximum number of createAWSCluster calls in flight
+	 */
+	FleetProvisioner(DataengClient client, int maxConcurrentCreates) {
+		this.client = client;
+		this.createPool = Executors.newFixedThreadPool(maxConcurrentCreates,
+				ClusterStatusPoller.daemonThreads("altus-fleet-create"));
+	}
+
+	/**
+	 * Creates every cluster of the fleet and waits until each one reaches a final status.
+	 * @param specs		Clusters to create
+	 * @return Map		Result per cluster name, in the order of the specs
+	 */
+	Map<String, Result> provision(List<ClusterSpec> specs) {
+		return BaseIntegration.await(provisionAsync(specs));
+	}
+
+	/**
+	 * Creates every cluster of the fleet without blocking the caller.
+	 * @param specs		Clusters to create, with distinct names
+	 * @return Future	Completes with the result per cluster name once every cluster settled
+	 */
+	CompletableFuture<Map<String, Result>> provisionAsync(List<ClusterSpec> specs) {
+		Set<String> names = new HashSet<>();
+		for (ClusterSpec spec : specs) {
+			if (!names.add(spec.getClusterName())) {
+				throw new IllegalArgumentException("Cluster " + spec.getClusterName() + " appears twice in the fleet");
+			}
+		}
+		List<CompletableFuture<Result>> results = new ArrayList<>(specs.size());
+		for (ClusterSpec spec : specs) {
+			results.add(provision(spec));
+		}
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> {
+					Map<String, Result> fleet = new LinkedHashMap<>();
+					for (int i = 0; i < specs.size(); i++) {
+						fleet.put(specs.get(i).getClusterName(), results.get(i).join());
+					}
+					return fleet;
+				});
+	}
+
+	/**
+	 * Creates a single cluster under the concurrency cap. The time to CREATED
+	 * is measured from the create request, not from the time spent waiting
+	 * for a slot under the cap.
+	 * @param spec		Cluster to create
+	 * @return Future	Completes with the result of the cluster, never exceptionally
+	 */
+	CompletableFuture<Result> provision(ClusterSpec spec) {
+		AtomicLong startNanos = new AtomicLong();
+		return CompletableFuture
+				.supplyAsync(() -> create(spec, startNanos), createPool)
+				.thenCompose(clusterName -> ClusterStatusPoller.shared().track(client, clusterName))
+				.handle((status, error) -> {
+					Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos.get());
+					if (error != null) {
+						Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+						LOG.error("Unable to create cluster " + spec.getClusterName() + " " + cause.getMessage());
+						return new Result(null, null, cause);
+					}
+					if ("CREATED".equals(status)) {
+						LOG.info("Cluster " + spec.getClusterName() + " created in " + elapsed.getSeconds() + "s");
+						return new Result(status, elapsed, null);
+					}
+					LOG.error("Cluster " + spec.getClusterName() + " was unable to get created. "
+							+ " Cluster status is " + status);
+					return new Result(status, null, null);
+				});
+	}
+
+	@Override
+	public void close() {
+		createPool.shutdown();
+	}
+
+	/* Runs once a slot under the cap is free, which is when the clock starts. */
+	private String create(ClusterSpec spec, AtomicLong startNanos) {
+		startNanos.set(System.nanoTime());
+		return spec.getType().integration().requestAWSCluster(client, spec.getClusterName(),
+				spec.getType().getServiceType(), spec.getWorkersGroupSize());
+	}
+
+	/**
+	 * Cluster to create as part of a fleet.
+	 */
+	static final class ClusterSpec {
+
+		private final String clusterName;
+		private final JobDag.JobType type;
+		private final int workersGroupSize;
+
+		/**
+		 * @param clusterName				Name of the cluster to be created
+		 * @param type							Integration whose job the cluster is sized for, which sets its service type
+		 * @param workersGroupSize	Number of worker nodes, unless the SizingAdvisor fits another size
+		 */
+		ClusterSpec(String clusterName, JobDag.JobType type, int workersGroupSize) {
+			this.clusterName = clusterName;
+			this.type = type;
+			this.workersGroupSize = workersGroupSize;
+		}
+
+		String getClusterName() {
+			return clusterName;
+		}
+
+		JobDag.JobType getType() {
+			return type;
+		}
+
+		int getWorkersGroupSize() {
+			return workersGroupSize;
+		}
+	}
+
+	/**
+	 * Outcome of creating one cluster of the fleet.
+	 */
+	static final class Result {
+
+		private final String status;
+		private final Duration timeToCreated;
+		private final Throwable error;
+
+		Result(String status, Duration timeToCreated, Throwable error) {
+			this.status = status;
+			this.timeToCreated = timeToCreated;
+			this.error = error;
+		}
+
+		/**
+		 * @return String		Final cluster status, or null if the cluster could not be requested or polled
+		 */
+		String getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Duration		Time from the create request to CREATED, or null if the cluster was not created
+		 */
+		Duration getTimeToCreated() {
+			return timeToCreated;
+		}
+
+		/**
+		 * @return Throwable	Error raised while creating or polling the cluster, or null
+		 */
+		Throwable getError() {
+			return error;
+		}
+
+		boolean isCreated() {
+			return "CREATED".equals(status);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.client.AltusClientConfigurationBuilder;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.CreateAzureClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAzureClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+import com.cloudera.altus.dataeng.model.TerminateJobRequest;
+import com.cloudera.altus.dataeng.model.TerminateJobResponse;
+
+/**
+ * DataengClient that sends its operations to another client. Decorators
+ * extend it and override the operations they care about, so they can be
+ * stacked in front of the client built by the SDK.
+ *
+ * Every operation the samples use is forwarded, along with terminateJob and
+ * createAzureCluster. An operation that is not forwarded fails with an
+ * IllegalStateException naming this class, instead of being sent from the
+ * placeholder state of the superclass.
+ */
+abstract class ForwardingDataengClient extends DataengClient {
+
+	private final DataengClient delegate;
+
+	/**
+	 * @param delegate		Client every operation is forwarded to
+	 */
+	ForwardingDataengClient(DataengClient delegate) {
+		/*
+		The state of the superclass is only reached by operations this class does
+		not forward, which fail as soon as the request is signed.
+		*/
+		super(() -> {
+			throw new IllegalStateException("This operation is not forwarded by ForwardingDataengClient, "
+					+ "call it on the client built by the SDK or forward it");
+		}, "http://localhost", AltusClientConfigurationBuilder.defaultBuilder().build());
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return DataengClient		Client the operations are forwarded to
+	 */
+	DataengClient delegate() {
+		return delegate;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		return delegate.createAWSCluster(request);
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		return delegate.describeCluster(request);
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		return delegate.deleteCluster(request);
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		return delegate.listClusters(request);
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		return delegate.submitJobs(request);
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		return delegate.describeJob(request);
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		return delegate.listJobs(request);
+	}
+
+	@Override
+	public TerminateJobResponse terminateJob(TerminateJobRequest request) {
+		return delegate.terminateJob(request);
+	}
+
+	@Override
+	public CreateAzureClusterResponse createAzureCluster(CreateAzureClusterRequest request) {
+		return delegate.createAzureCluster(request);
+	}
+}
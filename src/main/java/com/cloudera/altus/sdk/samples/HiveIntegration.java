@@ -20,8 +20,6 @@ import com.cloudera.altus.AltusServiceException;
 import com.cloudera.altus.dataeng.api.DataengClient;
 import com.cloudera.altus.dataeng.model.HiveJobRequest;
 import com.cloudera.altus.dataeng.model.JobRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,6 +38,13 @@ public class HiveIntegration extends BaseIntegration {
 		DataengClient client = builder.createClient();
 
 		try {
+			int workflows = workflowCount(args);
+			WorkflowMode mode = WorkflowMode.fromArgs(args);
+			if (workflows > 0 || mode != WorkflowMode.SERIAL) {
+				builder.runWorkflows(client, clusterName, "HIVE_ON_SPARK", Math.max(workflows, 1), mode);
+				return;
+			}
+
 			String clusterCreationStatus = builder.createAWSCluster(client, clusterName, "HIVE_ON_SPARK");
 
 			/*
@@ -62,10 +67,7 @@ public class HiveIntegration extends BaseIntegration {
 	}
 
 	@Override
-	void createJob(DataengClient client, String clusterName) {
-		SubmitJobsRequest submitJobsRequest = new SubmitJobsRequest();
-		submitJobsRequest.setClusterName(clusterName);
-		ArrayList<JobRequest> jobs = new ArrayList<>();
+	JobRequest buildJobPrototype(SampleConfig config) {
 		JobRequest jobRequest = new JobRequest();
 		HiveJobRequest hiveJob = new HiveJobRequest();
 		/* The Hive script to execute. It is used to create tables. */
@@ -80,9 +82,12 @@ public class HiveIntegration extends BaseIntegration {
 		hiveJob.setParams(params);
 		jobRequest.setName("sample-hive-job-status");
 		jobRequest.setHiveJob(hiveJob);
-		jobs.add(jobRequest);
-		submitJobsRequest.setJobs(jobs);
-		SubmitJobsResponse response = client.submitJobs(submitJobsRequest);
-		pollJobStatus(client, response.getJobs().get(0).getJobId());
+		return jobRequest;
+	}
+
+	@Override
+	void createJob(DataengClient client, String clusterName) {
+		String jobId = submitJob(client, clusterName, newJobRequest());
+		pollJobStatus(client, clusterName, jobId);
 	}
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+
+/**
+ * Keeps the {@link JobIndex} in step with the clusters created and deleted
+ * through the client. A cluster created again under a name that was used
+ * before starts with no indexed jobs, so looking up a job by name never
+ * returns the job of an earlier cluster.
+ */
+final class IndexingDataengClient extends ForwardingDataengClient {
+
+	private final JobIndex index;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param index				Index the jobs of the clusters are forgotten from
+	 */
+	IndexingDataengClient(DataengClient delegate, JobIndex index) {
+		super(delegate);
+		this.index = index;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		index.forgetCluster(request.getClusterName());
+		return super.createAWSCluster(request);
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		DeleteClusterResponse response = super.deleteCluster(request);
+		index.forgetCluster(request.getClusterName());
+		return response;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.util.function.Supplier;
+
+/**
+ * Records the latency, the in-flight count and the errors of every
+ * DataengClient operation in {@link ClientMetrics}, and traces every call
+ * with {@link Tracing}.
+ */
+final class InstrumentedDataengClient extends ForwardingDataengClient {
+
+	private final ClientMetrics metrics;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param metrics			Metrics the calls are recorded in
+	 */
+	InstrumentedDataengClient(DataengClient delegate, ClientMetrics metrics) {
+		super(delegate);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		return record("createAWSCluster", request.getClusterName(), null, () -> super.createAWSCluster(request));
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		return record("describeCluster", request.getClusterName(), null, () -> super.describeCluster(request));
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		return record("deleteCluster", request.getClusterName(), null, () -> super.deleteCluster(request));
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		return record("listClusters", null, null, () -> super.listClusters(request));
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		return record("submitJobs", request.getClusterName(), null, () -> super.submitJobs(request));
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		return record("describeJob", null, request.getJobId(), () -> super.describeJob(request));
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		return record("listJobs", request.getClusterName(), null, () -> super.listJobs(request));
+	}
+
+	private <T> T record(String operation, String clusterName, String jobId, Supplier<T> call) {
+		ClientMetrics.OperationMetrics operationMetrics = metrics.operation(operation);
+		operationMetrics.started();
+		long startNanos = System.nanoTime();
+		int httpCode = 200;
+		Tracing.Span span = Tracing.call(operation, clusterName, jobId);
+		try {
+			return call.get();
+		} catch (AltusServiceException ase) {
+			httpCode = ase.getHttpCode();
+			throw ase;
+		} catch (RuntimeException e) {
+			/* Client side failures, such as timeouts, never got an http code. */
+			httpCode = 0;
+			throw e;
+		} finally {
+			operationMetrics.finished(System.nanoTime() - startNanos, httpCode);
+			span.setHttpCode(httpCode);
+			span.close();
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.JobRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.ini4j.Ini;
+import org.ini4j.Wini;
+
+/**
+ * Directed acyclic graph of jobs, declared in an ini file with one section
+ * per job:
+ * <pre>
+ * [hive-transform]
+ * # spark, hive or mr2: the job is built like the job of that integration
+ * type = hive
+ * # Cluster to submit to. Without it, a cluster is leased from the ClusterPool.
+ * cluster = sample-Hive
+ * # Comma separated jobs that must complete first
+ * dependsOn =
+ * # Expected running time, used to rank the jobs by critical path
+ * estimateMinutes = 10
+ * # Hive jobs: script to run and comma separated parameters
+ * script = s3a://bucket/program/part2.hql
+ * params = INPUT_PATH=s3a://bucket/part1/
+ * # Spark and MapReduce jobs: comma separated jars, main class and comma separated arguments
+ * jars =
+ * mainClass =
+ * arguments =
+ * </pre>
+ * The section name is used as the job name. The program keys that are left
+ * out keep the value of the integration's job, so chained jobs of one type
+ * differ by their script, jar or arguments.
+ */
+final class JobDag {
+
+	private final Map<String, Node> nodes;
+
+	private JobDag(Map<String, Node> nodes) {
+		this.nodes = Collections.unmodifiableMap(nodes);
+		for (Node node : nodes.values()) {
+			for (String parent : node.dependsOn) {
+				Node parentNode = nodes.get(parent);
+				if (parentNode == null) {
+					throw new IllegalArgumentException("Job " + node.name + " depends on unknown job " + parent);
+				}
+				parentNode.children.add(node);
+			}
+		}
+		computeCriticalPaths(topologicalOrder());
+	}
+
+	/**
+	 * Reads a DAG from an ini file.
+	 * @param file						File declaring the jobs
+	 * @return JobDag					Validated DAG
+	 * @throws IOException		Occurs when the file cannot be read
+	 */
+	static JobDag load(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			Ini ini = new Wini(in);
+			Map<String, Node> nodes = new LinkedHashMap<>();
+			for (Map.Entry<String, Ini.Section> entry : ini.entrySet()) {
+				Ini.Section section = entry.getValue();
+				String estimate = section.get("estimateMinutes");
+				JobType type = JobType.of(section.get("type"));
+				nodes.put(entry.getKey(), new Node(entry.getKey(),
+						type,
+						emptyToNull(section.get("cluster")),
+						split(section.get("dependsOn")),
+						Duration.ofMinutes(estimate == null || estimate.trim().isEmpty() ? 1 : Long.parseLong(estimate.trim())),
+						Program.of(entry.getKey(), type, section)));
+			}
+			return new JobDag(nodes);
+		}
+	}
+
+	/**
+	 * @param nodes		Jobs of the DAG
+	 * @return JobDag	Validated DAG
+	 */
+	static JobDag of(List<Node> nodes) {
+		Map<String, Node> byName = new LinkedHashMap<>();
+		for (Node node : nodes) {
+			if (byName.put(node.name, node) != null) {
+				throw new IllegalArgumentException("Job " + node.name + " is declared twice");
+			}
+		}
+		return new JobDag(byName);
+	}
+
+	Map<String, Node> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return Duration		Estimated length of the longest chain of dependent jobs
+	 */
+	Duration getCriticalPath() {
+		Duration longest = Duration.ZERO;
+		for (Node node : nodes.values()) {
+			if (node.criticalPath.compareTo(longest) > 0) {
+				longest = node.criticalPath;
+			}
+		}
+		return longest;
+	}
+
+	/* Kahn's algorithm, failing on cycles. */
+	private List<Node> topologicalOrder() {
+		Map<Node, Integer> parents = new HashMap<>();
+		Deque<Node> ready = new ArrayDeque<>();
+		for (Node node : nodes.values()) {
+			parents.put(node, node.dependsOn.size());
+			if (node.dependsOn.isEmpty()) {
+				ready.add(node);
+			}
+		}
+		List<Node> order = new ArrayList<>(nodes.size());
+		while (!ready.isEmpty()) {
+			Node node = ready.poll();
+			order.add(node);
+			for (Node child : node.children) {
+				if (parents.merge(child, -1, Integer::sum) == 0) {
+					ready.add(child);
+				}
+			}
+		}
+		if (order.size() != nodes.size()) {
+			throw new IllegalArgumentException("The jobs have a dependency cycle");
+		}
+		return order;
+	}
+
+	/* The critical path of a job is its estimate plus the longest critical path of its children. */
+	private static void computeCriticalPaths(List<Node> order) {
+		for (int i = order.size() - 1; i >= 0; i--) {
+			Node node = order.get(i);
+			Duration longestChild = Duration.ZERO;
+			for (Node child : node.children) {
+				if (child.criticalPath.compareTo(longestChild) > 0) {
+					longestChild = child.criticalPath;
+				}
+			}
+			node.criticalPath = node.estimate.plus(longestChild);
+		}
+	}
+
+	private static List<String> splitOrNull(String value) {
+		return value == null ? null : split(value);
+	}
+
+	private static List<String> split(String value) {
+		List<String> values = new ArrayList<>();
+		if (value != null) {
+			for (String part : value.split(",")) {
+				if (!part.trim().isEmpty()) {
+					values.add(part.trim());
+				}
+			}
+		}
+		return values;
+	}
+
+	private static String emptyToNull(String value) {
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * Integration whose job prototype a node is built from.
+	 */
+	enum JobType {
+		SPARK("SPARK") {
+			@Override
+			BaseIntegration integration() {
+				return new SparkIntegration();
+			}
+		},
+		HIVE("HIVE_ON_SPARK") {
+			@Override
+			BaseIntegration integration() {
+				return new HiveIntegration();
+			}
+		},
+		MR2("MR2") {
+			@Override
+			BaseIntegration integration() {
+				return new MapreduceIntegration();
+			}
+		};
+
+		private final String serviceType;
+
+		JobType(String serviceType) {
+			this.serviceType = serviceType;
+		}
+
+		abstract BaseIntegration integration();
+
+		String getServiceType() {
+			return serviceType;
+		}
+
+		static JobType of(String type) {
+			if (type == null) {
+				throw new IllegalArgumentException("Missing job type, expected spark, hive or mr2");
+			}
+			return valueOf(type.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	/**
+	 * Job of the DAG.
+	 */
+	static final class Node {
+
+		private final String name;
+		private final JobType type;
+		private final String clusterName;
+		private final List<String> dependsOn;
+		private final Duration estimate;
+		private final Program program;
+		private final List<Node> children = new ArrayList<>();
+		private Duration criticalPath;
+
+		/**
+		 * @param name					Name of the job, unique in the DAG
+		 * @param type					Integration the job is built like
+		 * @param clusterName		Cluster to submit to, or null to lease one from the ClusterPool
+		 * @param dependsOn			Names of the jobs that must complete first
+		 * @param estimate			Expected running time of the job
+		 * @param program				Script, jars or arguments replacing those of the integration's job
+		 */
+		Node(String name, JobType type, String clusterName, List<String> dependsOn, Duration estimate,
+				Program program) {
+			this.name = name;
+			this.type = type;
+			this.clusterName = clusterName;
+			this.dependsOn = Collections.unmodifiableList(new ArrayList<>(dependsOn));
+			this.estimate = estimate;
+			this.program = program;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		JobType getType() {
+			return type;
+		}
+
+		String getClusterName() {
+			return clusterName;
+		}
+
+		List<String> getDependsOn() {
+			return dependsOn;
+		}
+
+		List<Node> getChildren() {
+			return children;
+		}
+
+		Duration getEstimate() {
+			return estimate;
+		}
+
+		/**
+		 * @return Duration		Estimate of this job plus the longest chain of jobs depending on it
+		 */
+		Duration getCriticalPath() {
+			return criticalPath;
+		}
+
+		/**
+		 * Creates the request for the job. The prototype is kept per node, since
+		 * nodes of the same type may run different programs.
+		 * @return JobRequest		New request for the job, named after the node
+		 */
+		JobRequest newJobRequest() {
+			return RequestTemplates.shared().newJobRequest(this,
+					config -> program.applyTo(type.integration().buildJobPrototype(config)), name);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Program of a node, replacing parts of the job of its integration. A null
+	 * field keeps the integration's value.
+	 */
+	static final class Program {
+
+		private final String script;
+		private final List<String> params;
+		private final List<String> jars;
+		private final String mainClass;
+		private final List<String> arguments;
+
+		/**
+		 * @param script			Hive script
+		 * @param params			Hive script parameters
+		 * @param jars				Spark or MapReduce jars
+		 * @param mainClass		Spark or MapReduce main class
+		 * @param arguments		Spark application or MapReduce arguments
+		 */
+		Program(String script, List<String> params, List<String> jars, String mainClass, List<String> arguments) {
+			this.script = script;
+			this.params = params;
+			this.jars = jars;
+			this.mainClass = mainClass;
+			this.arguments = arguments;
+		}
+
+		/* Reads the program keys of a node section, rejecting the keys the job type does not have. */
+		private static Program of(String jobName, JobType type, Ini.Section section) {
+			Program program = new Program(emptyToNull(section.get("script")), splitOrNull(section.get("params")),
+					splitOrNull(section.get("jars")), emptyToNull(section.get("mainClass")),
+					splitOrNull(section.get("arguments")));
+			if (type == JobType.HIVE && (program.jars != null || program.mainClass != null || program.arguments != null)) {
+				throw new IllegalArgumentException("Hive job " + jobName
+						+ " takes a script and params, not jars, mainClass or arguments");
+			}
+			if (type != JobType.HIVE && (program.script != null || program.params != null)) {
+				throw new IllegalArgumentException("Job " + jobName
+						+ " takes jars, mainClass and arguments, not a script or params");
+			}
+			return program;
+		}
+
+		/**
+		 * @param job						Job of the integration
+		 * @return JobRequest		The same job, with the program of the node
+		 */
+		JobRequest applyTo(JobRequest job) {
+			if (job.getHiveJob() != null) {
+				if (script != null) {
+					job.getHiveJob().setScript(script);
+				}
+				if (params != null) {
+					job.getHiveJob().setParams(new ArrayList<>(params));
+				}
+			}
+			if (job.getSparkJob() != null) {
+				if (jars != null) {
+					job.getSparkJob().setJars(new ArrayList<>(jars));
+				}
+				if (mainClass != null) {
+					job.getSparkJob().setMainClass(mainClass);
+				}
+				if (arguments != null) {
+					job.getSparkJob().setApplicationArguments(new ArrayList<>(arguments));
+				}
+			}
+			if (job.getMr2Job() != null) {
+				if (jars != null) {
+					job.getMr2Job().setJars(new ArrayList<>(jars));
+				}
+				if (mainClass != null) {
+					job.getMr2Job().setMainClass(mainClass);
+				}
+				if (arguments != null) {
+					job.getMr2Job().setArguments(new ArrayList<>(arguments));
+				}
+			}
+			return job;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the jobs seen by this JVM, keyed by (cluster name, job name) and
+ * by job id. It is filled from the job ids returned when jobs are submitted
+ * and from listJobs pages scoped to a cluster, so that looking up a job by
+ * name does not require listing the whole account.
+ *
+ * The samples reuse cluster and job names from run to run, so the jobs of a
+ * cluster are forgotten when it is created again or deleted, see
+ * {@link IndexingDataengClient}. The index holds at most
+ * {@value #MAX_ENTRIES} jobs and forgets the ones indexed first beyond that.
+ */
+final class JobIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobIndex.class);
+
+	private static final JobIndex SHARED = new JobIndex();
+
+	/* Upper bound on the listJobs pages read by a single lookup that misses the index. */
+	static final int DEFAULT_MAX_PAGES = 5;
+
+	static final int MAX_ENTRIES = 10000;
+
+	private final ConcurrentMap<String, String> jobIdsByName = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Entry> entriesById = new ConcurrentHashMap<>();
+	/* Job ids in the order they were indexed, some may have been forgotten since. */
+	private final Queue<String> indexOrder = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger indexed = new AtomicInteger();
+
+	/**
+	 * @return JobIndex		Index shared by every integration in this JVM
+	 */
+	static JobIndex shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Records a job that was just submitted. A newer job with the same name on
+	 * the same cluster replaces the previous one.
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param jobName				Name of the job
+	 * @param jobId					Job Id returned by the service
+	 */
+	void record(String clusterName, String jobName, String jobId) {
+		if (entriesById.put(jobId, new Entry(clusterName, jobName)) == null) {
+			indexed(jobId);
+		}
+		if (jobName != null) {
+			jobIdsByName.put(key(clusterName, jobName), jobId);
+		}
+	}
+
+	/**
+	 * Forgets every job of a cluster, so that the jobs of a new cluster with
+	 * the same name are looked up again.
+	 * @param clusterName		Cluster that was created again or deleted
+	 */
+	void forgetCluster(String clusterName) {
+		entriesById.values().removeIf(entry -> entry.clusterName.equals(clusterName));
+		String prefix = clusterName + '\u0000';
+		jobIdsByName.keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	/**
+	 * Looks up a job by name without calling the service.
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param jobName				Name of the job, matched ignoring case
+	 * @return String				Job Id, or null if the job is not indexed
+	 */
+	String lookup(String clusterName, String jobName) {
+		return jobIdsByName.get(key(clusterName, jobName));
+	}
+
+	/**
+	 * @param jobId		Job Id to look up
+	 * @return Entry	Cluster and name of the job, or null if the job is not indexed
+	 */
+	Entry lookup(String jobId) {
+		return entriesById.get(jobId);
+	}
+
+	/**
+	 * Finds the id of a job by name. Indexed jobs are answered directly;
+	 * otherwise the jobs of the cluster are listed from newest to oldest,
+	 * indexing every page on the way, until the job is found or maxPages
+	 * pages have been read.
+	 * @param client				DataengClient used for listing the jobs
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param jobName				Name of the job, matched ignoring case
+	 * @param maxPages			Maximum number of listJobs pages to read
+	 * @return String				Job Id, or null if the job could not be found
+	 */
+	String findJobId(DataengClient client, String clusterName, String jobName, int maxPages) {
+		String jobId = lookup(clusterName, jobName);
+		if (jobId != null) {
+			return jobId;
+		}
+
+		ListJobsRequest listJobsRequest = new ListJobsRequest();
+		listJobsRequest.setClusterName(clusterName);
+		listJobsRequest.setOrder("NEWEST_TO_OLDEST");
+		for (int pages = 0; pages < maxPages; pages++) {
+			ListJobsResponse listJobsResponse = client.listJobs(listJobsRequest);
+			for (JobSummary job : listJobsResponse.getJobs()) {
+				/* Pages go from newest to oldest, so never replace an entry already seen. */
+				if (entriesById.putIfAbsent(job.getJobId(), new Entry(clusterName, job.getJobName())) == null) {
+					indexed(job.getJobId());
+				}
+				if (job.getJobName() != null) {
+					jobIdsByName.putIfAbsent(key(clusterName, job.getJobName()), job.getJobId());
+				}
+				if (jobName.equalsIgnoreCase(job.getJobName())) {
+					return job.getJobId();
+				}
+			}
+			String pageToken = listJobsResponse.getNextPageToken();
+			if (pageToken == null || pageToken.isEmpty()) {
+				break;
+			}
+			listJobsRequest.setPageToken(pageToken);
+		}
+		LOG.info("Unable to locate job " + jobName + " on cluster " + clusterName);
+		return null;
+	}
+
+	/**
+	 * @return int	Number of indexed jobs
+	 */
+	int size() {
+		return entriesById.size();
+	}
+
+	/* Every job indexed beyond the bound forgets the job indexed first. */
+	private void indexed(String jobId) {
+		indexOrder.add(jobId);
+		if (indexed.incrementAndGet() <= MAX_ENTRIES) {
+			return;
+		}
+		String oldest = indexOrder.poll();
+		if (oldest != null) {
+			indexed.decrementAndGet();
+			Entry entry = entriesById.remove(oldest);
+			if (entry != null && entry.jobName != null) {
+				jobIdsByName.remove(key(entry.clusterName, entry.jobName), oldest);
+			}
+		}
+	}
+
+	private static String key(String clusterName, String jobName) {
+		return clusterName + '\u0000' + jobName.toLowerCase(Locale.ROOT);
+	}
+
+	static final class Entry {
+
+		private final String clusterName;
+		private final String jobName;
+
+		Entry(String clusterName, String jobName) {
+			this.clusterName = clusterName;
+			this.jobName = jobName;
+		}
+
+		String getClusterName() {
+			return clusterName;
+		}
+
+		String getJobName() {
+			return jobName;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the status of many jobs with one paged listJobs call per cluster
+ * per tick, instead of one describeJob call per job. Outstanding job ids are
+ * grouped by the cluster they were submitted to and every tracked job gets a
+ * future that completes with its final status (COMPLETED, FAILED or
+ * TERMINATING). Every status change is traced with {@link Tracing}. A
+ * failed listJobs call is retried on the next tick; the pending jobs of the
+ * cluster only fail once Altus rejects the call with a code that is not
+ * worth retrying, or after {@value #MAX_CONSECUTIVE_FAILURES} failed ticks
+ * in a row.
+ */
+final class JobStatusTracker {
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobStatusTracker.class);
+
+	static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+	private static final JobStatusTracker SHARED = new JobStatusTracker(
+			Executors.newScheduledThreadPool(1, ClusterStatusPoller.daemonThreads("altus-job-tracker")),
+			Duration.ofSeconds(30));
+
+	private final ConcurrentMap<String, ClusterJobs> clusters = new ConcurrentHashMap<>();
+
+	/**
+	 * @param scheduler		Pool running the ticks, the listJobs calls run on the workflow executor
+	 * @param interval		Delay between two ticks
+	 */
+	JobStatusTracker(ScheduledExecutorService scheduler, Duration interval) {
+		scheduler.scheduleWithFixedDelay(this::tick, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return JobStatusTracker		Tracker shared by every integration in this JVM
+	 */
+	static JobStatusTracker shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Starts tracking a job. Tracking the same job twice returns the same future.
+	 * @param client				DataengClient used for listing the jobs of the cluster
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param jobId					Job Id to track
+	 * @return Future				Completes with the final status of the job
+	 */
+	CompletableFuture<String> track(DataengClient client, String clusterName, String jobId) {
+		AtomicReference<CompletableFuture<String>> future = new AtomicReference<>();
+		/* Registering under compute() keeps tick() from retiring the group concurrently. */
+		clusters.compute(clusterName, (name, existing) -> {
+			ClusterJobs jobs = existing != null ? existing : new ClusterJobs(client, name);
+			future.set(jobs.pending.computeIfAbsent(jobId, id -> {
+				jobs.seen.put(id, new Seen(null, System.nanoTime()));
+				return newJobFuture();
+			}));
+			return jobs;
+		});
+		return future.get();
+	}
+
+	/**
+	 * @return int	Number of jobs currently being tracked
+	 */
+	int trackedCount() {
+		int count = 0;
+		for (ClusterJobs group : clusters.values()) {
+			count += group.pending.size();
+		}
+		return count;
+	}
+
+	/* Jobs are tracked right after their submission, so tracking time approximates queue-to-completion. */
+	private static CompletableFuture<String> newJobFuture() {
+		long startNanos = System.nanoTime();
+		CompletableFuture<String> future = new CompletableFuture<>();
+		future.thenAccept(status -> {
+			if ("COMPLETED".equals(status)) {
+				ClientMetrics.shared().recordJobCompletion(System.nanoTime() - startNanos);
+			}
+		});
+		return future;
+	}
+
+	static boolean isFinal(String jobStatus) {
+		return "COMPLETED".equals(jobStatus)
+				|| "FAILED".equals(jobStatus)
+				|| "TERMINATING".equals(jobStatus);
+	}
+
+	private void tick() {
+		for (ClusterJobs group : clusters.values()) {
+			if (group.pending.isEmpty()) {
+				clusters.computeIfPresent(group.clusterName,
+						(name, existing) -> existing.pending.isEmpty() ? null : existing);
+			} else if (group.polling.compareAndSet(false, true)) {
+				WorkflowExecutors.shared().execute(group::poll);
+			}
+		}
+	}
+
+	private static final class ClusterJobs {
+
+		private final DataengClient client;
+		private final String clusterName;
+		private final ConcurrentMap<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+		private final ConcurrentMap<String, Seen> seen = new ConcurrentHashMap<>();
+		private final AtomicBoolean polling = new AtomicBoolean();
+		/* Only touched by poll(), which never runs twice at once for a cluster. */
+		private int consecutiveFailures;
+
+		ClusterJobs(DataengClient client, String clusterName) {
+			this.client = client;
+			this.clusterName = clusterName;
+		}
+
+		void poll() {
+			try {
+				ListJobsRequest request = new ListJobsRequest();
+				request.setClusterName(clusterName);
+				request.setOrder("NEWEST_TO_OLDEST");
+				int remaining = pending.size();
+				/* Stop paging as soon as every outstanding job has been seen. */
+				do {
+					ListJobsResponse response = client.listJobs(request);
+					for (JobSummary job : response.getJobs()) {
+						CompletableFuture<String> future = pending.get(job.getJobId());
+						if (future == null) {
+							continue;
+						}
+						remaining--;
+						traceTransition(job);
+						if (isFinal(job.getStatus())) {
+							pending.remove(job.getJobId());
+							seen.remove(job.getJobId());
+							future.complete(job.getStatus());
+						}
+					}
+					request.setPageToken(response.getNextPageToken());
+				} while (remaining > 0 && request.getPageToken() != null);
+				consecutiveFailures = 0;
+			} catch (RuntimeException e) {
+				consecutiveFailures++;
+				if (ResilientDataengClient.isRetryable(e) && consecutiveFailures < MAX_CONSECUTIVE_FAILURES) {
+					LOG.error("Unable to list jobs of cluster " + clusterName + ", retrying on the next tick ("
+							+ consecutiveFailures + "/" + MAX_CONSECUTIVE_FAILURES + ") " + e.getMessage());
+					return;
+				}
+				LOG.error("Unable to list jobs of cluster " + clusterName + " " + e.getMessage());
+				consecutiveFailures = 0;
+				for (Map.Entry<String, CompletableFuture<String>> entry : pending.entrySet()) {
+					pending.remove(entry.getKey());
+					seen.remove(entry.getKey());
+					entry.getValue().completeExceptionally(e);
+				}
+			} finally {
+				polling.set(false);
+			}
+		}
+
+		private void traceTransition(JobSummary job) {
+			Seen previous = seen.get(job.getJobId());
+			if (previous != null && !job.getStatus().equals(previous.status)) {
+				long now = System.nanoTime();
+				Tracing.jobStatus(clusterName, job.getJobId(), previous.status, job.getStatus(),
+						now - previous.sinceNanos);
+				seen.put(job.getJobId(), new Seen(job.getStatus(), now));
+			}
+		}
+	}
+
+	/* Last status seen for a job, null until the first poll, and since when. */
+	private static final class Seen {
+
+		private final String status;
+		private final long sinceNanos;
+
+		Seen(String status, long sinceNanos) {
+			this.status = status;
+			this.sinceNanos = sinceNanos;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the jobs that many producers submit to the same cluster and
+ * sends them as batched submitJobs calls. A batch is flushed as soon as it
+ * holds maxBatchSize jobs, or when the oldest job in it has waited for the
+ * linger time. A job queued while no batch is in flight is sent at once, so
+ * a lone job never waits for the linger time. Every producer gets a future
+ * that completes with the id of its own job. Jobs are matched to the
+ * response by name, or by position for jobs without a name; a job missing
+ * from the response fails alone, and may have been accepted anyway.
+ *
+ * Queues are shared per client and cluster, and dropped once they have had
+ * nothing to send for the linger time. A producer still holding a dropped
+ * queue can keep using it, its jobs are only no longer batched with the
+ * jobs of the next queue of the cluster.
+ */
+final class JobSubmissionQueue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(JobSubmissionQueue.class);
+
+	private static final ScheduledExecutorService SCHEDULER =
+			Executors.newScheduledThreadPool(2, ClusterStatusPoller.daemonThreads("altus-job-submit"));
+
+	private static final ConcurrentMap<Key, JobSubmissionQueue> QUEUES = new ConcurrentHashMap<>();
+
+	private final DataengClient client;
+	private final String clusterName;
+	private final int maxBatchSize;
+	private final long lingerMillis;
+	private final ScheduledExecutorService scheduler;
+	private List<PendingJob> batch = new ArrayList<>();
+	private int inFlight;
+	private long idleSinceNanos = System.nanoTime();
+
+	/**
+	 * @param client					Client used to communicate to backend services
+	 * @param clusterName			Cluster the jobs are submitted to
+	 * @param maxBatchSize		Maximum number of jobs sent in one submitJobs call
+	 * @param linger					Longest time a job waits for other jobs to join its batch
+	 * @param scheduler				Pool used to time the linger, the batches are sent on the workflow executor
+	 */
+	JobSubmissionQueue(DataengClient client, String clusterName, int maxBatchSize, Duration linger,
+			ScheduledExecutorService scheduler) {
+		this.client = client;
+		this.clusterName = clusterName;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerMillis = linger.toMillis();
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Returns the queue shared by every producer submitting to the cluster
+	 * through the same client. The batch size and linger time come from the
+	 * [jobs] section of SampleResources.ini.
+	 * @param client								Client used to communicate to backend services
+	 * @param clusterName						Cluster the jobs are submitted to
+	 * @return JobSubmissionQueue		Queue of the client and cluster
+	 */
+	static JobSubmissionQueue forCluster(DataengClient client, String clusterName) {
+		return QUEUES.computeIfAbsent(new Key(client, clusterName), key -> {
+			SampleConfig config = SampleConfig.current();
+			JobSubmissionQueue queue = new JobSubmissionQueue(client, clusterName, config.getSubmitBatchSize(),
+					config.getSubmitLinger(), SCHEDULER);
+			/* A queue nothing is ever submitted to is dropped too. */
+			SCHEDULER.schedule(queue::removeIfIdle, queue.lingerMillis, TimeUnit.MILLISECONDS);
+			return queue;
+		});
+	}
+
+	/**
+	 * Queues a job for submission.
+	 * @param job			Job to submit
+	 * @return Future	Completes with the id of the job once its batch was submitted
+	 */
+	CompletableFuture<String> submit(JobRequest job) {
+		PendingJob pending = new PendingJob(job);
+		List<PendingJob> full = null;
+		synchronized (this) {
+			batch.add(pending);
+			if (batch.size() >= maxBatchSize || inFlight == 0) {
+				full = take();
+			} else if (batch.size() == 1) {
+				List<PendingJob> lingering = batch;
+				scheduler.schedule(() -> WorkflowExecutors.shared().execute(() -> flush(lingering)),
+						lingerMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full != null) {
+			List<PendingJob> toSend = full;
+			WorkflowExecutors.shared().execute(() -> send(toSend));
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Sends the jobs queued so far without waiting for the linger time.
+	 */
+	void flush() {
+		List<PendingJob> toSend;
+		synchronized (this) {
+			if (batch.isEmpty()) {
+				return;
+			}
+			toSend = take();
+		}
+		send(toSend);
+	}
+
+	/* Only flushes the batch the linger timer was started for, if it is still open. */
+	private void flush(List<PendingJob> lingering) {
+		synchronized (this) {
+			if (batch != lingering) {
+				return;
+			}
+			take();
+		}
+		send(lingering);
+	}
+
+	/* Called with the lock held, the batch taken must then be sent. */
+	private List<PendingJob> take() {
+		List<PendingJob> taken = batch;
+		batch = new ArrayList<>();
+		inFlight++;
+		return taken;
+	}
+
+	/* Checked one linger time after the last batch was sent, any later batch schedules its own check. */
+	private void removeIfIdle() {
+		synchronized (this) {
+			if (inFlight > 0 || !batch.isEmpty()
+					|| TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSinceNanos) < lingerMillis) {
+				return;
+			}
+		}
+		QUEUES.remove(new Key(client, clusterName), this);
+	}
+
+	private void send(List<PendingJob> toSend) {
+		List<JobRequest> jobs = new ArrayList<>(toSend.size());
+		for (PendingJob pending : toSend) {
+			jobs.add(pending.job);
+		}
+		SubmitJobsRequest submitJobsRequest = new SubmitJobsRequest();
+		submitJobsRequest.setClusterName(clusterName);
+		submitJobsRequest.setJobs(jobs);
+		try {
+			SubmitJobsResponse response = client.submitJobs(submitJobsRequest);
+			complete(toSend, response.getJobs() == null ? Collections.<Job>emptyList() : response.getJobs());
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Submitted " + toSend.size() + " jobs to cluster " + clusterName);
+			}
+		} catch (RuntimeException e) {
+			LOG.error("Unable to submit " + toSend.size() + " jobs to cluster " + clusterName
+					+ " " + e.getMessage());
+			for (PendingJob pending : toSend) {
+				pending.future.completeExceptionally(e);
+			}
+		} finally {
+			synchronized (this) {
+				inFlight--;
+				idleSinceNanos = System.nanoTime();
+			}
+			scheduler.schedule(this::removeIfIdle, lingerMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	Jobs are returned in the order they were submitted, but a job is only
+	matched by position when it has no name and the response has one job per
+	request.
+	*/
+	private void complete(List<PendingJob> sent, List<Job> returned) {
+		Map<String, Deque<Job>> byName = new HashMap<>();
+		for (Job job : returned) {
+			if (job.getName() != null) {
+				byName.computeIfAbsent(job.getName(), name -> new ArrayDeque<>()).addLast(job);
+			}
+		}
+		int unmatched = 0;
+		for (int i = 0; i < sent.size(); i++) {
+			PendingJob pending = sent.get(i);
+			String name = pending.job.getName();
+			Job job = null;
+			if (name != null) {
+				Deque<Job> named = byName.get(name);
+				job = named == null ? null : named.pollFirst();
+			} else if (returned.size() == sent.size()) {
+				job = returned.get(i);
+			}
+			if (job == null || job.getJobId() == null) {
+				unmatched++;
+				pending.future.completeExceptionally(new IllegalStateException("Altus returned no id for job "
+						+ name + " submitted to cluster " + clusterName + ", it may have been accepted anyway"));
+				continue;
+			}
+			JobIndex.shared().record(clusterName, name, job.getJobId());
+			pending.future.complete(job.getJobId());
+		}
+		if (unmatched > 0) {
+			LOG.error("Altus returned " + returned.size() + " jobs for the " + sent.size() + " submitted to cluster "
+					+ clusterName + ", " + unmatched + " could not be matched");
+		}
+	}
+
+	/* Clients are compared by identity, since each one may reach a different account. */
+	private static final class Key {
+
+		private final DataengClient client;
+		private final String clusterName;
+
+		Key(DataengClient client, String clusterName) {
+			this.client = client;
+			this.clusterName = clusterName;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return client == other.client && clusterName.equals(other.clusterName);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(client) + clusterName.hashCode();
+		}
+	}
+
+	private static final class PendingJob {
+
+		private final JobRequest job;
+		private final CompletableFuture<String> future = new CompletableFuture<>();
+
+		PendingJob(JobRequest job) {
+			this.job = job;
+		}
+	}
+}
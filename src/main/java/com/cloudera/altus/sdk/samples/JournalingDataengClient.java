@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+/**
+ * Records in the {@link StateJournal} the clusters created and the jobs
+ * submitted through the client, along with every status the responses
+ * report for them and the cluster deletions.
+ */
+final class JournalingDataengClient extends ForwardingDataengClient {
+
+	private final StateJournal journal;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param journal			Journal the clusters and jobs are recorded in
+	 */
+	JournalingDataengClient(DataengClient delegate, StateJournal journal) {
+		super(delegate);
+		this.journal = journal;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		CreateAWSClusterResponse response = super.createAWSCluster(request);
+		journal.clusterCreated(response.getCluster().getClusterName(), request.getServiceType(),
+				response.getCluster().getStatus());
+		return response;
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		DescribeClusterResponse response = super.describeCluster(request);
+		journal.clusterStatus(response.getCluster().getClusterName(), response.getCluster().getStatus());
+		return response;
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		DeleteClusterResponse response = super.deleteCluster(request);
+		journal.clusterDeleted(request.getClusterName());
+		return response;
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		ListClustersResponse response = super.listClusters(request);
+		for (ClusterSummary cluster : response.getClusters()) {
+			journal.clusterStatus(cluster.getClusterName(), cluster.getStatus());
+		}
+		return response;
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		SubmitJobsResponse response = super.submitJobs(request);
+		for (Job job : response.getJobs()) {
+			journal.jobSubmitted(job.getJobId(), request.getClusterName(), job.getName(), job.getStatus());
+		}
+		return response;
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		DescribeJobResponse response = super.describeJob(request);
+		journal.jobStatus(response.getJob().getJobId(), response.getJob().getStatus());
+		return response;
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		ListJobsResponse response = super.listJobs(request);
+		for (JobSummary job : response.getJobs()) {
+			journal.jobListed(job.getJobId(), job.getClusterName(), job.getJobName(), job.getStatus());
+		}
+		return response;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with fixed bucket bounds, cheap enough
+ * to record every client call.
+ */
+class LatencyHistogram implements LatencyMXBean {
+
+	private final long[] boundsMillis;
+	/* One more bucket than bounds, for the durations above the last bound. */
+	private final AtomicLongArray buckets;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param boundsMillis		Upper bounds of the buckets, in increasing order
+	 */
+	LatencyHistogram(long... boundsMillis) {
+		this.boundsMillis = boundsMillis.clone();
+		this.buckets = new AtomicLongArray(boundsMillis.length + 1);
+	}
+
+	void record(long nanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int bucket = 0;
+		while (bucket < boundsMillis.length && millis > boundsMillis[bucket]) {
+			bucket++;
+		}
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		sumNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long calls = count.sum();
+		return calls == 0 ? 0 : sumNanos.sum() / (double) calls / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public long getP50Millis() {
+		return percentileMillis(0.5);
+	}
+
+	@Override
+	public long getP99Millis() {
+		return percentileMillis(0.99);
+	}
+
+	@Override
+	public long getMaxMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+	}
+
+	private long percentileMillis(double quantile) {
+		long total = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			total += buckets.get(i);
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < boundsMillis.length; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank && seen > 0) {
+				return boundsMillis[i];
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Writes the histogram in the Prometheus text format, with cumulative buckets in seconds.
+	 * @param out						Destination of the samples
+	 * @param name					Metric name, without the _bucket, _sum and _count suffixes
+	 * @param labels				Labels of the samples, such as operation="describeCluster", or empty
+	 * @throws IOException	Occurs when the destination cannot be written
+	 */
+	void writePrometheus(Appendable out, String name, String labels) throws IOException {
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for (int i = 0; i < boundsMillis.length; i++) {
+			cumulative += buckets.get(i);
+			out.append(name).append("_bucket{").append(prefix).append("le=\"")
+					.append(Double.toString(boundsMillis[i] / 1000.0)).append("\"} ")
+					.append(Long.toString(cumulative)).append('\n');
+		}
+		cumulative += buckets.get(boundsMillis.length);
+		out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ")
+				.append(Long.toString(cumulative)).append('\n');
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(braces).append(' ')
+				.append(Double.toString(sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1))).append('\n');
+		out.append(name).append("_count").append(braces).append(' ')
+				.append(Long.toString(cumulative)).append('\n');
+	}
+}
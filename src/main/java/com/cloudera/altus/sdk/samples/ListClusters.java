@@ -17,44 +17,89 @@
 package com.cloudera.altus.sdk.samples;
 
 import com.cloudera.altus.AltusServiceException;
-import com.cloudera.altus.client.AltusClientConfiguration;
-import com.cloudera.altus.client.AltusClientConfigurationBuilder;
 import com.cloudera.altus.dataeng.api.DataengClient;
-import com.cloudera.altus.dataeng.api.DataengClientBuilder;
-import com.cloudera.altus.dataeng.model.ListClustersRequest;
-import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * Lists the clusters of the account. Pages are followed lazily and each
+ * cluster is printed on its own line as soon as its page arrives.
+ * Optional arguments narrow the listing:
+ * <pre>
+ *   --status CREATED    only clusters in the given status
+ *   --prefix Sample-    only clusters whose name starts with the prefix
+ *   --limit 10          stop after printing this many clusters
+ * </pre>
+ */
 public class ListClusters {
 
 	private static final Logger LOG =
 			LoggerFactory.getLogger(ListClusters.class);
 
+	/* Number of clusters requested per listClusters call. */
+	private static final int PAGE_SIZE = 100;
+
 	public static void main(String[] args) {
-		list();
+		String status = null;
+		String prefix = null;
+		long limit = Long.MAX_VALUE;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if ("--status".equals(args[i])) {
+				status = args[i + 1];
+			} else if ("--prefix".equals(args[i])) {
+				prefix = args[i + 1];
+			} else if ("--limit".equals(args[i])) {
+				limit = Long.parseLong(args[i + 1]);
+			} else {
+				LOG.error("Unknown option " + args[i]);
+				return;
+			}
+		}
+		list(status, prefix, limit);
 	}
 
-	private static void list() {
-		try {
-			AltusClientConfiguration altusClientConfiguration = AltusClientConfigurationBuilder.defaultBuilder()
-					.withClientApplicationName("TestPartner")
-					.build();
-
-			/*
-			If no credentials are provided, it uses the default credentials which is to look at the
-			credentials file in the ~/.altus directory
-			*/
-			DataengClientBuilder dataEngClientBuilder =
-					DataengClientBuilder.defaultBuilder().withClientConfiguration(altusClientConfiguration);
-			DataengClient client = dataEngClientBuilder.build();
-			ListClustersRequest listClusterRequest = new ListClustersRequest();
-			ListClustersResponse listClusterResp = client.listClusters(listClusterRequest);
-
-			LOG.info("Found the following number of clusters: " + listClusterResp.getClusters().size());
-			LOG.info("List of clusters: " + listClusterResp.toString());
+	/**
+	 * Streams the clusters of the account, following page tokens lazily.
+	 * Filters are applied as clusters arrive, so a short-circuiting terminal
+	 * operation such as findFirst() stops fetching further pages.
+	 * The stream should be closed to stop the background page prefetch.
+	 * @param client      Client used to communicate to backend services
+	 * @param status      Cluster status to keep, or null for any status
+	 * @param namePrefix  Cluster name prefix to keep, or null for any name
+	 * @return Stream     Clusters matching the filters
+	 */
+	static Stream<ClusterSummary> stream(DataengClient client, String status, String namePrefix) {
+		Stream<ClusterSummary> clusters = ClusterPager.stream(client, PAGE_SIZE);
+		if (status != null) {
+			clusters = clusters.filter(cluster -> status.equals(cluster.getStatus()));
+		}
+		if (namePrefix != null) {
+			clusters = clusters.filter(cluster -> cluster.getClusterName() != null
+					&& cluster.getClusterName().startsWith(namePrefix));
+		}
+		return clusters;
+	}
+
+	private static void list(String status, String prefix, long limit) {
+		/*
+		If no credentials are provided, it uses the default credentials which is to look at the
+		credentials file in the ~/.altus directory
+		*/
+		DataengClient client = DataengClientRegistry.shared().get(SampleConfig.current());
+
+		long[] count = new long[1];
+		try (Stream<ClusterSummary> clusters = stream(client, status, prefix)) {
+			clusters.limit(limit).forEach(cluster -> {
+				count[0]++;
+				System.out.println(cluster.getClusterName() + "\t" + cluster.getStatus()
+						+ "\t" + cluster.getServiceType() + "\t" + cluster.getCreationDate());
+			});
+			LOG.info("Found the following number of clusters: " + count[0]);
 		} catch (AltusServiceException ase) {
 			LOG.error("Unable to list clusters " + ase.getMessage());
 		}
@@ -20,13 +20,9 @@ import com.cloudera.altus.AltusServiceException;
 import com.cloudera.altus.dataeng.api.DataengClient;
 import com.cloudera.altus.dataeng.model.JobRequest;
 import com.cloudera.altus.dataeng.model.MR2JobRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
 
-import java.io.IOException;
 import java.util.ArrayList;
 
-import org.ini4j.Ini;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +37,13 @@ public class MapreduceIntegration extends BaseIntegration {
 
 		try {
 			DataengClient client = builder.createClient();
+			int workflows = workflowCount(args);
+			WorkflowMode mode = WorkflowMode.fromArgs(args);
+			if (workflows > 0 || mode != WorkflowMode.SERIAL) {
+				builder.runWorkflows(client, clusterName, "MR2", Math.max(workflows, 1), mode);
+				return;
+			}
+
 			String clusterCreationStatus = builder.createAWSCluster(client, clusterName, "MR2");
 
 			if ("CREATED".equals(clusterCreationStatus)) {
@@ -55,10 +58,7 @@ public class MapreduceIntegration extends BaseIntegration {
 	}
 
 	@Override
-	void createJob(DataengClient client, String clusterName) {
-		SubmitJobsRequest submitJobsRequest = new SubmitJobsRequest();
-		submitJobsRequest.setClusterName(clusterName);
-		ArrayList<JobRequest> jobs = new ArrayList<>();
+	JobRequest buildJobPrototype(SampleConfig config) {
 		JobRequest job = new JobRequest();
 		MR2JobRequest mr2Job = new MR2JobRequest();
 		ArrayList<String> jars = new ArrayList<String>();
@@ -71,21 +71,17 @@ public class MapreduceIntegration extends BaseIntegration {
 		ArrayList<String> args = new ArrayList<String>();
 		args.add("s3a://cloudera-altus-data-engineering-samples/mr2/wordcount/input/poetry/");
 
-		try {
-			Ini.Section ini = this.getIniFile().get("jobs");
-			args.add(ini.get("outputLocation"));
-			mr2Job.setArguments(args);
-			/* This is the name that will appear in the Altus Job console. */
-			job.setName("sample-Mapreduce-job");
-			job.setMr2Job(mr2Job);
-			jobs.add(job);
-			submitJobsRequest.setJobs(jobs);
-			SubmitJobsResponse response = client.submitJobs(submitJobsRequest);
-			pollJobStatus(client, response.getJobs().get(0).getJobId());
-		} catch (IOException ioe) {
-			LOG.error("Unable to read SampleResources.ini file " + ioe.getMessage());
-			throw new RuntimeException(
-					"Unable to load SampleResources.ini file "+ ioe.getMessage());
-		}
+		args.add(config.getOutputLocation());
+		mr2Job.setArguments(args);
+		/* This is the name that will appear in the Altus Job console. */
+		job.setName("sample-Mapreduce-job");
+		job.setMr2Job(mr2Job);
+		return job;
+	}
+
+	@Override
+	void createJob(DataengClient client, String clusterName) {
+		String jobId = submitJob(client, clusterName, newJobRequest());
+		pollJobStatus(client, clusterName, jobId);
 	}
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.util.Map;
+
+/**
+ * JMX view of the calls made to one DataengClient operation.
+ */
+public interface OperationMetricsMXBean extends LatencyMXBean {
+
+	int getInFlight();
+
+	/**
+	 * @return Map		Number of failed calls per http code, 0 for calls that got no response
+	 */
+	Map<Integer, Long> getErrorsByHttpCode();
+}
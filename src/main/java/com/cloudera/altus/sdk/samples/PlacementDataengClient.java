@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.ClusterSummary;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads new clusters across several Altus environments, each reached
+ * through the client of its own credentials profile, so that the fleet is
+ * not bound by the quotas and the provisioning throughput of a single
+ * environment. Every createAWSCluster goes to the least-loaded healthy
+ * environment: the one holding the smallest share of its cluster limit,
+ * counting the clusters still being created, with ties going to the
+ * environment that provisioned its recent clusters fastest. An environment
+ * where cluster creations failed a number of times in a row, by a failed
+ * call or by a cluster ending up FAILED, is skipped for a while.
+ *
+ * Every other call about a cluster goes to the environment the cluster was
+ * placed in, or was found in when the environments were first listed, so
+ * the integrations keep using a single client. describeJob goes to the
+ * environment of the cluster the job was submitted to. listClusters, and
+ * calls about clusters found in no environment, go to the first environment.
+ */
+final class PlacementDataengClient extends ForwardingDataengClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PlacementDataengClient.class);
+
+	private static final int PAGE_SIZE = 100;
+	/* Weight of the latest provisioning time in the moving average. */
+	private static final double LATENCY_WEIGHT = 0.3;
+
+	private static volatile PlacementDataengClient shared;
+
+	private final List<Environment> environments;
+	private final int maxClusters;
+	private final int failureThreshold;
+	private final long unhealthyNanos;
+	private final ConcurrentMap<String, Environment> clusterEnvironments = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Environment> jobEnvironments = new ConcurrentHashMap<>();
+
+	/**
+	 * @param environments				Environments to place clusters in, the first one takes the calls about unknown clusters
+	 * @param maxClusters					Clusters an environment may hold before no new cluster is placed in it
+	 * @param failureThreshold		Consecutive failed creations after which an environment is skipped
+	 * @param unhealthyDuration		Time an environment is skipped for
+	 */
+	PlacementDataengClient(List<Environment> environments, int maxClusters, int failureThreshold,
+			Duration unhealthyDuration) {
+		super(environments.get(0).client);
+		this.environments = Collections.unmodifiableList(new ArrayList<>(environments));
+		this.maxClusters = maxClusters;
+		this.failureThreshold = failureThreshold;
+		this.unhealthyNanos = unhealthyDuration.toNanos();
+	}
+
+	/**
+	 * Returns the client placing clusters across the environments of the
+	 * [placement] section of SampleResources.ini, built on first use with the
+	 * clusters already live in each environment.
+	 * @return PlacementDataengClient		Shared client, or null when no environments are configured
+	 */
+	static PlacementDataengClient shared() {
+		PlacementDataengClient client = shared;
+		if (client == null) {
+			synchronized (PlacementDataengClient.class) {
+				client = shared;
+				SampleConfig config = SampleConfig.current();
+				if (client == null && !config.getPlacementEnvironments().isEmpty()) {
+					List<Environment> environments = new ArrayList<>();
+					for (Map.Entry<String, String> entry : config.getPlacementEnvironments().entrySet()) {
+						String profile = entry.getValue() == null ? config.getProfile() : entry.getValue();
+						DataengClient environmentClient = DataengClientRegistry.shared().get(profile,
+								config.getClientApplicationName(), config.getEndpoint(), config.getClientSettings());
+						Environment environment = new Environment(entry.getKey(), environmentClient);
+						ClientMetrics.register(environment, "type=Environment,name=" + ObjectName.quote(entry.getKey()));
+						environments.add(environment);
+					}
+					client = new PlacementDataengClient(environments, config.getMaxClustersPerEnvironment(),
+							config.getPlacementFailureThreshold(), config.getPlacementUnhealthyDuration());
+					client.discover();
+					ClientMetrics.shared().addSource(client::writePrometheus);
+					shared = client;
+				}
+			}
+		}
+		return client;
+	}
+
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		String clusterName = request.getClusterName();
+		Environment environment = place(clusterName);
+		request.setEnvironmentName(environment.name);
+		CreateAWSClusterResponse response;
+		try {
+			response = environment.client.createAWSCluster(request);
+		} catch (RuntimeException e) {
+			environment.creating.remove(clusterName);
+			environment.failed(failureThreshold, unhealthyNanos);
+			throw e;
+		}
+		clusterEnvironments.put(clusterName, environment);
+		if (response.getCluster() != null) {
+			observe(environment, clusterName, response.getCluster().getStatus());
+		}
+		return response;
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		String clusterName = request.getClusterName();
+		Environment environment = environmentOf(clusterName);
+		DescribeClusterResponse response;
+		try {
+			response = environment.client.describeCluster(request);
+		} catch (AltusServiceException ase) {
+			if (ase.getHttpCode() == 404) {
+				forget(clusterName);
+			}
+			throw ase;
+		}
+		observe(environment, clusterName, response.getCluster().getStatus());
+		return response;
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		String clusterName = request.getClusterName();
+		DeleteClusterResponse response = environmentOf(clusterName).client.deleteCluster(request);
+		forget(clusterName);
+		return response;
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		Environment environment = environmentOf(request.getClusterName());
+		SubmitJobsResponse response = environment.client.submitJobs(request);
+		for (Job job : response.getJobs()) {
+			jobEnvironments.put(job.getJobId(), environment);
+		}
+		return response;
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		Environment environment = jobEnvironments.get(request.getJobId());
+		return (environment == null ? delegate() : environment.client).describeJob(request);
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		return environmentOf(request.getClusterName()).client.listJobs(request);
+	}
+
+	private void writePrometheus(StringBuilder out) {
+		out.append("# HELP altus_environment_clusters Clusters of each placement environment.\n")
+				.append("# TYPE altus_environment_clusters gauge\n");
+		for (Environment environment : environments) {
+			out.append("altus_environment_clusters{environment=\"").append(environment.name)
+					.append("\",state=\"live\"} ").append(environment.getLiveClusters()).append('\n')
+					.append("altus_environment_clusters{environment=\"").append(environment.name)
+					.append("\",state=\"creating\"} ").append(environment.getCreatingClusters()).append('\n');
+		}
+		out.append("# HELP altus_environment_healthy Whether new clusters are placed in the environment.\n")
+				.append("# TYPE altus_environment_healthy gauge\n");
+		for (Environment environment : environments) {
+			out.append("altus_environment_healthy{environment=\"").append(environment.name).append("\"} ")
+					.append(environment.isHealthy() ? 1 : 0).append('\n');
+		}
+	}
+
+	/*
+	Picks the least-loaded healthy environment with room and counts the cluster
+	as being created there, so that concurrent creations see each other. When
+	every environment is unhealthy or full, the least-loaded one is used anyway.
+	*/
+	private synchronized Environment place(String clusterName) {
+		long now = System.nanoTime();
+		Environment best = null;
+		for (Environment environment : environments) {
+			if (environment.isHealthy(now) && environment.size() < maxClusters
+					&& (best == null || environment.isLessLoaded(best))) {
+				best = environment;
+			}
+		}
+		if (best == null) {
+			for (Environment environment : environments) {
+				if (best == null || environment.isLessLoaded(best)) {
+					best = environment;
+				}
+			}
+			LOG.info("No healthy environment has room for " + clusterName + ", placing it in " + best.name
+					+ " with " + best.size() + " clusters");
+		}
+		best.creating.put(clusterName, now);
+		best.placed.increment();
+		return best;
+	}
+
+	private Environment environmentOf(String clusterName) {
+		Environment environment = clusterName == null ? null : clusterEnvironments.get(clusterName);
+		return environment == null ? environments.get(0) : environment;
+	}
+
+	/* Counts a status change of a cluster placed in, or found in, the environment. */
+	private void observe(Environment environment, String clusterName, String status) {
+		if ("CREATED".equals(status)) {
+			Long startNanos = environment.creating.remove(clusterName);
+			environment.live.add(clusterName);
+			if (startNanos != null) {
+				environment.succeeded(startNanos == Environment.UNKNOWN_START ? -1 : System.nanoTime() - startNanos);
+			}
+		} else if ("FAILED".equals(status)) {
+			environment.live.remove(clusterName);
+			if (environment.creating.remove(clusterName) != null) {
+				environment.failed(failureThreshold, unhealthyNanos);
+			}
+		} else if ("TERMINATING".equals(status) || "TERMINATED".equals(status)) {
+			environment.creating.remove(clusterName);
+			environment.live.remove(clusterName);
+		}
+	}
+
+	private void forget(String clusterName) {
+		Environment environment = clusterEnvironments.get(clusterName);
+		if (environment != null) {
+			environment.creating.remove(clusterName);
+			environment.live.remove(clusterName);
+		}
+	}
+
+	/*
+	Lists the clusters of every account once, so that the load of each
+	environment includes the clusters created before this process started,
+	and calls about those clusters reach the right environment.
+	*/
+	private void discover() {
+		Map<DataengClient, List<Environment>> accounts = new IdentityHashMap<>();
+		for (Environment environment : environments) {
+			accounts.computeIfAbsent(environment.client, client -> new ArrayList<>()).add(environment);
+		}
+		for (Map.Entry<DataengClient, List<Environment>> account : accounts.entrySet()) {
+			try (Stream<ClusterSummary> clusters = ClusterPager.stream(account.getKey(), PAGE_SIZE)) {
+				clusters.forEach(cluster -> {
+					for (Environment environment : account.getValue()) {
+						if (environment.name.equals(cluster.getEnvironmentName())
+								&& !"TERMINATED".equals(cluster.getStatus())) {
+							clusterEnvironments.put(cluster.getClusterName(), environment);
+							if ("CREATING".equals(cluster.getStatus())) {
+								environment.creating.put(cluster.getClusterName(), Environment.UNKNOWN_START);
+							} else {
+								observe(environment, cluster.getClusterName(), cluster.getStatus());
+							}
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				LOG.error("Unable to list the clusters of environments " + account.getValue() + " " + e.getMessage());
+			}
+		}
+		for (Environment environment : environments) {
+			LOG.info("Environment " + environment.name + " holds " + environment.live.size() + " clusters and is creating "
+					+ environment.creating.size());
+		}
+	}
+
+	/**
+	 * Load and health of one environment.
+	 */
+	static final class Environment implements EnvironmentMXBean {
+
+		/* Start of the creation of a cluster found CREATING, which is not timed. */
+		private static final long UNKNOWN_START = Long.MIN_VALUE;
+
+		private final String name;
+		private final DataengClient client;
+		private final Set<String> live = ConcurrentHashMap.newKeySet();
+		private final ConcurrentMap<String, Long> creating = new ConcurrentHashMap<>();
+		private final LongAdder placed = new LongAdder();
+		private double provisioningNanos = -1;
+		private int consecutiveFailures;
+		private long unhealthyUntilNanos;
+		private boolean unhealthy;
+
+		/**
+		 * @param name			Name of the Altus environment
+		 * @param client		Client of the account of the environment
+		 */
+		Environment(String name, DataengClient client) {
+			this.name = name;
+			this.client = client;
+		}
+
+		@Override
+		public int getLiveClusters() {
+			return live.size();
+		}
+
+		@Override
+		public int getCreatingClusters() {
+			return creating.size();
+		}
+
+		@Override
+		public long getPlacedClusters() {
+			return placed.sum();
+		}
+
+		/**
+		 * @return double		Moving average of the time from the create request to CREATED, 0 until a cluster was timed
+		 */
+		@Override
+		public synchronized double getProvisioningSeconds() {
+			return provisioningNanos < 0 ? 0 : provisioningNanos / 1e9;
+		}
+
+		@Override
+		public boolean isHealthy() {
+			return isHealthy(System.nanoTime());
+		}
+
+		synchronized boolean isHealthy(long nowNanos) {
+			return !unhealthy || nowNanos - unhealthyUntilNanos >= 0;
+		}
+
+		int size() {
+			return live.size() + creating.size();
+		}
+
+		/* Fewer clusters first, then faster recent provisioning, an environment never timed counting as fastest. */
+		boolean isLessLoaded(Environment other) {
+			if (size() != other.size()) {
+				return size() < other.size();
+			}
+			return getProvisioningSeconds() < other.getProvisioningSeconds();
+		}
+
+		/**
+		 * @param provisioningNanos		Time the cluster took to reach CREATED, or -1 when it was not timed
+		 */
+		synchronized void succeeded(long provisioningNanos) {
+			consecutiveFailures = 0;
+			unhealthy = false;
+			if (provisioningNanos >= 0) {
+				this.provisioningNanos = this.provisioningNanos < 0 ? provisioningNanos
+						: LATENCY_WEIGHT * provisioningNanos + (1 - LATENCY_WEIGHT) * this.provisioningNanos;
+			}
+		}
+
+		synchronized void failed(int failureThreshold, long unhealthyNanos) {
+			if (++consecutiveFailures >= failureThreshold) {
+				unhealthy = true;
+				unhealthyUntilNanos = System.nanoTime() + unhealthyNanos;
+				consecutiveFailures = 0;
+				LOG.error("Skipping environment " + name + " for " + unhealthyNanos / 1000000000L + "s after "
+						+ failureThreshold + " failed cluster creations");
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+/**
+ * JMX view of the request rate shared by every DataengClient.
+ */
+public interface RateLimiterMXBean {
+
+	double getRatePerSecond();
+
+	double getMinRatePerSecond();
+
+	double getMaxRatePerSecond();
+
+	long getThrottledResponses();
+
+	long getDelayedCalls();
+
+	long getRetries();
+}
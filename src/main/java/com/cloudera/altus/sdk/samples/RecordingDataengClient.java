@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.util.function.Supplier;
+
+/**
+ * Writes every call, with its request, its response or error and its
+ * latency, to an {@link ApiTrace}. It sits right in front of the client
+ * built by the SDK, so every attempt of a retried call is recorded and the
+ * latencies are those of Altus itself.
+ */
+final class RecordingDataengClient extends ForwardingDataengClient {
+
+	private final ApiTrace.Writer writer;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param writer			Trace the calls are written to
+	 */
+	RecordingDataengClient(DataengClient delegate, ApiTrace.Writer writer) {
+		super(delegate);
+		this.writer = writer;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		return record("createAWSCluster", request.getClusterName(), request, () -> super.createAWSCluster(request));
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		return record("describeCluster", request.getClusterName(), request, () -> super.describeCluster(request));
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		return record("deleteCluster", request.getClusterName(), request, () -> super.deleteCluster(request));
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		return record("listClusters", null, request, () -> super.listClusters(request));
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		return record("submitJobs", request.getClusterName(), request, () -> super.submitJobs(request));
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		return record("describeJob", request.getJobId(), request, () -> super.describeJob(request));
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		return record("listJobs", request.getClusterName(), request, () -> super.listJobs(request));
+	}
+
+	private <T> T record(String operation, String subject, Object request, Supplier<T> call) {
+		long startNanos = System.nanoTime();
+		T response;
+		try {
+			response = call.get();
+		} catch (RuntimeException e) {
+			writer.failure(operation, subject, startNanos, request, e);
+			throw e;
+		}
+		writer.response(operation, subject, startNanos, request, response);
+		return response;
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusClientException;
+import com.cloudera.altus.client.AltusClientConfigurationBuilder;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.Cluster;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the calls recorded in an {@link ApiTrace} instead of calling Altus,
+ * so that a change to the polling or submission code can be measured
+ * offline, for its number of calls and its end-to-end latency, against the
+ * traffic of a real run. Every call waits for the latency of the recorded
+ * call it is answered with, divided by the replay speed.
+ *
+ * Calls that change state are answered in the order they were recorded: the
+ * n-th createAWSCluster or deleteCluster of a cluster gets the n-th recorded
+ * answer for that cluster, and submitJobs gets the next recorded job ids of
+ * the cluster, however the jobs are batched. Calls that read state are
+ * answered with the state recorded at the same point of the recorded run: a
+ * cluster is described as it was the same time after its createAWSCluster
+ * call, a job as it was the same time after its submission, and the listings
+ * as they were the same time after the start of the replay. A different
+ * polling schedule therefore sees the statuses change when they changed in
+ * the recorded run, however many calls it makes. Throttling, 5xx answers and
+ * client errors of the reads are replayed once each, when the replay reaches
+ * the time they happened.
+ *
+ * A call the trace has no answer for fails with an AltusClientException and
+ * is counted as a miss in the {@link #report()} logged when the JVM exits.
+ */
+final class ReplayingDataengClient extends DataengClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ReplayingDataengClient.class);
+
+	private static volatile ReplayingDataengClient shared;
+
+	private final int speed;
+	private final long startNanos = System.nanoTime();
+	private final Map<String, Deque<Answer>> mutations = new HashMap<>();
+	private final Map<String, Deque<Answer>> submissions = new HashMap<>();
+	private final Map<String, Deque<Answer>> transientFailures = new HashMap<>();
+	private final Map<String, Timeline> clusters = new HashMap<>();
+	private final Map<String, Timeline> jobs = new HashMap<>();
+	private final Map<String, Timeline> listings = new HashMap<>();
+	private final Map<String, Anchor> clusterAnchors = new HashMap<>();
+	private final Map<String, Anchor> jobAnchors = new HashMap<>();
+	private final Map<String, Integer> calls = new TreeMap<>();
+	private int misses;
+
+	/**
+	 * @param records		Recorded calls, ordered by the start of the call
+	 * @param speed			How many times faster than recorded the calls are replayed
+	 */
+	ReplayingDataengClient(List<ApiTrace.Record> records, int speed) {
+		/* The state of the superclass is never used, no call leaves the process. */
+		super(() -> {
+			throw new IllegalStateException("Replaying clients have no credentials");
+		}, "http://localhost", AltusClientConfigurationBuilder.defaultBuilder().build());
+		this.speed = speed;
+		for (ApiTrace.Record record : records) {
+			index(record);
+		}
+	}
+
+	/**
+	 * Returns the client replaying the replayFile of the [trace] section of
+	 * SampleResources.ini. Its report is logged when the JVM exits.
+	 * @return ReplayingDataengClient		Shared client, or null when no replayFile is configured
+	 */
+	static ReplayingDataengClient shared() {
+		ReplayingDataengClient client = shared;
+		if (client == null) {
+			synchronized (ReplayingDataengClient.class) {
+				client = shared;
+				SampleConfig config = SampleConfig.current();
+				if (client == null && config.getTraceReplayFile() != null) {
+					ApiTrace.checkRoundTrip();
+					List<ApiTrace.Record> records;
+					try {
+						records = ApiTrace.read(Paths.get(config.getTraceReplayFile()));
+					} catch (IOException ioe) {
+						LOG.error("Unable to read the trace " + config.getTraceReplayFile() + " " + ioe.getMessage());
+						throw new UncheckedIOException(ioe);
+					}
+					LOG.info("Replaying " + records.size() + " calls from " + config.getTraceReplayFile() + " at "
+							+ config.getTraceReplaySpeed() + "x");
+					client = new ReplayingDataengClient(records, config.getTraceReplaySpeed());
+					ReplayingDataengClient replayed = client;
+					Runtime.getRuntime().addShutdownHook(new Thread(() -> LOG.info(replayed.report()), "altus-replay-report"));
+					shared = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		String clusterName = request.getClusterName();
+		long callNanos = System.nanoTime();
+		JsonNode response = serve("createAWSCluster", clusterName, () -> {
+			Answer answer = poll(mutations, "createAWSCluster " + clusterName);
+			if (answer != null && answer.state != null) {
+				clusterAnchors.put(clusterName, new Anchor(answer.record.getOffsetNanos(), callNanos));
+			}
+			return answer;
+		});
+		return ApiTrace.fromJson(response, CreateAWSClusterResponse.class);
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		String clusterName = request.getClusterName();
+		JsonNode cluster = serve("describeCluster", clusterName,
+				() -> at(clusters.get(clusterName), clusterAnchors.get(clusterName)));
+		DescribeClusterResponse response = new DescribeClusterResponse();
+		response.setCluster(ApiTrace.fromJson(cluster, Cluster.class));
+		return response;
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		String clusterName = request.getClusterName();
+		JsonNode response = serve("deleteCluster", clusterName,
+				() -> poll(mutations, "deleteCluster " + clusterName));
+		return ApiTrace.fromJson(response, DeleteClusterResponse.class);
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		String key = "listClusters " + request.getPageToken();
+		JsonNode response = serve("listClusters", null, () -> at(listings.get(key), null));
+		return ApiTrace.fromJson(response, ListClustersResponse.class);
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		String clusterName = request.getClusterName();
+		int count = request.getJobs() == null ? 0 : request.getJobs().size();
+		long callNanos = System.nanoTime();
+		JsonNode response = serve("submitJobs", clusterName, () -> nextJobs(clusterName, count, callNanos));
+		return ApiTrace.fromJson(response, SubmitJobsResponse.class);
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		String jobId = request.getJobId();
+		JsonNode job = serve("describeJob", jobId, () -> at(jobs.get(jobId), jobAnchors.get(jobId)));
+		DescribeJobResponse response = new DescribeJobResponse();
+		response.setJob(ApiTrace.fromJson(job, Job.class));
+		return response;
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		String clusterName = request.getClusterName();
+		String key = "listJobs " + clusterName + " " + request.getPageToken();
+		JsonNode response = serve("listJobs", clusterName,
+				() -> at(listings.get(key), clusterAnchors.get(clusterName)));
+		return ApiTrace.fromJson(response, ListJobsResponse.class);
+	}
+
+	/**
+	 * @return String		Calls replayed per operation, calls the trace had no answer for,
+	 * 									and the recorded time the replay covered
+	 */
+	synchronized String report() {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		int total = 0;
+		for (int count : calls.values()) {
+			total += count;
+		}
+		StringBuilder report = new StringBuilder("Replayed ").append(total).append(" calls in ")
+				.append(TimeUnit.NANOSECONDS.toSeconds(elapsedNanos)).append("s, ")
+				.append(TimeUnit.NANOSECONDS.toSeconds(elapsedNanos * speed)).append("s of recorded time, ")
+				.append(misses).append(" without an answer in the trace");
+		for (Map.Entry<String, Integer> entry : calls.entrySet()) {
+			report.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return report.toString();
+	}
+
+	private void index(ApiTrace.Record record) {
+		String operation = record.getOperation();
+		String subject = record.getSubject();
+		JsonNode response = record.getResponse();
+		if (record.isTransientFailure() && isRead(operation)) {
+			transientFailures.computeIfAbsent(operation, name -> new ArrayDeque<>()).add(new Answer(record, null));
+			return;
+		}
+		switch (operation) {
+			case "createAWSCluster":
+				mutations.computeIfAbsent(operation + " " + subject, key -> new ArrayDeque<>()).add(new Answer(record, response));
+				if (response != null) {
+					timeline(clusters, subject).add(new Answer(record, response.get("cluster")));
+				}
+				break;
+			case "deleteCluster":
+				mutations.computeIfAbsent(operation + " " + subject, key -> new ArrayDeque<>()).add(new Answer(record, response));
+				break;
+			case "submitJobs": {
+				Deque<Answer> queue = submissions.computeIfAbsent(subject, key -> new ArrayDeque<>());
+				if (response == null) {
+					queue.add(new Answer(record, null));
+					break;
+				}
+				for (JsonNode job : response.path("jobs")) {
+					queue.add(new Answer(record, job));
+					timeline(jobs, job.path("jobId").textValue()).add(new Answer(record, job));
+				}
+				break;
+			}
+			case "describeCluster":
+				timeline(clusters, subject).add(new Answer(record, response == null ? null : response.get("cluster")));
+				break;
+			case "describeJob":
+				timeline(jobs, subject).add(new Answer(record, response == null ? null : response.get("job")));
+				break;
+			case "listClusters":
+				timeline(listings, operation + " " + record.getRequest().path("pageToken").textValue())
+						.add(new Answer(record, response));
+				break;
+			default:
+				timeline(listings, operation + " " + subject + " " + record.getRequest().path("pageToken").textValue())
+						.add(new Answer(record, response));
+				break;
+		}
+	}
+
+	private static Timeline timeline(Map<String, Timeline> timelines, String key) {
+		return timelines.computeIfAbsent(key, name -> new Timeline());
+	}
+
+	private static boolean isRead(String operation) {
+		return operation.startsWith("describe") || operation.startsWith("list");
+	}
+
+	/*
+	Answers a call and waits for its recorded latency. The lookup runs with the
+	lock held, the wait does not.
+	*/
+	private JsonNode serve(String operation, String subject, Supplier<Answer> lookup) {
+		Answer answer;
+		synchronized (this) {
+			calls.merge(operation, 1, Integer::sum);
+			answer = dueTransientFailure(operation);
+			if (answer == null) {
+				answer = lookup.get();
+			}
+			if (answer == null) {
+				misses++;
+			}
+		}
+		if (answer == null) {
+			throw new AltusClientException("The trace has no answer to " + operation
+					+ (subject == null ? "" : " of " + subject));
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(answer.record.getLatencyNanos() / speed);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AltusClientException("Interrupted while replaying " + operation, e);
+		}
+		if (answer.state == null) {
+			throw answer.record.toException();
+		}
+		return answer.state;
+	}
+
+	/* Called with the lock held. */
+	private Answer dueTransientFailure(String operation) {
+		Deque<Answer> failures = transientFailures.get(operation);
+		if (failures == null || failures.isEmpty() || failures.peek().record.getOffsetNanos() > recordedNanos(null)) {
+			return null;
+		}
+		return failures.poll();
+	}
+
+	/* Called with the lock held. */
+	private static Answer poll(Map<String, Deque<Answer>> queues, String key) {
+		Deque<Answer> queue = queues.get(key);
+		return queue == null ? null : queue.poll();
+	}
+
+	/* Called with the lock held. */
+	private Answer at(Timeline timeline, Anchor anchor) {
+		return timeline == null ? null : timeline.at(recordedNanos(anchor));
+	}
+
+	/*
+	Takes the next recorded job ids of the cluster, whatever the batches they
+	were recorded in. Called with the lock held.
+	*/
+	private Answer nextJobs(String clusterName, int count, long callNanos) {
+		Deque<Answer> queue = submissions.get(clusterName);
+		if (queue == null || queue.isEmpty()) {
+			return null;
+		}
+		if (queue.peek().state == null) {
+			return queue.poll();
+		}
+		int available = 0;
+		for (Answer answer : queue) {
+			if (answer.state == null || available == count) {
+				break;
+			}
+			available++;
+		}
+		if (available < count) {
+			return null;
+		}
+		ObjectNode response = JsonNodeFactory.instance.objectNode();
+		ArrayNode submitted = response.putArray("jobs");
+		ApiTrace.Record first = queue.peek().record;
+		for (int i = 0; i < count; i++) {
+			Answer answer = queue.poll();
+			submitted.add(answer.state);
+			jobAnchors.put(answer.state.path("jobId").textValue(), new Anchor(answer.record.getOffsetNanos(), callNanos));
+		}
+		return new Answer(first, response);
+	}
+
+	/*
+	Time of the recorded run matching now: the time since the anchor, scaled
+	by the speed, after the recorded call the anchor was set by. Without an
+	anchor, the time since the start of the replay.
+	*/
+	private long recordedNanos(Anchor anchor) {
+		if (anchor == null) {
+			return (System.nanoTime() - startNanos) * speed;
+		}
+		return anchor.recordedOffsetNanos + (System.nanoTime() - anchor.replayNanos) * speed;
+	}
+
+	/* A recorded call, answered with the state, or with the failure of the call when the state is null. */
+	private static final class Answer {
+
+		private final ApiTrace.Record record;
+		private final JsonNode state;
+
+		Answer(ApiTrace.Record record, JsonNode state) {
+			this.record = record;
+			this.state = state;
+		}
+	}
+
+	/* Answers to one read, ordered by the time they were recorded. */
+	private static final class Timeline {
+
+		private final List<Answer> answers = new ArrayList<>();
+
+		void add(Answer answer) {
+			answers.add(answer);
+		}
+
+		/* Latest answer recorded at or before the time, or the first answer. */
+		Answer at(long recordedNanos) {
+			int low = 0;
+			int high = answers.size() - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (answers.get(middle).record.getOffsetNanos() <= recordedNanos) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return answers.get(low);
+		}
+	}
+
+	/* A recorded call that started a timeline, and when the same call was replayed. */
+	private static final class Anchor {
+
+		private final long recordedOffsetNanos;
+		private final long replayNanos;
+
+		Anchor(long recordedOffsetNanos, long replayNanos) {
+			this.recordedOffsetNanos = recordedOffsetNanos;
+			this.replayNanos = replayNanos;
+		}
+	}
+}
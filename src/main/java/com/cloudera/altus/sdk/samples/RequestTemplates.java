@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.HiveJobRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.MR2JobRequest;
+import com.cloudera.altus.dataeng.model.SparkJobRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Prototypes of the requests sent by the integrations. A prototype is built
+ * once per configuration snapshot and per service type or job kind, and
+ * every call gets a copy that only differs by the substituted parameters.
+ * Copies share the prototype's lists, which are unmodifiable, so building a
+ * request neither re-reads the configuration nor allocates new lists.
+ *
+ * The SSH public key is cached by path and modification time, so it is only
+ * read again from disk when the file changes.
+ */
+final class RequestTemplates {
+
+	private static final RequestTemplates SHARED = new RequestTemplates();
+
+	private final ConcurrentMap<Path, SshKey> sshKeys = new ConcurrentHashMap<>();
+	private volatile Prototypes prototypes = new Prototypes(null);
+
+	/**
+	 * @return RequestTemplates		Templates shared by every integration in this JVM
+	 */
+	static RequestTemplates shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates the request for a new AWS cluster of the given service type.
+	 * The cluster settings come from the [AWSCluster] section of SampleResources.ini.
+	 * @param clusterName								Name of the cluster to be created
+	 * @param serviceType								Type of the cluster to be created
+	 * @param workersGroupSize					Number of worker nodes
+	 * @return CreateAWSClusterRequest	New request that the caller may modify
+	 * @throws IOException							Occurs when the SSH public key cannot be read
+	 */
+	CreateAWSClusterRequest newCreateAWSClusterRequest(String clusterName, String serviceType,
+			int workersGroupSize) throws IOException {
+		Tracing.Span span = Tracing.requestBuild(serviceType, clusterName);
+		try {
+			Prototypes current = current();
+			CreateAWSClusterRequest prototype = current.clusters.computeIfAbsent(serviceType,
+					type -> clusterPrototype(current.config, type));
+
+			CreateAWSClusterRequest request = new CreateAWSClusterRequest();
+			request.setClusterName(clusterName);
+			request.setCdhVersion(prototype.getCdhVersion());
+			request.setPublicKey(sshKeyContents(current.config.getSshPublicKeyLocation()));
+			request.setServiceType(prototype.getServiceType());
+			request.setInstanceType(prototype.getInstanceType());
+			request.setWorkersGroupSize(workersGroupSize);
+			request.setEnvironmentName(prototype.getEnvironmentName());
+			request.setClouderaManagerUsername(prototype.getClouderaManagerUsername());
+			request.setClouderaManagerPassword(prototype.getClouderaManagerPassword());
+			return request;
+		} finally {
+			span.close();
+		}
+	}
+
+	/**
+	 * Creates a job request from the prototype of the given job kind. The
+	 * prototype is built with the builder the first time the kind is used with
+	 * the current configuration snapshot.
+	 * @param kind					Key of the prototype, usually the integration class or a DAG node
+	 * @param builder				Builds the prototype from the configuration
+	 * @param jobName				Name of the job, or null to keep the prototype's name
+	 * @return JobRequest		New request sharing the prototype's unmodifiable lists
+	 */
+	JobRequest newJobRequest(Object kind, Function<SampleConfig, JobRequest> builder, String jobName) {
+		Tracing.Span span = Tracing.requestBuild(
+				kind instanceof Class ? ((Class<?>) kind).getSimpleName() : String.valueOf(kind), null);
+		try {
+			return buildJobRequest(kind, builder, jobName);
+		} finally {
+			span.close();
+		}
+	}
+
+	private JobRequest buildJobRequest(Object kind, Function<SampleConfig, JobRequest> builder, String jobName) {
+		Prototypes current = current();
+		JobRequest prototype = current.jobs.computeIfAbsent(kind,
+				k -> freeze(builder.apply(current.config)));
+
+		JobRequest job = new JobRequest();
+		job.setName(jobName != null ? jobName : prototype.getName());
+		if (prototype.getSparkJob() != null) {
+			SparkJobRequest sparkJob = new SparkJobRequest();
+			sparkJob.setJars(prototype.getSparkJob().getJars());
+			sparkJob.setMainClass(prototype.getSparkJob().getMainClass());
+			sparkJob.setApplicationArguments(prototype.getSparkJob().getApplicationArguments());
+			job.setSparkJob(sparkJob);
+		}
+		if (prototype.getHiveJob() != null) {
+			HiveJobRequest hiveJob = new HiveJobRequest();
+			hiveJob.setScript(prototype.getHiveJob().getScript());
+			hiveJob.setParams(prototype.getHiveJob().getParams());
+			job.setHiveJob(hiveJob);
+		}
+		if (prototype.getMr2Job() != null) {
+			MR2JobRequest mr2Job = new MR2JobRequest();
+			mr2Job.setJars(prototype.getMr2Job().getJars());
+			mr2Job.setMainClass(prototype.getMr2Job().getMainClass());
+			mr2Job.setArguments(prototype.getMr2Job().getArguments());
+			job.setMr2Job(mr2Job);
+		}
+		return job;
+	}
+
+	/**
+	 * Reads the SSH public key, reusing the cached contents while the file's
+	 * modification time is unchanged.
+	 * @param file						File containing the public key
+	 * @return String					Public key
+	 * @throws IOException		Occurs when there is an issue reading the file
+	 */
+	String sshKeyContents(String file) throws IOException {
+		if (file == null) {
+			throw new IOException("ssh_public_key_location is not set in SampleResources.ini");
+		}
+		Path path = Paths.get(file);
+		FileTime modified = Files.getLastModifiedTime(path);
+		SshKey cached = sshKeys.get(path);
+		if (cached != null && cached.modified.equals(modified)) {
+			return cached.contents;
+		}
+		String contents = new String(Files.readAllBytes(path));
+		sshKeys.put(path, new SshKey(modified, contents));
+		return contents;
+	}
+
+	/* Prototypes are dropped as soon as a new configuration snapshot is loaded. */
+	private Prototypes current() {
+		SampleConfig config = SampleConfig.current();
+		Prototypes current = prototypes;
+		if (current.config != config) {
+			current = new Prototypes(config);
+			prototypes = current;
+		}
+		return current;
+	}
+
+	private static CreateAWSClusterRequest clusterPrototype(SampleConfig config, String serviceType) {
+		CreateAWSClusterRequest prototype = new CreateAWSClusterRequest();
+		prototype.setCdhVersion(config.getCdhVersion());
+		prototype.setServiceType(serviceType);
+		prototype.setInstanceType(config.getInstanceType());
+		prototype.setEnvironmentName(config.getEnvironmentName());
+		prototype.setClouderaManagerUsername(config.getClouderaManagerUsername());
+		prototype.setClouderaManagerPassword(config.getClouderaManagerPassword());
+		return prototype;
+	}
+
+	private static JobRequest freeze(JobRequest prototype) {
+		if (prototype.getSparkJob() != null) {
+			SparkJobRequest sparkJob = prototype.getSparkJob();
+			sparkJob.setJars(unmodifiable(sparkJob.getJars()));
+			sparkJob.setApplicationArguments(unmodifiable(sparkJob.getApplicationArguments()));
+		}
+		if (prototype.getHiveJob() != null) {
+			prototype.getHiveJob().setParams(unmodifiable(prototype.getHiveJob().getParams()));
+		}
+		if (prototype.getMr2Job() != null) {
+			MR2JobRequest mr2Job = prototype.getMr2Job();
+			mr2Job.setJars(unmodifiable(mr2Job.getJars()));
+			mr2Job.setArguments(unmodifiable(mr2Job.getArguments()));
+		}
+		return prototype;
+	}
+
+	private static List<String> unmodifiable(List<String> list) {
+		return list == null ? null : Collections.unmodifiableList(list);
+	}
+
+	private static final class Prototypes {
+
+		private final SampleConfig config;
+		private final ConcurrentMap<String, CreateAWSClusterRequest> clusters = new ConcurrentHashMap<>();
+		private final ConcurrentMap<Object, JobRequest> jobs = new ConcurrentHashMap<>();
+
+		Prototypes(SampleConfig config) {
+			this.config = config;
+		}
+	}
+
+	private static final class SshKey {
+
+		private final FileTime modified;
+		private final String contents;
+
+		SshKey(FileTime modified, String contents) {
+			this.modified = modified;
+			this.contents = contents;
+		}
+	}
+}
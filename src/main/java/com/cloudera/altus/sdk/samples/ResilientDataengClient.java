@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.AltusClientException;
+import com.cloudera.altus.AltusServiceException;
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.ListClustersRequest;
+import com.cloudera.altus.dataeng.model.ListClustersResponse;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends every call through the {@link AdaptiveRateLimiter} shared by all
+ * clients and the {@link CircuitBreaker} of the endpoint. Calls that only
+ * read state (describeCluster, describeJob, listClusters and listJobs) are
+ * retried when Altus throttles them, answers with a 5xx code or does not
+ * answer, after a random delay below an exponentially growing bound ("full
+ * jitter"), so that clients throttled together do not retry together.
+ * createAWSCluster, deleteCluster and submitJobs are never retried: a call
+ * that timed out may have been applied, and sending it again could create a
+ * second cluster or run a job twice. While the circuit is open, calls fail
+ * at once with a {@link CircuitOpenException}, and an interrupted wait fails
+ * with a {@link CallInterruptedException}; neither is retried.
+ *
+ * The retry delays and the waits for the rate limiter sleep on the calling
+ * thread. On Java 8 the calls run on the fixed pool of
+ * {@link WorkflowExecutors}, so while Altus throttles, the whole pool can be
+ * asleep here and the polls of the cluster poller and the job tracker queue
+ * behind it. Keep maxRetries and retryMaxDelayMillis of the [limits] section
+ * small when running many workflows on Java 8; on Java 21 every call sleeps
+ * on its own virtual thread.
+ */
+final class ResilientDataengClient extends ForwardingDataengClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ResilientDataengClient.class);
+
+	private final AdaptiveRateLimiter limiter;
+	private final CircuitBreaker breaker;
+	private final int maxRetries;
+	private final long baseDelayNanos;
+	private final long maxDelayNanos;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param limiter			Limiter shared by every client
+	 * @param breaker			Breaker of the endpoint of the delegate
+	 * @param maxRetries	Retries of an idempotent call after its first attempt
+	 * @param baseDelay		Upper bound of the delay before the first retry
+	 * @param maxDelay		Upper bound of the delay before any retry
+	 */
+	ResilientDataengClient(DataengClient delegate, AdaptiveRateLimiter limiter, CircuitBreaker breaker,
+			int maxRetries, Duration baseDelay, Duration maxDelay) {
+		super(delegate);
+		this.limiter = limiter;
+		this.breaker = breaker;
+		this.maxRetries = maxRetries;
+		this.baseDelayNanos = baseDelay.toNanos();
+		this.maxDelayNanos = maxDelay.toNanos();
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		return call("createAWSCluster", false, () -> super.createAWSCluster(request));
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		return call("describeCluster", true, () -> super.describeCluster(request));
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		return call("deleteCluster", false, () -> super.deleteCluster(request));
+	}
+
+	@Override
+	public ListClustersResponse listClusters(ListClustersRequest request) {
+		return call("listClusters", true, () -> super.listClusters(request));
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		return call("submitJobs", false, () -> super.submitJobs(request));
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		return call("describeJob", true, () -> super.describeJob(request));
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		return call("listJobs", true, () -> super.listJobs(request));
+	}
+
+	private <T> T call(String operation, boolean idempotent, Supplier<T> call) {
+		long delayNanos = 0;
+		for (int attempt = 0; ; attempt++) {
+			RuntimeException failure;
+			try {
+				return attempt(operation, delayNanos, call);
+			} catch (CircuitOpenException | CallInterruptedException e) {
+				throw e;
+			} catch (AltusServiceException ase) {
+				if (!isTransient(ase.getHttpCode())) {
+					throw ase;
+				}
+				failure = ase;
+			} catch (AltusClientException ace) {
+				failure = ace;
+			}
+			if (!idempotent || attempt >= maxRetries) {
+				throw failure;
+			}
+			limiter.retried();
+			delayNanos = ThreadLocalRandom.current().nextLong(backoffBound(attempt) + 1);
+			LOG.info("Retrying " + operation + " in " + TimeUnit.NANOSECONDS.toMillis(delayNanos) + "ms after "
+					+ failure.getMessage());
+		}
+	}
+
+	private <T> T attempt(String operation, long delayNanos, Supplier<T> call) {
+		waitFor(delayNanos, operation);
+		if (!breaker.tryAcquire()) {
+			throw new CircuitOpenException(operation, breaker.getEndpoint());
+		}
+		try {
+			T response = call.get();
+			limiter.succeeded();
+			breaker.succeeded();
+			return response;
+		} catch (AltusServiceException ase) {
+			if (ase.getHttpCode() == 429 || ase.getHttpCode() == 503) {
+				limiter.throttled();
+			}
+			if (isTransient(ase.getHttpCode())) {
+				breaker.failed();
+			} else {
+				breaker.succeeded();
+			}
+			throw ase;
+		} catch (RuntimeException e) {
+			breaker.failed();
+			throw e;
+		}
+	}
+
+	/* The bound doubles on every retry, shifting stops before it overflows. */
+	private long backoffBound(int attempt) {
+		if (attempt >= 62 || baseDelayNanos > maxDelayNanos >> attempt) {
+			return maxDelayNanos;
+		}
+		return baseDelayNanos << attempt;
+	}
+
+	/* Waits for the retry delay, then for the rate limiter. */
+	private void waitFor(long delayNanos, String operation) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(delayNanos);
+			limiter.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CallInterruptedException(operation, e);
+		}
+	}
+
+	/**
+	 * @param failure		Exception a call failed with, after the retries of this client
+	 * @return boolean	False for a 4xx answer other than 429, which a later call would get too,
+	 * 									and for an interrupted call
+	 */
+	static boolean isRetryable(RuntimeException failure) {
+		if (failure instanceof AltusServiceException) {
+			return isTransient(((AltusServiceException) failure).getHttpCode());
+		}
+		return !(failure instanceof CallInterruptedException);
+	}
+
+	private static boolean isTransient(int httpCode) {
+		return httpCode == 429 || httpCode >= 500;
+	}
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ini4j.Ini;
+import org.ini4j.Wini;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, validated snapshot of SampleResources.ini. The file is parsed
+ * once and the snapshot is shared by every thread without locking. When the
+ * file lives on the file system it is watched, and a new snapshot replaces
+ * the current one atomically whenever the file changes, so long-running
+ * processes pick up new values without restarting.
+ *
+ * The file is read from the classpath unless the altus.samples.config
+ * system property points to a file.
+ */
+final class SampleConfig {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SampleConfig.class);
+
+	static final String RESOURCE = "SampleResources.ini";
+	static final String LOCATION_PROPERTY = "altus.samples.config";
+
+	private static final AtomicReference<SampleConfig> CURRENT = new AtomicReference<>();
+
+	private final String clientApplicationName;
+	private final String profile;
+	private final String endpoint;
+	private final DataengClientRegistry.Settings clientSettings;
+	private final String cdhVersion;
+	private final String instanceType;
+	private final int workerSize;
+	private final String environmentName;
+	private final String clouderaManagerUsername;
+	private final String clouderaManagerPassword;
+	private final int maxConcurrentCreates;
+	private final String outputLocation;
+	private final int submitBatchSize;
+	private final Duration submitLinger;
+	private final String sshPublicKeyLocation;
+	private final int poolWarmClusters;
+	private final Duration poolIdleTtl;
+	private final String poolNamePrefix;
+	private final String journalPath;
+	private final long journalCompactionBytes;
+	private final Integer prometheusPort;
+	private final String prometheusFile;
+	private final int maxRequestsPerSecond;
+	private final int minRequestsPerSecond;
+	private final int maxRetries;
+	private final Duration retryBaseDelay;
+	private final Duration retryMaxDelay;
+	private final int breakerFailureThreshold;
+	private final Duration breakerOpenDuration;
+	private final String sizingHistoryFile;
+	private final Duration sizingTarget;
+	private final int sizingMinWorkers;
+	private final int sizingMaxWorkers;
+	private final boolean sizingAutoApply;
+	private final Map<String, Double> sizingInstanceCosts;
+	private final List<String> sweepPrefixes;
+	private final Duration sweepIdleThreshold;
+	private final int maxConcurrentDeletes;
+	private final Duration terminationTimeout;
+	private final Duration cacheStableTtl;
+	private final Duration cacheTransitionalTtl;
+	private final String traceRecordFile;
+	private final String traceReplayFile;
+	private final int traceReplaySpeed;
+	private final Map<String, String> placementEnvironments;
+	private final int maxClustersPerEnvironment;
+	private final int placementFailureThreshold;
+	private final Duration placementUnhealthyDuration;
+
+	private SampleConfig(Ini ini) {
+		Ini.Section client = section(ini, "client");
+		clientApplicationName = required(client, "clientApplicationName");
+		profile = optional(client, "profile");
+		endpoint = optional(client, "endpoint");
+		clientSettings = new DataengClientRegistry.Settings(
+				Duration.ofSeconds(positive(client, "connectionTimeoutSeconds", 10)),
+				Duration.ofSeconds(positive(client, "readTimeoutSeconds", 60)));
+
+		Ini.Section cluster = section(ini, "AWSCluster");
+		cdhVersion = required(cluster, "cdhVersion");
+		instanceType = required(cluster, "instanceType");
+		workerSize = positive(cluster, "workerSize");
+		environmentName = optional(cluster, "environmentName");
+		clouderaManagerUsername = optional(cluster, "CMUsername");
+		clouderaManagerPassword = optional(cluster, "CMPassword");
+
+		/*
+		The other sections are optional, so that an ini file written for an
+		earlier version of the samples still loads. Missing options take the
+		values the bundled SampleResources.ini ships with.
+		*/
+		maxConcurrentCreates = positive(ini.get("fleet"), "maxConcurrentCreates", 8);
+
+		Ini.Section jobs = section(ini, "jobs");
+		outputLocation = optional(jobs, "outputLocation");
+		submitBatchSize = positive(jobs, "submitBatchSize", 25);
+		submitLinger = Duration.ofMillis(positive(jobs, "submitLingerMillis", 200));
+
+		sshPublicKeyLocation = optional(ini.get("credentials"), "ssh_public_key_location");
+
+		Ini.Section pool = ini.get("pool");
+		poolWarmClusters = nonNegative(pool, "warmClusters", 1);
+		poolIdleTtl = Duration.ofSeconds(positive(pool, "idleTtlSeconds", 900));
+		poolNamePrefix = optional(pool, "namePrefix", "sample-pool");
+
+		Ini.Section journal = ini.get("journal");
+		journalPath = optional(journal, "path");
+		journalCompactionBytes = positive(journal, "compactAfterMegabytes", 16) * 1024L * 1024L;
+
+		Ini.Section metrics = ini.get("metrics");
+		prometheusPort = optional(metrics, "prometheusPort") == null ? null : positive(metrics, "prometheusPort");
+		prometheusFile = optional(metrics, "prometheusFile");
+
+		Ini.Section limits = ini.get("limits");
+		maxRequestsPerSecond = positive(limits, "maxRequestsPerSecond", 20);
+		minRequestsPerSecond = Math.min(positive(limits, "minRequestsPerSecond", 1), maxRequestsPerSecond);
+		maxRetries = nonNegative(limits, "maxRetries", 4);
+		retryBaseDelay = Duration.ofMillis(positive(limits, "retryBaseDelayMillis", 200));
+		retryMaxDelay = Duration.ofMillis(Math.max(positive(limits, "retryMaxDelayMillis", 10000),
+				retryBaseDelay.toMillis()));
+		breakerFailureThreshold = positive(limits, "breakerFailureThreshold", 10);
+		breakerOpenDuration = Duration.ofSeconds(positive(limits, "breakerOpenSeconds", 30));
+
+		Ini.Section sizing = ini.get("sizing");
+		sizingHistoryFile = optional(sizing, "historyFile");
+		sizingTarget = Duration.ofMinutes(positive(sizing, "targetMinutes", 30));
+		sizingMinWorkers = positive(sizing, "minWorkers", 3);
+		sizingMaxWorkers = Math.max(positive(sizing, "maxWorkers", 20), sizingMinWorkers);
+		sizingAutoApply = Boolean.parseBoolean(optional(sizing, "autoApply"));
+		sizingInstanceCosts = instanceCosts(sizing, "instanceCosts");
+
+		Ini.Section sweeper = ini.get("sweeper");
+		sweepPrefixes = list(optional(sweeper, "prefixes", "Sample-,sample-"));
+		sweepIdleThreshold = Duration.ofMinutes(positive(sweeper, "idleMinutes", 120));
+		maxConcurrentDeletes = positive(sweeper, "maxConcurrentDeletes", 8);
+		terminationTimeout = Duration.ofMinutes(positive(sweeper, "terminationTimeoutMinutes", 30));
+
+		Ini.Section cache = ini.get("cache");
+		cacheStableTtl = Duration.ofSeconds(nonNegative(cache, "createdTtlSeconds", 30));
+		cacheTransitionalTtl = Duration.ofSeconds(nonNegative(cache, "transitionalTtlSeconds", 5));
+
+		Ini.Section trace = ini.get("trace");
+		traceRecordFile = optional(trace, "recordFile");
+		traceReplayFile = optional(trace, "replayFile");
+		traceReplaySpeed = positive(trace, "replaySpeed", 1);
+
+		Ini.Section placement = ini.get("placement");
+		placementEnvironments = environments(placement, "environments");
+		maxClustersPerEnvironment = positive(placement, "maxClustersPerEnvironment", 20);
+		placementFailureThreshold = positive(placement, "failureThreshold", 3);
+		placementUnhealthyDuration = Duration.ofMinutes(positive(placement, "unhealthyMinutes", 10));
+	}
+
+	/**
+	 * Returns the current snapshot, loading and starting to watch the file on first use.
+	 * @return SampleConfig		Current configuration
+	 */
+	static SampleConfig current() {
+		SampleConfig config = CURRENT.get();
+		if (config == null) {
+			synchronized (CURRENT) {
+				config = CURRENT.get();
+				if (config == null) {
+					Path path = location();
+					config = load(path);
+					CURRENT.set(config);
+					if (path != null) {
+						watch(path);
+					}
+				}
+			}
+		}
+		return config;
+	}
+
+	String getClientApplicationName() {
+		return clientApplicationName;
+	}
+
+	/**
+	 * @return String		Credentials profile, or null for the default credential chain
+	 */
+	String getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return String		Altus endpoint, or null for the SDK default
+	 */
+	String getEndpoint() {
+		return endpoint;
+	}
+
+	DataengClientRegistry.Settings getClientSettings() {
+		return clientSettings;
+	}
+
+	String getCdhVersion() {
+		return cdhVersion;
+	}
+
+	String getInstanceType() {
+		return instanceType;
+	}
+
+	int getWorkerSize() {
+		return workerSize;
+	}
+
+	String getEnvironmentName() {
+		return environmentName;
+	}
+
+	String getClouderaManagerUsername() {
+		return clouderaManagerUsername;
+	}
+
+	String getClouderaManagerPassword() {
+		return clouderaManagerPassword;
+	}
+
+	int getMaxConcurrentCreates() {
+		return maxConcurrentCreates;
+	}
+
+	String getOutputLocation() {
+		return outputLocation;
+	}
+
+	int getSubmitBatchSize() {
+		return submitBatchSize;
+	}
+
+	Duration getSubmitLinger() {
+		return submitLinger;
+	}
+
+	String getSshPublicKeyLocation() {
+		return sshPublicKeyLocation;
+	}
+
+	/**
+	 * @return int		Idle clusters the pool keeps per key once the key has been used
+	 */
+	int getPoolWarmClusters() {
+		return poolWarmClusters;
+	}
+
+	/**
+	 * @return Duration		Time after which idle pooled clusters above the warm count are deleted
+	 */
+	Duration getPoolIdleTtl() {
+		return poolIdleTtl;
+	}
+
+	String getPoolNamePrefix() {
+		return poolNamePrefix;
+	}
+
+	/**
+	 * @return String		File of the state journal, or null when no journal is kept
+	 */
+	String getJournalPath() {
+		return journalPath;
+	}
+
+	/**
+	 * @return long		Size of the journal past which it is compacted
+	 */
+	long getJournalCompactionBytes() {
+		return journalCompactionBytes;
+	}
+
+	/**
+	 * @return Integer		Port serving the metrics in the Prometheus text format, or null
+	 */
+	Integer getPrometheusPort() {
+		return prometheusPort;
+	}
+
+	/**
+	 * @return String		File the metrics are written to in the Prometheus text format, or null
+	 */
+	String getPrometheusFile() {
+		return prometheusFile;
+	}
+
+	/**
+	 * @return int		Request rate the shared limiter starts at and never exceeds
+	 */
+	int getMaxRequestsPerSecond() {
+		return maxRequestsPerSecond;
+	}
+
+	/**
+	 * @return int		Request rate the shared limiter never goes below when throttled
+	 */
+	int getMinRequestsPerSecond() {
+		return minRequestsPerSecond;
+	}
+
+	/**
+	 * @return int		Retries of an idempotent call after its first attempt
+	 */
+	int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @return Duration		Upper bound of the delay before the first retry, doubled on every retry
+	 */
+	Duration getRetryBaseDelay() {
+		return retryBaseDelay;
+	}
+
+	/**
+	 * @return Duration		Upper bound of the delay before any retry
+	 */
+	Duration getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+
+	/**
+	 * @return int		Consecutive failures that open the circuit of an endpoint
+	 */
+	int getBreakerFailureThreshold() {
+		return breakerFailureThreshold;
+	}
+
+	/**
+	 * @return Duration		Time an open circuit rejects calls before letting one through
+	 */
+	Duration getBreakerOpenDuration() {
+		return breakerOpenDuration;
+	}
+
+	/**
+	 * @return String		File the running times of completed jobs are appended to, or null
+	 */
+	String getSizingHistoryFile() {
+		return sizingHistoryFile;
+	}
+
+	/**
+	 * @return Duration		Running time clusters are sized for
+	 */
+	Duration getSizingTarget() {
+		return sizingTarget;
+	}
+
+	int getSizingMinWorkers() {
+		return sizingMinWorkers;
+	}
+
+	int getSizingMaxWorkers() {
+		return sizingMaxWorkers;
+	}
+
+	/**
+	 * @return boolean		Whether new clusters get the recommended size instead of the configured one
+	 */
+	boolean isSizingAutoApply() {
+		return sizingAutoApply;
+	}
+
+	/**
+	 * @return Map		Relative cost of an instance type, for the types that were given one
+	 */
+	Map<String, Double> getSizingInstanceCosts() {
+		return sizingInstanceCosts;
+	}
+
+	/**
+	 * @return List		Cluster name prefixes the sweeper may delete
+	 */
+	List<String> getSweepPrefixes() {
+		return sweepPrefixes;
+	}
+
+	/**
+	 * @return Duration		Time a cluster must have been idle to be swept
+	 */
+	Duration getSweepIdleThreshold() {
+		return sweepIdleThreshold;
+	}
+
+	/**
+	 * @return int		Maximum number of deleteCluster calls in flight during a teardown
+	 */
+	int getMaxConcurrentDeletes() {
+		return maxConcurrentDeletes;
+	}
+
+	/**
+	 * @return Duration		Time a deleted cluster has to terminate before a teardown gives up on it
+	 */
+	Duration getTerminationTimeout() {
+		return terminationTimeout;
+	}
+
+	/**
+	 * @return Duration		Time a describeCluster response reporting CREATED is reused
+	 */
+	Duration getCacheStableTtl() {
+		return cacheStableTtl;
+	}
+
+	/**
+	 * @return Duration		Time a describe response reporting a status that is not final is reused
+	 */
+	Duration getCacheTransitionalTtl() {
+		return cacheTransitionalTtl;
+	}
+
+	/**
+	 * @return String		File every call to Altus is recorded to, or null
+	 */
+	String getTraceRecordFile() {
+		return traceRecordFile;
+	}
+
+	/**
+	 * @return String		Trace whose responses are served instead of calling Altus, or null
+	 */
+	String getTraceReplayFile() {
+		return traceReplayFile;
+	}
+
+	/**
+	 * @return int		How many times faster than recorded the trace is replayed
+	 */
+	int getTraceReplaySpeed() {
+		return traceReplaySpeed;
+	}
+
+	/**
+	 * @return Map		Credentials profile per environment new clusters are spread across,
+	 * 								null for the profile of the [client] section, or empty to only use environmentName
+	 */
+	Map<String, String> getPlacementEnvironments() {
+		return placementEnvironments;
+	}
+
+	/**
+	 * @return int		Clusters an environment may hold before no new cluster is placed in it
+	 */
+	int getMaxClustersPerEnvironment() {
+		return maxClustersPerEnvironment;
+	}
+
+	/**
+	 * @return int		Consecutive failed cluster creations after which an environment is skipped
+	 */
+	int getPlacementFailureThreshold() {
+		return placementFailureThreshold;
+	}
+
+	/**
+	 * @return Duration		Time an environment is skipped once it reached the failure threshold
+	 */
+	Duration getPlacementUnhealthyDuration() {
+		return placementUnhealthyDuration;
+	}
+
+	/**
+	 * @return Path		File backing the configuration, or null when it is not on the file system
+	 */
+	private static Path location() {
+		String property = System.getProperty(LOCATION_PROPERTY);
+		if (property != null) {
+			return Paths.get(property).toAbsolutePath();
+		}
+		URL resource = SampleConfig.class.getClassLoader().getResource(RESOURCE);
+		if (resource != null && "file".equals(resource.getProtocol())) {
+			try {
+				return Paths.get(resource.toURI());
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static SampleConfig load(Path path) {
+		try (InputStream in = path != null
+				? Files.newInputStream(path)
+				: SampleConfig.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+			if (in == null) {
+				LOG.error("Unable to read SampleResources.ini file");
+				throw new RuntimeException("Unable to load SampleResources.ini file ");
+			}
+			return new SampleConfig(new Wini(in));
+		} catch (IOException ioe) {
+			LOG.error("Unable to load SampleResources.ini file " + ioe.getMessage());
+			throw new RuntimeException("Unable to load SampleResources.ini file " + ioe.getMessage());
+		}
+	}
+
+	private static void watch(Path path) {
+		Thread watcher = new Thread(() -> {
+			try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+				path.getParent().register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				while (true) {
+					WatchKey key = watchService.take();
+					boolean changed = false;
+					for (WatchEvent<?> event : key.pollEvents()) {
+						changed |= path.getFileName().equals(event.context());
+					}
+					key.reset();
+					if (changed) {
+						reload(path);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException ioe) {
+				LOG.error("Unable to watch " + path + " for changes " + ioe.getMessage());
+			}
+		}, "altus-config-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/* A file that fails to parse or validate leaves the previous snapshot in place. */
+	private static void reload(Path path) {
+		try {
+			CURRENT.set(load(path));
+			LOG.info("Reloaded " + path);
+		} catch (RuntimeException e) {
+			LOG.error("Keeping previous configuration, " + path + " is invalid: " + e.getMessage());
+		}
+	}
+
+	private static Ini.Section section(Ini ini, String name) {
+		Ini.Section section = ini.get(name);
+		if (section == null) {
+			throw new IllegalArgumentException("Missing section [" + name + "] in " + RESOURCE);
+		}
+		return section;
+	}
+
+	/* A null section is a section missing from the file. */
+	private static String optional(Ini.Section section, String option) {
+		String value = section == null ? null : section.get(option);
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	private static String optional(Ini.Section section, String option, String defaultValue) {
+		String value = optional(section, option);
+		return value == null ? defaultValue : value;
+	}
+
+	private static String required(Ini.Section section, String option) {
+		String value = optional(section, option);
+		if (value == null) {
+			throw new IllegalArgumentException(
+					"Missing value for " + option + " in section [" + section.getName() + "]");
+		}
+		return value;
+	}
+
+	private static List<String> list(String value) {
+		List<String> values = new ArrayList<>();
+		for (String part : value.split(",")) {
+			if (!part.trim().isEmpty()) {
+				values.add(part.trim());
+			}
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	/* Comma separated instanceType:cost pairs. */
+	private static Map<String, Double> instanceCosts(Ini.Section section, String option) {
+		String value = optional(section, option);
+		if (value == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, Double> costs = new HashMap<>();
+		for (String pair : value.split(",")) {
+			String[] parts = pair.split(":");
+			try {
+				double cost = parts.length == 2 ? Double.parseDouble(parts[1].trim()) : -1;
+				if (cost > 0) {
+					costs.put(parts[0].trim(), cost);
+					continue;
+				}
+			} catch (NumberFormatException e) {
+				/* Reported below. */
+			}
+			throw new IllegalArgumentException(option + " in section [" + section.getName()
+					+ "] must be instanceType:cost pairs with positive costs, was " + value);
+		}
+		return Collections.unmodifiableMap(costs);
+	}
+
+	/* Comma separated environmentName or environmentName:profile entries, in order. */
+	private static Map<String, String> environments(Ini.Section section, String option) {
+		String value = optional(section, option);
+		if (value == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> environments = new LinkedHashMap<>();
+		for (String entry : list(value)) {
+			int colon = entry.indexOf(':');
+			String name = colon < 0 ? entry : entry.substring(0, colon).trim();
+			String profile = colon < 0 ? null : entry.substring(colon + 1).trim();
+			if (name.isEmpty() || environments.containsKey(name)) {
+				throw new IllegalArgumentException(option + " in section [" + section.getName()
+						+ "] must be distinct environmentName or environmentName:profile entries, was " + value);
+			}
+			environments.put(name, profile == null || profile.isEmpty() ? null : profile);
+		}
+		return Collections.unmodifiableMap(environments);
+	}
+
+	private static int nonNegative(Ini.Section section, String option, int defaultValue) {
+		return optional(section, option) == null ? defaultValue : nonNegative(section, option);
+	}
+
+	private static int nonNegative(Ini.Section section, String option) {
+		String value = required(section, option);
+		try {
+			int number = Integer.parseInt(value);
+			if (number >= 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			/* Reported below. */
+		}
+		throw new IllegalArgumentException(
+				option + " in section [" + section.getName() + "] must be zero or a positive number, was " + value);
+	}
+
+	private static int positive(Ini.Section section, String option, int defaultValue) {
+		return optional(section, option) == null ? defaultValue : positive(section, option);
+	}
+
+	private static int positive(Ini.Section section, String option) {
+		String value = required(section, option);
+		try {
+			int number = Integer.parseInt(value);
+			if (number > 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			/* Reported below. */
+		}
+		throw new IllegalArgumentException(
+				option + " in section [" + section.getName() + "] must be a positive number, was " + value);
+	}
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.JobRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recommends the worker group size and instance type of a cluster from the
+ * running times of the jobs it ran before. Every completed job is recorded
+ * against its workload (job kind, jar or script, input) together with the
+ * worker count and instance type of its cluster.
+ *
+ * The running time of a workload on n workers of one instance type is
+ * modelled as T(n) = a + b / n, a serial part and a part spread over the
+ * workers, fitted by least squares on the recorded runs. With runs on a
+ * single worker count the workload is assumed to scale perfectly (a = 0),
+ * which favours small clusters until bigger ones have been tried. The
+ * recommendation is the cheapest worker count and instance type whose
+ * predicted time meets the target, cheapest meaning the fewest worker
+ * hours weighted by the relative cost of the instance type. When nothing
+ * meets the target, the fastest prediction is recommended.
+ *
+ * Runs are kept in memory and, when the [sizing] section of
+ * SampleResources.ini sets a history file, appended to it so they survive
+ * restarts.
+ */
+final class SizingAdvisor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SizingAdvisor.class);
+
+	/* Only the latest runs of a workload are fitted, so the model follows changes of the data. */
+	private static final int MAX_RUNS_PER_MODEL = 50;
+
+	private static volatile SizingAdvisor shared;
+
+	private final Path historyFile;
+	private final ConcurrentMap<Workload, ConcurrentMap<String, Deque<Run>>> runs = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Shape> clusters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ZonedDateTime> clustersCreated = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Pending> pendingJobs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param historyFile		File the runs are read from and appended to, or null to keep them in memory
+	 */
+	SizingAdvisor(Path historyFile) {
+		this.historyFile = historyFile;
+		if (historyFile != null && Files.exists(historyFile)) {
+			load();
+		}
+	}
+
+	/**
+	 * @return SizingAdvisor		Advisor configured by the [sizing] section of SampleResources.ini
+	 */
+	static SizingAdvisor shared() {
+		SizingAdvisor advisor = shared;
+		if (advisor == null) {
+			synchronized (SizingAdvisor.class) {
+				advisor = shared;
+				if (advisor == null) {
+					String historyFile = SampleConfig.current().getSizingHistoryFile();
+					advisor = new SizingAdvisor(historyFile == null ? null : Paths.get(historyFile));
+					shared = advisor;
+				}
+			}
+		}
+		return advisor;
+	}
+
+	/**
+	 * Remembers the size of a cluster, so the jobs it runs can be recorded.
+	 * @param clusterName		Name of the cluster
+	 * @param instanceType	Instance type of its workers
+	 * @param workers				Number of its workers
+	 */
+	void clusterSized(String clusterName, String instanceType, Integer workers) {
+		if (instanceType != null && workers != null && workers > 0) {
+			clusters.put(clusterName, new Shape(instanceType, workers));
+		}
+	}
+
+	/**
+	 * Remembers when a cluster was first seen CREATED. Jobs submitted with the
+	 * cluster are created with the request, so their running time is measured
+	 * from this moment instead of from their creation.
+	 * @param clusterName		Name of the cluster
+	 */
+	void clusterCreated(String clusterName) {
+		clustersCreated.putIfAbsent(clusterName, ZonedDateTime.now());
+	}
+
+	/**
+	 * Forgets a cluster and stops following the jobs submitted to it, which
+	 * will not be seen reaching a final status anymore.
+	 * @param clusterName		Name of the cluster
+	 */
+	void clusterDeleted(String clusterName) {
+		clusters.remove(clusterName);
+		clustersCreated.remove(clusterName);
+		pendingJobs.values().removeIf(pending -> pending.clusterName.equals(clusterName));
+	}
+
+	/**
+	 * Starts following a job until it reaches a final status or its cluster is deleted.
+	 * @param jobKey				Job id, or {@link #jobKey(String, String)} for jobs submitted with their cluster
+	 * @param clusterName		Cluster the job was submitted to
+	 * @param job						Request of the job
+	 */
+	void jobSubmitted(String jobKey, String clusterName, JobRequest job) {
+		pendingJobs.put(jobKey, new Pending(Workload.of(job), clusterName));
+	}
+
+	/**
+	 * @param clusterName		Cluster the job was submitted with
+	 * @param jobName				Name of the job
+	 * @return String				Key of a job that was submitted before it had an id
+	 */
+	static String jobKey(String clusterName, String jobName) {
+		return clusterName + "/" + jobName;
+	}
+
+	/**
+	 * Records the running time of a followed job once it COMPLETED. Jobs in any
+	 * other final status are no longer followed and not recorded. A job
+	 * submitted with its cluster is timed from the moment the cluster was first
+	 * seen CREATED, which is at most one poll after it really started; it is
+	 * not recorded when that moment is unknown.
+	 * @param jobId					Id of the job
+	 * @param clusterName		Cluster running the job
+	 * @param jobName				Name of the job
+	 * @param status				Status reported for the job
+	 * @param created				Creation time of the job
+	 * @param completed			Completion time of the job, null while it runs
+	 */
+	void jobStatus(String jobId, String clusterName, String jobName, String status,
+			ZonedDateTime created, ZonedDateTime completed) {
+		if (pendingJobs.isEmpty() || !JobStatusTracker.isFinal(status)) {
+			return;
+		}
+		ZonedDateTime started = created;
+		Pending pending = pendingJobs.remove(jobId);
+		if (pending == null && jobName != null) {
+			pending = pendingJobs.remove(jobKey(clusterName, jobName));
+			ZonedDateTime clusterCreated = clustersCreated.get(clusterName);
+			started = clusterCreated == null || created == null || clusterCreated.isAfter(created)
+					? clusterCreated : created;
+		}
+		Shape shape = clusters.get(clusterName);
+		if (pending != null && shape != null && "COMPLETED".equals(status) && started != null && completed != null
+				&& !completed.isBefore(started)) {
+			record(pending.workload, shape.instanceType, shape.workers, Duration.between(started, completed));
+		}
+	}
+
+	/**
+	 * Records the running time of a completed job.
+	 * @param workload			Workload the job ran
+	 * @param instanceType	Instance type of the workers of its cluster
+	 * @param workers				Number of workers of its cluster
+	 * @param duration			Time from the start to the completion of the job
+	 */
+	void record(Workload workload, String instanceType, int workers, Duration duration) {
+		Run run = new Run(workers, duration.toMillis() / 1000.0);
+		add(workload, instanceType, run);
+		LOG.info("Recorded " + workload + " on " + workers + " x " + instanceType + " in "
+				+ duration.getSeconds() + "s");
+		if (historyFile != null) {
+			append(workload, instanceType, run);
+		}
+	}
+
+	/**
+	 * Logs the recommendation for the workload of a job and, when autoApply is
+	 * set in the [sizing] section, applies it to the cluster request.
+	 * @param request		Request of the cluster the job will run on
+	 * @param job				Job the cluster is sized for
+	 */
+	void advise(CreateAWSClusterRequest request, JobRequest job) {
+		SampleConfig config = SampleConfig.current();
+		Workload workload = Workload.of(job);
+		Recommendation recommendation = recommend(workload, config.getSizingTarget(),
+				config.getSizingMinWorkers(), config.getSizingMaxWorkers(), config.getSizingInstanceCosts());
+		if (recommendation == null) {
+			LOG.info("No runs of " + workload + " recorded yet, keeping " + request.getWorkersGroupSize()
+					+ " x " + request.getInstanceType() + " for cluster " + request.getClusterName());
+			return;
+		}
+		LOG.info("Recommending " + recommendation + " for cluster " + request.getClusterName()
+				+ " running " + workload + ", target is " + config.getSizingTarget().toMinutes() + " minutes");
+		if (config.isSizingAutoApply()) {
+			request.setWorkersGroupSize(recommendation.getWorkers());
+			request.setInstanceType(recommendation.getInstanceType());
+		}
+	}
+
+	/**
+	 * @param workload							Workload to size a cluster for
+	 * @param target								Running time the workload should meet
+	 * @param minWorkers						Smallest worker count to consider
+	 * @param maxWorkers						Largest worker count to consider
+	 * @param instanceCosts					Relative cost of instance types, 1 for types not listed
+	 * @return Recommendation				Cheapest size meeting the target, or null when the workload never ran
+	 */
+	Recommendation recommend(Workload workload, Duration target, int minWorkers, int maxWorkers,
+			Map<String, Double> instanceCosts) {
+		Map<String, Deque<Run>> byInstanceType = runs.get(workload);
+		if (byInstanceType == null) {
+			return null;
+		}
+		double targetSeconds = target.toMillis() / 1000.0;
+		Recommendation cheapest = null;
+		Recommendation fastest = null;
+		for (Map.Entry<String, Deque<Run>> entry : byInstanceType.entrySet()) {
+			List<Run> history;
+			synchronized (entry.getValue()) {
+				history = new ArrayList<>(entry.getValue());
+			}
+			if (history.isEmpty()) {
+				continue;
+			}
+			double[] model = fit(history);
+			double cost = instanceCosts.getOrDefault(entry.getKey(), 1.0);
+			for (int workers = minWorkers; workers <= maxWorkers; workers++) {
+				double predicted = model[0] + model[1] / workers;
+				Recommendation candidate = new Recommendation(entry.getKey(), workers,
+						Duration.ofMillis((long) (predicted * 1000)), workers * cost * predicted, history.size());
+				if (fastest == null || predicted < fastest.predicted.toMillis() / 1000.0) {
+					fastest = candidate;
+				}
+				if (predicted <= targetSeconds && (cheapest == null || candidate.cost < cheapest.cost)) {
+					cheapest = candidate;
+				}
+			}
+		}
+		return cheapest != null ? cheapest : fastest;
+	}
+
+	/*
+	Least squares of T = a + b x with x = 1 / n. A negative serial part is
+	noise of runs that scaled better than linearly, so the fit is redone
+	through the origin; a negative parallel part means more workers did not
+	help, so the running time is taken as constant.
+	*/
+	private static double[] fit(List<Run> history) {
+		double sumX = 0;
+		double sumY = 0;
+		double sumXX = 0;
+		double sumXY = 0;
+		for (Run run : history) {
+			double x = 1.0 / run.workers;
+			sumX += x;
+			sumY += run.seconds;
+			sumXX += x * x;
+			sumXY += x * run.seconds;
+		}
+		int count = history.size();
+		double variance = count * sumXX - sumX * sumX;
+		if (variance > 1e-12) {
+			double b = (count * sumXY - sumX * sumY) / variance;
+			double a = (sumY - b * sumX) / count;
+			if (a >= 0 && b >= 0) {
+				return new double[] {a, b};
+			}
+			if (b < 0) {
+				return new double[] {sumY / count, 0};
+			}
+		}
+		return new double[] {0, sumXY / sumXX};
+	}
+
+	private void add(Workload workload, String instanceType, Run run) {
+		Deque<Run> history = runs.computeIfAbsent(workload, w -> new ConcurrentHashMap<>())
+				.computeIfAbsent(instanceType, t -> new ArrayDeque<>());
+		synchronized (history) {
+			history.addLast(run);
+			if (history.size() > MAX_RUNS_PER_MODEL) {
+				history.removeFirst();
+			}
+		}
+	}
+
+	/* One tab separated line per run: kind, artifact, input, instance type, workers, seconds. */
+	private synchronized void append(Workload workload, String instanceType, Run run) {
+		String line = workload.kind + '\t' + workload.artifact + '\t' + workload.input + '\t' + instanceType
+				+ '\t' + run.workers + '\t' + run.seconds + '\n';
+		try {
+			Files.write(historyFile, line.getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException ioe) {
+			LOG.error("Unable to append to the sizing history " + historyFile + " " + ioe.getMessage());
+		}
+	}
+
+	private void load() {
+		try {
+			int loaded = 0;
+			for (String line : Files.readAllLines(historyFile, StandardCharsets.UTF_8)) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 6) {
+					continue;
+				}
+				try {
+					add(new Workload(fields[0], fields[1], fields[2]), fields[3],
+							new Run(Integer.parseInt(fields[4]), Double.parseDouble(fields[5])));
+					loaded++;
+				} catch (NumberFormatException e) {
+					LOG.error("Skipping invalid sizing history line " + line);
+				}
+			}
+			LOG.info("Loaded " + loaded + " runs from the sizing history " + historyFile);
+		} catch (IOException ioe) {
+			LOG.error("Unable to read the sizing history " + historyFile + " " + ioe.getMessage());
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	private static final class Shape {
+
+		private final String instanceType;
+		private final int workers;
+
+		Shape(String instanceType, int workers) {
+			this.instanceType = instanceType;
+			this.workers = workers;
+		}
+	}
+
+	private static final class Pending {
+
+		private final Workload workload;
+		private final String clusterName;
+
+		Pending(Workload workload, String clusterName) {
+			this.workload = workload;
+			this.clusterName = clusterName;
+		}
+	}
+
+	private static final class Run {
+
+		private final int workers;
+		private final double seconds;
+
+		Run(int workers, double seconds) {
+			this.workers = workers;
+			this.seconds = seconds;
+		}
+	}
+
+	/**
+	 * What a job runs: its kind, its jar and main class or its script, and its
+	 * input. Jobs sharing a workload are expected to take the same time on the
+	 * same cluster.
+	 */
+	static final class Workload {
+
+		private final String kind;
+		private final String artifact;
+		private final String input;
+
+		Workload(String kind, String artifact, String input) {
+			this.kind = kind;
+			this.artifact = artifact;
+			this.input = input;
+		}
+
+		/**
+		 * @param job					Job request
+		 * @return Workload		Workload the job runs. The input is the first argument of
+		 * 										Spark and MapReduce jobs and the parameters of Hive jobs.
+		 */
+		static Workload of(JobRequest job) {
+			if (job.getSparkJob() != null) {
+				return new Workload("SPARK",
+						join(job.getSparkJob().getJars()) + "#" + job.getSparkJob().getMainClass(),
+						first(job.getSparkJob().getApplicationArguments()));
+			}
+			if (job.getHiveJob() != null) {
+				return new Workload("HIVE", String.valueOf(job.getHiveJob().getScript()),
+						join(job.getHiveJob().getParams()));
+			}
+			if (job.getMr2Job() != null) {
+				return new Workload("MR2",
+						join(job.getMr2Job().getJars()) + "#" + job.getMr2Job().getMainClass(),
+						first(job.getMr2Job().getArguments()));
+			}
+			return new Workload("UNKNOWN", String.valueOf(job.getName()), "");
+		}
+
+		private static String join(List<String> values) {
+			return values == null ? "" : String.join(",", values);
+		}
+
+		private static String first(List<String> values) {
+			return values == null || values.isEmpty() ? "" : String.valueOf(values.get(0));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Workload)) {
+				return false;
+			}
+			Workload other = (Workload) o;
+			return kind.equals(other.kind) && artifact.equals(other.artifact) && input.equals(other.input);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(kind, artifact, input);
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + artifact + (input.isEmpty() ? "" : " on " + input);
+		}
+	}
+
+	/**
+	 * Size recommended for a cluster.
+	 */
+	static final class Recommendation {
+
+		private final String instanceType;
+		private final int workers;
+		private final Duration predicted;
+		private final double cost;
+		private final int runs;
+
+		Recommendation(String instanceType, int workers, Duration predicted, double cost, int runs) {
+			this.instanceType = instanceType;
+			this.workers = workers;
+			this.predicted = predicted;
+			this.cost = cost;
+			this.runs = runs;
+		}
+
+		String getInstanceType() {
+			return instanceType;
+		}
+
+		int getWorkers() {
+			return workers;
+		}
+
+		/**
+		 * @return Duration		Running time predicted by the model
+		 */
+		Duration getPredicted() {
+			return predicted;
+		}
+
+		@Override
+		public String toString() {
+			return workers + " x " + instanceType + ", predicted " + predicted.getSeconds() + "s from " + runs + " runs";
+		}
+	}
+}
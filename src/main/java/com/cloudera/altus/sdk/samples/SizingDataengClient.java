@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+import com.cloudera.altus.dataeng.model.Cluster;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
+import com.cloudera.altus.dataeng.model.CreateAWSClusterResponse;
+import com.cloudera.altus.dataeng.model.DeleteClusterRequest;
+import com.cloudera.altus.dataeng.model.DeleteClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeClusterRequest;
+import com.cloudera.altus.dataeng.model.DescribeClusterResponse;
+import com.cloudera.altus.dataeng.model.DescribeJobRequest;
+import com.cloudera.altus.dataeng.model.DescribeJobResponse;
+import com.cloudera.altus.dataeng.model.Job;
+import com.cloudera.altus.dataeng.model.JobRequest;
+import com.cloudera.altus.dataeng.model.JobSummary;
+import com.cloudera.altus.dataeng.model.ListJobsRequest;
+import com.cloudera.altus.dataeng.model.ListJobsResponse;
+import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
+import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
+
+import java.util.List;
+
+/**
+ * Feeds the {@link SizingAdvisor} with the size of the clusters and the
+ * running time of the jobs seen through the client. Jobs are matched to
+ * their requests by position in the submitJobs response, and by name for
+ * jobs submitted along with createAWSCluster, which are timed from the first
+ * describeCluster call that saw their cluster CREATED.
+ */
+final class SizingDataengClient extends ForwardingDataengClient {
+
+	private final SizingAdvisor advisor;
+
+	/**
+	 * @param delegate		Client the operations are forwarded to
+	 * @param advisor			Advisor the runs are recorded in
+	 */
+	SizingDataengClient(DataengClient delegate, SizingAdvisor advisor) {
+		super(delegate);
+		this.advisor = advisor;
+	}
+
+	@Override
+	public CreateAWSClusterResponse createAWSCluster(CreateAWSClusterRequest request) {
+		CreateAWSClusterResponse response = super.createAWSCluster(request);
+		String clusterName = response.getCluster().getClusterName();
+		advisor.clusterSized(clusterName, request.getInstanceType(), request.getWorkersGroupSize());
+		if (request.getJobs() != null) {
+			for (JobRequest job : request.getJobs()) {
+				advisor.jobSubmitted(SizingAdvisor.jobKey(clusterName, job.getName()), clusterName, job);
+			}
+		}
+		return response;
+	}
+
+	@Override
+	public DescribeClusterResponse describeCluster(DescribeClusterRequest request) {
+		DescribeClusterResponse response = super.describeCluster(request);
+		Cluster cluster = response.getCluster();
+		advisor.clusterSized(cluster.getClusterName(), cluster.getInstanceType(), cluster.getWorkersGroupSize());
+		if ("CREATED".equals(cluster.getStatus())) {
+			advisor.clusterCreated(cluster.getClusterName());
+		}
+		return response;
+	}
+
+	@Override
+	public DeleteClusterResponse deleteCluster(DeleteClusterRequest request) {
+		DeleteClusterResponse response = super.deleteCluster(request);
+		advisor.clusterDeleted(request.getClusterName());
+		return response;
+	}
+
+	@Override
+	public SubmitJobsResponse submitJobs(SubmitJobsRequest request) {
+		SubmitJobsResponse response = super.submitJobs(request);
+		List<Job> jobs = response.getJobs();
+		if (jobs != null && jobs.size() == request.getJobs().size()) {
+			for (int i = 0; i < jobs.size(); i++) {
+				advisor.jobSubmitted(jobs.get(i).getJobId(), request.getClusterName(), request.getJobs().get(i));
+			}
+		}
+		return response;
+	}
+
+	@Override
+	public DescribeJobResponse describeJob(DescribeJobRequest request) {
+		DescribeJobResponse response = super.describeJob(request);
+		Job job = response.getJob();
+		advisor.jobStatus(job.getJobId(), job.getClusterName(), job.getName(), job.getStatus(),
+				job.getCreationDate(), job.getCompletionDate());
+		return response;
+	}
+
+	@Override
+	public ListJobsResponse listJobs(ListJobsRequest request) {
+		ListJobsResponse response = super.listJobs(request);
+		for (JobSummary job : response.getJobs()) {
+			advisor.jobStatus(job.getJobId(), job.getClusterName(), job.getJobName(), job.getStatus(),
+					job.getCreationDate(), job.getCompletionDate());
+		}
+		return response;
+	}
+}
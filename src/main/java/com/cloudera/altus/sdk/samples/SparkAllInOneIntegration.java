@@ -20,16 +20,12 @@ import com.cloudera.altus.AltusServiceException;
 import com.cloudera.altus.dataeng.api.DataengClient;
 import com.cloudera.altus.dataeng.model.CreateAWSClusterRequest;
 import com.cloudera.altus.dataeng.model.JobRequest;
-import com.cloudera.altus.dataeng.model.JobSummary;
-import com.cloudera.altus.dataeng.model.ListJobsRequest;
-import com.cloudera.altus.dataeng.model.ListJobsResponse;
 import com.cloudera.altus.dataeng.model.SparkJobRequest;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 
-import org.ini4j.Wini;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,66 +51,57 @@ public class SparkAllInOneIntegration extends BaseIntegration {
 	}
 
 	@Override
-	void createJob(DataengClient client, String clusterName) {
-		/* Create cluster with minimal input and use defaults (e.g. for ebs config). */
-		CreateAWSClusterRequest request = new CreateAWSClusterRequest();
-		request.setClusterName(clusterName);
+	JobRequest buildJobPrototype(SampleConfig config) {
+		JobRequest job = new JobRequest();
+		SparkJobRequest sparkJob = new SparkJobRequest();
+		ArrayList<String> jars = new ArrayList<String>();
+		jars.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/program/altus-sample-medicare-spark2x.jar");
+		sparkJob.setJars(jars);
+		sparkJob.setMainClass("com.cloudera.altus.sample.medicare.transform");
+		ArrayList<String> args = new ArrayList<String>();
+		/* Add parameters for the jar file. */
+		args.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/input/");
+
+		args.add(config.getOutputLocation());
+		sparkJob.setApplicationArguments(args);
+		job.setName("sample-SparkAllInOne-Job");
+		job.setSparkJob(sparkJob);
+		return job;
+	}
 
+	@Override
+	void createJob(DataengClient client, String clusterName) {
 		try {
-			Wini ini = getIniFile();
-			request.setCdhVersion(ini.get("AWSCluster", "cdhVersion"));
-
-      String publicKey = ini.get("credentials", "ssh_public_key_location");
-      String sshKey = getSshKeyContents(publicKey);
-
-			request.setPublicKey(sshKey);
-			request.setServiceType("SPARK");
-			request.setInstanceType(ini.get("AWSCluster", "instanceType"));
-			request.setWorkersGroupSize(ini.get("AWSCluster", "workerSize", int.class));
-			request.setEnvironmentName(ini.get("AWSCluster", "environmentName"));
-			request.setClouderaManagerUsername(ini.get("AWSCluster", "CMUsername"));
-			request.setClouderaManagerPassword(ini.get("AWSCluster", "CMPassword"));
+			/* Create cluster with minimal input and use defaults (e.g. for ebs config). */
+			CreateAWSClusterRequest request = RequestTemplates.shared().newCreateAWSClusterRequest(
+					clusterName, "SPARK", config().getWorkerSize());
 
 			/* Add Job specific information. */
-			String jobName = "sample-SparkAllInOne-Job";
-			ArrayList<JobRequest> jobs = new ArrayList<>();
-			JobRequest job = new JobRequest();
-			SparkJobRequest sparkJob = new SparkJobRequest();
-			ArrayList<String> jars = new ArrayList<String>();
-			jars.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/program/altus-sample-medicare-spark2x.jar");
-			sparkJob.setJars(jars);
-			sparkJob.setMainClass("com.cloudera.altus.sample.medicare.transform");
-			ArrayList<String> args = new ArrayList<String>();
-			/* Add parameters for the jar file. */
-			args.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/input/");
-
-			args.add(ini.get("jobs", "outputLocation"));
-			sparkJob.setApplicationArguments(args);
-			job.setName(jobName);
-			job.setSparkJob(sparkJob);
-			jobs.add(job);
+			JobRequest job = newJobRequest();
+			String jobName = job.getName();
+			SizingAdvisor.shared().advise(request, job);
 
 			/*
 			Cluster will terminate after successful completion of the job since EMPTY_JOB_QUEUE
 			https://www.cloudera.com/documentation/altus/Shared/altus_dejob_jobs.html#unique_1104585979
 			*/
-			request.setJobs(jobs);
+			request.setJobs(Collections.singletonList(job));
 			request.setAutomaticTerminationCondition("EMPTY_JOB_QUEUE");
 			client.createAWSCluster(request);
 
 			String finalClusterStatus = pollClusterStatus(client, clusterName);
 			if ("CREATED".equals(finalClusterStatus)) {
 				LOG.info("Successfully creating cluster: " + clusterName);
-				String jobId = findJobId(client, jobName);
+				String jobId = findJobId(client, clusterName, jobName);
 				if (jobId != null) {
-				  pollJobStatus(client, jobId);
+				  pollJobStatus(client, clusterName, jobId);
 				}
 			} else {
 				LOG.error("Unable to create " + clusterName + " Status of cluster is " + finalClusterStatus.toString());
 			}
 		} catch (IOException ioe) {
-			LOG.error("Unable to load SampleResources.ini file " + ioe.getMessage());
-			throw new RuntimeException("Unable to load SampleResources.ini file "
+			LOG.error("Unable to read the SSH public key " + ioe.getMessage());
+			throw new RuntimeException("Unable to read the SSH public key "
 																		 + ioe.getMessage());
 		} catch (AltusServiceException ase) {
 			LOG.error(
@@ -125,20 +112,7 @@ public class SparkAllInOneIntegration extends BaseIntegration {
 		}
 	}
 
-	private String findJobId(DataengClient client, String jobName) {
-		ListJobsRequest listJobsRequest = new ListJobsRequest();
-		listJobsRequest.setOrder("NEWEST_TO_OLDEST");
-
-		List<JobSummary> jobSummaries = new ArrayList<>();
-		ListJobsResponse listJobsResponse = client.listJobs(listJobsRequest);
-		jobSummaries.addAll(listJobsResponse.getJobs());
-
-		for (JobSummary job : jobSummaries) {
-		  if (jobName.equalsIgnoreCase(job.getJobName())) {
-		    return job.getJobId();
-		  }
-		}
-		LOG.info("Unable to locate job " + jobName);
-		return null;
+	private String findJobId(DataengClient client, String clusterName, String jobName) {
+		return JobIndex.shared().findJobId(client, clusterName, jobName, JobIndex.DEFAULT_MAX_PAGES);
 	}
 }
@@ -20,14 +20,10 @@ import com.cloudera.altus.AltusServiceException;
 import com.cloudera.altus.dataeng.api.DataengClient;
 import com.cloudera.altus.dataeng.model.JobRequest;
 import com.cloudera.altus.dataeng.model.SparkJobRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsRequest;
-import com.cloudera.altus.dataeng.model.SubmitJobsResponse;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.ini4j.Wini;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +42,13 @@ public class SparkIntegration extends BaseIntegration {
 			DataengClient client = builder.createClient();
 			String clusterName = "Sample-Spark2";
 
+			int workflows = workflowCount(args);
+			WorkflowMode mode = WorkflowMode.fromArgs(args);
+			if (workflows > 0 || mode != WorkflowMode.SERIAL) {
+				builder.runWorkflows(client, clusterName, "SPARK", Math.max(workflows, 1), mode);
+				return;
+			}
+
 			String clusterCreationStatus = builder.createAWSCluster(client, clusterName, "SPARK");
 			if ("CREATED".equals(clusterCreationStatus)) {
 				builder.createJob(client, clusterName);
@@ -59,37 +62,31 @@ public class SparkIntegration extends BaseIntegration {
 	}
 
 	@Override
-	void createJob(DataengClient client, String clusterName) {
-		try {
-			Wini ini = getIniFile();
+	JobRequest buildJobPrototype(SampleConfig config) {
+		JobRequest job = new JobRequest();
 
-			SubmitJobsRequest submitSparkJobsRequest = new SubmitJobsRequest();
-			submitSparkJobsRequest.setClusterName(clusterName);
-			ArrayList<JobRequest> jobs = new ArrayList<>();
-			JobRequest job = new JobRequest();
+		//Spark specific information
+		SparkJobRequest sparkJob = new SparkJobRequest();
+		List<String> jars = new ArrayList<String>();
+		jars.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/program/altus-sample-medicare-spark2x.jar");
+		sparkJob.setJars(jars);
+		sparkJob.setMainClass("com.cloudera.altus.sample.medicare.transform");
+		ArrayList<String> args = new ArrayList<String>();
+		args.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/input/");
 
-			//Spark specific information
-			SparkJobRequest sparkJob = new SparkJobRequest();
-			List<String> jars = new ArrayList<String>();
-			jars.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/program/altus-sample-medicare-spark2x.jar");
-			sparkJob.setJars(jars);
-			sparkJob.setMainClass("com.cloudera.altus.sample.medicare.transform");
-			ArrayList<String> args = new ArrayList<String>();
-			args.add("s3a://cloudera-altus-data-engineering-samples/spark/medicare/input/");
+		args.add(config.getOutputLocation());
+		sparkJob.setApplicationArguments(args);
+		//This job name will appear in the Altus console
+		job.setName("sample-Spark-Job");
+		job.setSparkJob(sparkJob);
+		return job;
+	}
 
-			args.add(ini.get("jobs", "outputLocation"));
-			sparkJob.setApplicationArguments(args);
-			//This job name will appear in the Altus console
-			job.setName("sample-Spark-Job");
-			job.setSparkJob(sparkJob);
-			jobs.add(job);
-			submitSparkJobsRequest.setJobs(jobs);
-			SubmitJobsResponse response = client.submitJobs(submitSparkJobsRequest);
-			pollJobStatus(client, response.getJobs().get(0).getJobId());
-		} catch (IOException ioe) {
-			LOG.error("Unable to load SampleResources.ini file " + ioe.getMessage());
-			throw new RuntimeException("Unable to load SampleResources.ini file "
-																		 + ioe.getMessage());
+	@Override
+	void createJob(DataengClient client, String clusterName) {
+		try {
+			String jobId = submitJob(client, clusterName, newJobRequest());
+			pollJobStatus(client, clusterName, jobId);
 		} catch (AltusServiceException ase) {
 			LOG.error(
 			    "Altus exception occurred when trying to submit job to a "
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import com.cloudera.altus.dataeng.api.DataengClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the clusters and jobs this process owns, kept in
+ * a memory-mapped file so that every record survives a crash of the JVM as
+ * soon as it is appended. It records each cluster creation, job submission,
+ * status transition and cluster deletion.
+ *
+ * Opening the journal replays it into memory, then compacts it to one
+ * record per live cluster and job. {@link #resume(DataengClient)} starts
+ * polling again only the clusters and jobs that had not reached a final
+ * status, instead of scanning the whole account. The journal is compacted
+ * again whenever it grows past the configured size.
+ *
+ * Every record is framed by its length and a CRC32, so a record torn by a
+ * crash is detected and dropped when the journal is replayed.
+ */
+final class StateJournal implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StateJournal.class);
+
+	private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+	private static final int HEADER_BYTES = 8;
+	private static final long COMPACTION_CHECK_SECONDS = 60;
+
+	private static final byte CLUSTER_CREATED = 1;
+	private static final byte CLUSTER_STATUS = 2;
+	private static final byte CLUSTER_DELETED = 3;
+	private static final byte JOB_SUBMITTED = 4;
+	private static final byte JOB_STATUS = 5;
+
+	private static volatile StateJournal shared;
+	/* Set once no journal path was found, so that later callers skip the lock. */
+	private static volatile boolean unconfigured;
+
+	private final Path path;
+	private final long compactionBytes;
+	private final ConcurrentMap<String, ClusterEntry> clusters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, JobEntry> jobs = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService compactor;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Opens the journal, replaying and compacting any existing file.
+	 * @param path							File of the journal
+	 * @param compactionBytes		Size past which the journal is compacted
+	 * @throws IOException			Occurs when the file cannot be read or mapped
+	 */
+	StateJournal(Path path, long compactionBytes) throws IOException {
+		this.path = path;
+		this.compactionBytes = compactionBytes;
+		long startNanos = System.nanoTime();
+		open();
+		int records = replay();
+		compact();
+		LOG.info("Replayed " + records + " journal records from " + path + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms, "
+				+ clusters.size() + " clusters and " + jobs.size() + " jobs are live");
+		compactor = Executors.newSingleThreadScheduledExecutor(ClusterStatusPoller.daemonThreads("altus-journal"));
+		compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+				COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Returns the journal configured by the [journal] section of SampleResources.ini.
+	 * @return StateJournal		Shared journal, or null when no journal path is configured
+	 */
+	static StateJournal shared() {
+		StateJournal journal = shared;
+		if (journal == null && !unconfigured) {
+			synchronized (StateJournal.class) {
+				journal = shared;
+				SampleConfig config = SampleConfig.current();
+				if (config.getJournalPath() == null) {
+					unconfigured = true;
+				} else if (journal == null) {
+					try {
+						journal = new StateJournal(Paths.get(config.getJournalPath()), config.getJournalCompactionBytes());
+					} catch (IOException ioe) {
+						LOG.error("Unable to open the journal " + config.getJournalPath() + " " + ioe.getMessage());
+						throw new UncheckedIOException(ioe);
+					}
+					shared = journal;
+				}
+			}
+		}
+		return journal;
+	}
+
+	void clusterCreated(String clusterName, String serviceType, String status) {
+		ClusterEntry entry = new ClusterEntry(serviceType, status);
+		clusters.put(clusterName, entry);
+		append(CLUSTER_CREATED, clusterName, serviceType, status);
+	}
+
+	/**
+	 * Records the status of a cluster if the cluster is owned and its status changed.
+	 */
+	void clusterStatus(String clusterName, String status) {
+		ClusterEntry entry = clusters.get(clusterName);
+		if (entry != null && status != null && !status.equals(entry.status)) {
+			entry.status = status;
+			append(CLUSTER_STATUS, clusterName, status);
+		}
+	}
+
+	void clusterDeleted(String clusterName) {
+		ClusterEntry entry = clusters.get(clusterName);
+		if (entry != null && !entry.deleted) {
+			entry.deleted = true;
+			append(CLUSTER_DELETED, clusterName);
+		}
+	}
+
+	void jobSubmitted(String jobId, String clusterName, String jobName, String status) {
+		jobs.put(jobId, new JobEntry(clusterName, jobName, status));
+		append(JOB_SUBMITTED, jobId, clusterName, jobName, status);
+	}
+
+	/**
+	 * Records the status of a job if the job is owned and its status changed.
+	 */
+	void jobStatus(String jobId, String status) {
+		JobEntry entry = jobs.get(jobId);
+		if (entry != null && status != null && !status.equals(entry.status)) {
+			entry.status = status;
+			append(JOB_STATUS, jobId, status);
+		}
+	}
+
+	/**
+	 * Records the status of a job listed on a cluster. Jobs of owned clusters
+	 * that were not submitted through submitJobs, such as the jobs of an
+	 * all-in-one createAWSCluster request, are recorded the first time they are seen.
+	 */
+	void jobListed(String jobId, String clusterName, String jobName, String status) {
+		if (!jobs.containsKey(jobId) && clusters.containsKey(clusterName)) {
+			jobSubmitted(jobId, clusterName, jobName, status);
+		} else {
+			jobStatus(jobId, status);
+		}
+	}
+
+	/**
+	 * @param clusterName		Name of a cluster
+	 * @return String				Last known status of the cluster if this process owns it and did not delete it, or null
+	 */
+	String liveClusterStatus(String clusterName) {
+		ClusterEntry entry = clusters.get(clusterName);
+		return entry == null || entry.deleted || !isLive(entry) ? null : entry.status;
+	}
+
+	/**
+	 * @return List		Names of the owned clusters that were neither deleted nor reached an end state
+	 */
+	List<String> liveClusters() {
+		List<String> live = new ArrayList<>();
+		for (Map.Entry<String, ClusterEntry> entry : clusters.entrySet()) {
+			if (!entry.getValue().deleted && isLive(entry.getValue())) {
+				live.add(entry.getKey());
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Starts polling the clusters and jobs that had not reached a final status
+	 * when the journal was last written. The status transitions are recorded
+	 * through the journaling client as usual.
+	 * @param client		Client used to poll the clusters and jobs
+	 * @return int			Number of clusters and jobs being polled again
+	 */
+	int resume(DataengClient client) {
+		int resumed = 0;
+		for (Map.Entry<String, ClusterEntry> entry : clusters.entrySet()) {
+			ClusterEntry cluster = entry.getValue();
+			if (!cluster.deleted && !ClusterStatusPoller.isFinal(cluster.status)) {
+				ClusterStatusPoller.shared().track(client, entry.getKey());
+				resumed++;
+			}
+		}
+		for (Map.Entry<String, JobEntry> entry : jobs.entrySet()) {
+			JobEntry job = entry.getValue();
+			if (!JobStatusTracker.isFinal(job.status)) {
+				JobStatusTracker.shared().track(client, job.clusterName, entry.getKey());
+				resumed++;
+			}
+		}
+		if (resumed > 0) {
+			LOG.info("Resumed polling of " + resumed + " clusters and jobs from the journal");
+		}
+		return resumed;
+	}
+
+	@Override
+	public synchronized void close() {
+		compactor.shutdown();
+		try {
+			buffer.force();
+			channel.close();
+		} catch (IOException ioe) {
+			LOG.error("Unable to close the journal " + path + " " + ioe.getMessage());
+		}
+	}
+
+	/* Clusters that failed or are terminating, and jobs that reached a final status, are dropped on compaction. */
+	private static boolean isLive(ClusterEntry entry) {
+		return isLive(entry.status);
+	}
+
+	/**
+	 * @param clusterStatus		Status of a cluster
+	 * @return boolean				Whether a cluster in that status can still run jobs or is still being created
+	 */
+	static boolean isLive(String clusterStatus) {
+		return !"FAILED".equals(clusterStatus) && !"TERMINATING".equals(clusterStatus)
+				&& !"TERMINATED".equals(clusterStatus);
+	}
+
+	private synchronized void append(byte type, String... fields) {
+		byte[][] encoded = new byte[fields.length][];
+		int bodyLength = 1 + 8;
+		for (int i = 0; i < fields.length; i++) {
+			encoded[i] = fields[i] == null ? new byte[0] : fields[i].getBytes(StandardCharsets.UTF_8);
+			bodyLength += 2 + encoded[i].length;
+		}
+		ensureCapacity(HEADER_BYTES + bodyLength);
+		ByteBuffer body = ByteBuffer.allocate(bodyLength);
+		body.put(type).putLong(System.currentTimeMillis());
+		for (byte[] field : encoded) {
+			body.putShort((short) field.length).put(field);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(body.array(), 0, bodyLength);
+		int start = buffer.position();
+		/* The length is written last, so a reader never sees a length without its record. */
+		buffer.position(start + 4);
+		buffer.putInt((int) crc.getValue()).put(body.array());
+		buffer.putInt(start, bodyLength);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (buffer.remaining() >= bytes + 4) {
+			return;
+		}
+		int position = buffer.position();
+		long size = ((position + bytes + 4) / CHUNK_BYTES + 1) * (long) CHUNK_BYTES;
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException("Unable to grow the journal " + path, ioe);
+		}
+		buffer.position(position);
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = Math.max(CHUNK_BYTES, channel.size());
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	private int replay() {
+		int records = 0;
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= HEADER_BYTES) {
+			int start = buffer.position();
+			int bodyLength = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (bodyLength <= 0 || bodyLength > buffer.remaining()) {
+				buffer.position(start);
+				break;
+			}
+			byte[] body = new byte[bodyLength];
+			buffer.get(body);
+			crc.reset();
+			crc.update(body, 0, bodyLength);
+			if ((int) crc.getValue() != checksum) {
+				LOG.error("Dropping the torn end of the journal " + path + " at offset " + start);
+				buffer.position(start);
+				break;
+			}
+			apply(ByteBuffer.wrap(body));
+			records++;
+		}
+		return records;
+	}
+
+	private void apply(ByteBuffer body) {
+		byte type = body.get();
+		body.getLong();
+		switch (type) {
+			case CLUSTER_CREATED:
+				clusters.put(string(body), new ClusterEntry(string(body), string(body)));
+				break;
+			case CLUSTER_STATUS: {
+				ClusterEntry entry = clusters.get(string(body));
+				if (entry != null) {
+					entry.status = string(body);
+				}
+				break;
+			}
+			case CLUSTER_DELETED: {
+				ClusterEntry entry = clusters.get(string(body));
+				if (entry != null) {
+					entry.deleted = true;
+				}
+				break;
+			}
+			case JOB_SUBMITTED:
+				jobs.put(string(body), new JobEntry(string(body), string(body), string(body)));
+				break;
+			case JOB_STATUS: {
+				JobEntry entry = jobs.get(string(body));
+				if (entry != null) {
+					entry.status = string(body);
+				}
+				break;
+			}
+			default:
+				LOG.error("Skipping journal record of unknown type " + type);
+		}
+	}
+
+	private static String string(ByteBuffer body) {
+		byte[] bytes = new byte[body.getShort() & 0xFFFF];
+		body.get(bytes);
+		return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void compactIfNeeded() {
+		synchronized (this) {
+			if (buffer.position() < compactionBytes) {
+				return;
+			}
+		}
+		try {
+			compact();
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Unable to compact the journal " + path + " " + e.getMessage());
+		}
+	}
+
+	/*
+	Rewrites the live entries to a new file that atomically replaces the journal.
+	The open mapping follows the renamed file, so appends continue on the new journal.
+	*/
+	private synchronized void compact() throws IOException {
+		for (Map.Entry<String, ClusterEntry> entry : clusters.entrySet()) {
+			if (entry.getValue().deleted || !isLive(entry.getValue())) {
+				clusters.remove(entry.getKey());
+			}
+		}
+		for (Map.Entry<String, JobEntry> entry : jobs.entrySet()) {
+			if (JobStatusTracker.isFinal(entry.getValue().status)) {
+				jobs.remove(entry.getKey());
+			}
+		}
+		Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+		Files.deleteIfExists(compacted);
+		FileChannel previousChannel = channel;
+		MappedByteBuffer previousBuffer = buffer;
+		try {
+			channel = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_BYTES);
+			for (Map.Entry<String, ClusterEntry> entry : clusters.entrySet()) {
+				append(CLUSTER_CREATED, entry.getKey(), entry.getValue().serviceType, entry.getValue().status);
+			}
+			for (Map.Entry<String, JobEntry> entry : jobs.entrySet()) {
+				JobEntry job = entry.getValue();
+				append(JOB_SUBMITTED, entry.getKey(), job.clusterName, job.jobName, job.status);
+			}
+			buffer.force();
+			Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			/* Keep appending to the previous journal, which is still complete. */
+			if (channel != previousChannel) {
+				channel.close();
+			}
+			Files.deleteIfExists(compacted);
+			channel = previousChannel;
+			buffer = previousBuffer;
+			throw e;
+		}
+		previousChannel.close();
+	}
+
+	private static final class ClusterEntry {
+
+		private final String serviceType;
+		private volatile String status;
+		private volatile boolean deleted;
+
+		ClusterEntry(String serviceType, String status) {
+			this.serviceType = serviceType;
+			this.status = status;
+		}
+	}
+
+	private static final class JobEntry {
+
+		private final String clusterName;
+		private final String jobName;
+		private volatile String status;
+
+		JobEntry(String clusterName, String jobName, String status) {
+			this.clusterName = clusterName;
+			this.jobName = jobName;
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+/**
+ * Timeline events of the samples: every DataengClient call, every status
+ * change of a tracked cluster or job, and every request build. Each event
+ * carries the cluster name and, where there is one, the job id.
+ *
+ * This version records nothing. On Java 21 and later the multi-release jar
+ * replaces this class with one that emits Java Flight Recorder events, which
+ * cost next to nothing while no recording is running. Start a recording with
+ * -XX:StartFlightRecording and open it in JDK Mission Control to read a run
+ * as a per-workflow timeline.
+ */
+final class Tracing {
+
+	private static final Span NOOP = new Span() {
+		@Override
+		public void setHttpCode(int httpCode) {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	private Tracing() {
+	}
+
+	/**
+	 * @param operation			Name of the DataengClient method
+	 * @param clusterName		Cluster the call is about, or null
+	 * @param jobId					Job the call is about, or null
+	 * @return Span					Span to close when the call returns
+	 */
+	static Span call(String operation, String clusterName, String jobId) {
+		return NOOP;
+	}
+
+	/**
+	 * @param kind					Kind of request, such as the integration building a job
+	 * @param clusterName		Cluster the request is for, or null
+	 * @return Span					Span to close once the request is built
+	 */
+	static Span requestBuild(String kind, String clusterName) {
+		return NOOP;
+	}
+
+	/**
+	 * @param clusterName				Cluster whose status changed
+	 * @param previousStatus		Status seen before, or null on the first poll
+	 * @param status						Status seen now
+	 * @param nanosInPrevious		Time the cluster was seen in the previous status
+	 */
+	static void clusterStatus(String clusterName, String previousStatus, String status, long nanosInPrevious) {
+	}
+
+	/**
+	 * @param clusterName				Cluster running the job
+	 * @param jobId							Job whose status changed
+	 * @param previousStatus		Status seen before, or null on the first poll
+	 * @param status						Status seen now
+	 * @param nanosInPrevious		Time the job was seen in the previous status
+	 */
+	static void jobStatus(String clusterName, String jobId, String previousStatus, String status,
+			long nanosInPrevious) {
+	}
+
+	/**
+	 * @return String		Where the events go, for logging
+	 */
+	static String mode() {
+		return "disabled";
+	}
+
+	/**
+	 * Duration of an operation, recorded when closed.
+	 */
+	interface Span extends AutoCloseable {
+
+		/**
+		 * @param httpCode		Http code of the response, 0 when no response was received
+		 */
+		void setHttpCode(int httpCode);
+
+		@Override
+		void close();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executor running the blocking SDK calls of the integration workflows.
+ * Waiting between two calls never holds a thread: the pollers and the job
+ * submission queue only hand the calls themselves to this executor, so a
+ * small pool of platform threads drives thousands of concurrent workflows.
+ * The exception is {@link ResilientDataengClient}, which sleeps on the
+ * calling thread for its retry delays and its rate limit: while Altus
+ * throttles, these sleeps can take the whole pool.
+ *
+ * On Java 21 and later the multi-release jar replaces this class with one
+ * that runs every call on its own virtual thread.
+ */
+final class WorkflowExecutors {
+
+	private static final int PLATFORM_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final ExecutorService SHARED =
+			Executors.newFixedThreadPool(PLATFORM_THREADS, ClusterStatusPoller.daemonThreads("altus-workflow"));
+
+	private WorkflowExecutors() {
+	}
+
+	/**
+	 * @return ExecutorService		Executor shared by every workflow in this JVM
+	 */
+	static ExecutorService shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return String		Kind of threads running the calls, for logging
+	 */
+	static String mode() {
+		return PLATFORM_THREADS + " platform threads";
+	}
+}
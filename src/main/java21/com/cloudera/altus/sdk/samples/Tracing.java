@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java 21 version of the timeline events, emitted as Java Flight Recorder
+ * events in the Altus category. Events are only allocated when a recording
+ * has them enabled, so the samples pay a single check per event otherwise.
+ */
+final class Tracing {
+
+	private static final Span NOOP = new Span() {
+		@Override
+		public void setHttpCode(int httpCode) {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	/* Checking a never committed event tells whether recordings want the event type. */
+	private static final CallEvent CALL_PROBE = new CallEvent();
+	private static final RequestBuildEvent BUILD_PROBE = new RequestBuildEvent();
+	private static final ClusterStatusEvent CLUSTER_PROBE = new ClusterStatusEvent();
+	private static final JobStatusEvent JOB_PROBE = new JobStatusEvent();
+
+	private Tracing() {
+	}
+
+	static Span call(String operation, String clusterName, String jobId) {
+		if (!CALL_PROBE.isEnabled()) {
+			return NOOP;
+		}
+		CallEvent event = new CallEvent();
+		event.operation = operation;
+		event.clusterName = clusterName;
+		event.jobId = jobId;
+		event.begin();
+		return event;
+	}
+
+	static Span requestBuild(String kind, String clusterName) {
+		if (!BUILD_PROBE.isEnabled()) {
+			return NOOP;
+		}
+		RequestBuildEvent event = new RequestBuildEvent();
+		event.kind = kind;
+		event.clusterName = clusterName;
+		event.begin();
+		return event;
+	}
+
+	static void clusterStatus(String clusterName, String previousStatus, String status, long nanosInPrevious) {
+		if (!CLUSTER_PROBE.isEnabled()) {
+			return;
+		}
+		ClusterStatusEvent event = new ClusterStatusEvent();
+		event.clusterName = clusterName;
+		event.previousStatus = previousStatus;
+		event.status = status;
+		event.inPreviousStatus = nanosInPrevious;
+		event.commit();
+	}
+
+	static void jobStatus(String clusterName, String jobId, String previousStatus, String status,
+			long nanosInPrevious) {
+		if (!JOB_PROBE.isEnabled()) {
+			return;
+		}
+		JobStatusEvent event = new JobStatusEvent();
+		event.clusterName = clusterName;
+		event.jobId = jobId;
+		event.previousStatus = previousStatus;
+		event.status = status;
+		event.inPreviousStatus = nanosInPrevious;
+		event.commit();
+	}
+
+	static String mode() {
+		return "Java Flight Recorder";
+	}
+
+	interface Span extends AutoCloseable {
+
+		void setHttpCode(int httpCode);
+
+		@Override
+		void close();
+	}
+
+	@Name("com.cloudera.altus.SdkCall")
+	@Label("Altus SDK Call")
+	@Description("Call of a DataengClient operation")
+	@Category("Altus")
+	@StackTrace(false)
+	static final class CallEvent extends Event implements Span {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Cluster Name")
+		String clusterName;
+
+		@Label("Job Id")
+		String jobId;
+
+		@Label("HTTP Code")
+		@Description("Http code of the response, 0 when no response was received")
+		int httpCode = 200;
+
+		@Override
+		public void setHttpCode(int httpCode) {
+			this.httpCode = httpCode;
+		}
+
+		@Override
+		public void close() {
+			commit();
+		}
+	}
+
+	@Name("com.cloudera.altus.RequestBuild")
+	@Label("Altus Request Build")
+	@Description("Build of a cluster or job request, including configuration and SSH key reads")
+	@Category("Altus")
+	@StackTrace(false)
+	static final class RequestBuildEvent extends Event implements Span {
+
+		@Label("Kind")
+		String kind;
+
+		@Label("Cluster Name")
+		String clusterName;
+
+		@Override
+		public void setHttpCode(int httpCode) {
+		}
+
+		@Override
+		public void close() {
+			commit();
+		}
+	}
+
+	@Name("com.cloudera.altus.ClusterStatus")
+	@Label("Altus Cluster Status")
+	@Description("Status change of a tracked cluster")
+	@Category("Altus")
+	@StackTrace(false)
+	static final class ClusterStatusEvent extends Event {
+
+		@Label("Cluster Name")
+		String clusterName;
+
+		@Label("Previous Status")
+		String previousStatus;
+
+		@Label("Status")
+		String status;
+
+		@Label("Time In Previous Status")
+		@Timespan(Timespan.NANOSECONDS)
+		long inPreviousStatus;
+	}
+
+	@Name("com.cloudera.altus.JobStatus")
+	@Label("Altus Job Status")
+	@Description("Status change of a tracked job")
+	@Category("Altus")
+	@StackTrace(false)
+	static final class JobStatusEvent extends Event {
+
+		@Label("Cluster Name")
+		String clusterName;
+
+		@Label("Job Id")
+		String jobId;
+
+		@Label("Previous Status")
+		String previousStatus;
+
+		@Label("Status")
+		String status;
+
+		@Label("Time In Previous Status")
+		@Timespan(Timespan.NANOSECONDS)
+		long inPreviousStatus;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018 Cloudera, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.altus.sdk.samples;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Java 21 version of the executor running the blocking SDK calls of the
+ * integration workflows. Every call runs on its own virtual thread, so a
+ * call blocked on the network only holds a carrier thread while it runs.
+ */
+final class WorkflowExecutors {
+
+	private static final ExecutorService SHARED = Executors.newThreadPerTaskExecutor(
+			Thread.ofVirtual().name("altus-workflow-", 0).factory());
+
+	private WorkflowExecutors() {
+	}
+
+	/**
+	 * @return ExecutorService		Executor shared by every workflow in this JVM
+	 */
+	static ExecutorService shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return String		Kind of threads running the calls, for logging
+	 */
+	static String mode() {
+		return "virtual threads";
+	}
+}